@@ -0,0 +1,133 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.xbreeze.xgenerate.config.binding.BindingConfig;
+import com.xbreeze.xgenerate.config.binding.SectionModelBindingConfig;
+import com.xbreeze.xgenerate.config.template.RootTemplateConfig;
+import com.xbreeze.xgenerate.template.XsltKeyIndex;
+
+/**
+ * The compiled form of the BindingConfig, used while pre-processing a template.
+ * The section model bindings are indexed by section name (case-insensitive) and the placeholders and literals are compiled into patterns.
+ * The model XPath's which select elements using an equality predicate are rewritten into key lookups, see XsltKeyIndex.
+ * The compiled binding isn't modified after it's built and is thread-safe, it's built once per config and can be shared by all pre-processing of the config.
+ * It refers to the (mutable) section model binding configs it's compiled from, so those must not be modified after the binding is compiled.
+ * 
+ * @author Harmen
+ */
+public class CompiledBindingConfig {
+	
+	/**
+	 * The root section model bindings, by section name.
+	 */
+	private final Map<String, CompiledSectionModelBinding[]> _sectionModelBindings;
+	
+	/**
+	 * The xsl:key declarations for the configured keys and the keys used in the rewritten model XPath's.
+	 */
+	private final String _keyDeclarations;
+	
+	/**
+	 * Constructor.
+	 * @param bindingConfig The binding config.
+	 * @param templateConfig The template config, which contains the accessors used in the placeholders.
+	 */
+	public CompiledBindingConfig(BindingConfig bindingConfig, RootTemplateConfig templateConfig) {
+		XsltKeyIndex keyIndex = new XsltKeyIndex(bindingConfig.getKeyConfigs(), !Boolean.FALSE.equals(bindingConfig.isAutomaticKeysEnabled()));
+		this._sectionModelBindings = indexSectionModelBindings(bindingConfig.getSectionModelBindingConfigs(), templateConfig, keyIndex);
+		this._keyDeclarations = keyIndex.getKeyDeclarations();
+	}
+	
+	/**
+	 * @return the xsl:key declarations (empty if there are no keys)
+	 */
+	public String getKeyDeclarations() {
+		return _keyDeclarations;
+	}
+	
+	/**
+	 * Get the root section model bindings for a section.
+	 * @param sectionName The name of the section.
+	 * @return The section model bindings bound to the section (empty if there are none).
+	 */
+	public CompiledSectionModelBinding[] getSectionModelBindings(String sectionName) {
+		return getSectionModelBindings(this._sectionModelBindings, sectionName);
+	}
+	
+	/**
+	 * Compile the section model bindings and index them by section name.
+	 * @param sectionModelBindingConfigs The section model binding configs (can be null).
+	 * @param templateConfig The template config.
+	 * @param keyIndex The key index, to rewrite the model XPath's into key lookups.
+	 * @return The compiled section model bindings by section name.
+	 */
+	static Map<String, CompiledSectionModelBinding[]> indexSectionModelBindings(List<SectionModelBindingConfig> sectionModelBindingConfigs, RootTemplateConfig templateConfig, XsltKeyIndex keyIndex) {
+		if (sectionModelBindingConfigs == null || sectionModelBindingConfigs.isEmpty())
+			return Collections.emptyMap();
+		// Group the bindings by section name, keeping the order of the config.
+		HashMap<String, List<CompiledSectionModelBinding>> sectionModelBindingLists = new HashMap<>();
+		for (SectionModelBindingConfig sectionModelBindingConfig : sectionModelBindingConfigs) {
+			sectionModelBindingLists.computeIfAbsent(getSectionKey(sectionModelBindingConfig.getSectionName()), sectionKey -> new ArrayList<>()).add(new CompiledSectionModelBinding(sectionModelBindingConfig, templateConfig, keyIndex));
+		}
+		HashMap<String, CompiledSectionModelBinding[]> sectionModelBindings = new HashMap<>();
+		for (Map.Entry<String, List<CompiledSectionModelBinding>> sectionModelBindingList : sectionModelBindingLists.entrySet()) {
+			sectionModelBindings.put(sectionModelBindingList.getKey(), sectionModelBindingList.getValue().toArray(new CompiledSectionModelBinding[0]));
+		}
+		return Collections.unmodifiableMap(sectionModelBindings);
+	}
+	
+	/**
+	 * Get the section model bindings for a section from an index.
+	 * The array is cloned, so the index can't be modified through it.
+	 * @param sectionModelBindings The index.
+	 * @param sectionName The name of the section.
+	 * @return The section model bindings bound to the section (empty if there are none).
+	 */
+	static CompiledSectionModelBinding[] getSectionModelBindings(Map<String, CompiledSectionModelBinding[]> sectionModelBindings, String sectionName) {
+		CompiledSectionModelBinding[] sectionModelBindingsForSection = (sectionName != null) ? sectionModelBindings.get(getSectionKey(sectionName)) : null;
+		return (sectionModelBindingsForSection != null) ? sectionModelBindingsForSection.clone() : new CompiledSectionModelBinding[0];
+	}
+	
+	/**
+	 * Get the key of a section name in the index.
+	 * Two section names get the same key if and only if they are equal ignoring case (as in String.equalsIgnoreCase).
+	 * @param sectionName The section name.
+	 * @return The key.
+	 */
+	static String getSectionKey(String sectionName) {
+		char[] sectionKey = sectionName.toCharArray();
+		for (int i = 0; i < sectionKey.length; i++) {
+			sectionKey[i] = Character.toLowerCase(Character.toUpperCase(sectionKey[i]));
+		}
+		return new String(sectionKey);
+	}
+}
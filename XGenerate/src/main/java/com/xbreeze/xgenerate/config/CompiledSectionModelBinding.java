@@ -0,0 +1,245 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import com.xbreeze.xgenerate.config.binding.LiteralConfig;
+import com.xbreeze.xgenerate.config.binding.PlaceholderConfig;
+import com.xbreeze.xgenerate.config.binding.SectionModelBindingConfig;
+import com.xbreeze.xgenerate.config.template.RootTemplateConfig;
+import com.xbreeze.xgenerate.template.PlaceholderRewriter;
+import com.xbreeze.xgenerate.template.XsltKeyIndex;
+import com.xbreeze.xgenerate.template.XsltTemplate;
+import com.xbreeze.xgenerate.template.XsltTemplate.PlaceholderType;
+
+/**
+ * The compiled form of a SectionModelBindingConfig, see CompiledBindingConfig.
+ * It contains the nested section model bindings indexed by section name, the XSLT variable declarations for the binding
+ * and the rewriters for the placeholders and literals.
+ * Like the CompiledBindingConfig it isn't modified after it's built, except for the rewriters of other placeholder names which are compiled on first use.
+ * 
+ * @author Harmen
+ */
+public class CompiledSectionModelBinding {
+	// The logger for this class.
+	private static final Logger logger = Logger.getLogger(CompiledSectionModelBinding.class.getName());
+	
+	/**
+	 * The section model binding config.
+	 */
+	private final SectionModelBindingConfig _sectionModelBindingConfig;
+	
+	/**
+	 * The model XPath of the binding, rewritten into a key lookup if possible.
+	 */
+	private final String _modelXPath;
+	
+	/**
+	 * The template config, used to compile the placeholder of the section when another placeholder name is used.
+	 */
+	private final RootTemplateConfig _templateConfig;
+	
+	/**
+	 * The nested section model bindings, by section name.
+	 */
+	private final Map<String, CompiledSectionModelBinding[]> _sectionModelBindings;
+	
+	/**
+	 * The XSLT variable declarations for the binding and its placeholders which have a variable name.
+	 */
+	private final String _variableDeclarations;
+	
+	/**
+	 * The names of the XSLT variables declared for the binding and its placeholders.
+	 */
+	private final List<String> _variableNames;
+	
+	/**
+	 * The rewriters for the placeholder of the section, the placeholders and the literals, by placeholder name of the section.
+	 */
+	private final ConcurrentHashMap<String, PlaceholderRewriter> _placeholderRewriters = new ConcurrentHashMap<>();
+	
+	/**
+	 * The rules for the placeholders, in the order of the config.
+	 */
+	private final List<PlaceholderRewriter.Rule> _placeholderRules;
+	
+	/**
+	 * The rules for the literals, in the order of the config.
+	 */
+	private final List<PlaceholderRewriter.Rule> _literalRules;
+	
+	/**
+	 * Constructor.
+	 * @param sectionModelBindingConfig The section model binding config.
+	 * @param templateConfig The template config.
+	 * @param keyIndex The key index, to rewrite the model XPath's into key lookups.
+	 */
+	CompiledSectionModelBinding(SectionModelBindingConfig sectionModelBindingConfig, RootTemplateConfig templateConfig, XsltKeyIndex keyIndex) {
+		this._sectionModelBindingConfig = sectionModelBindingConfig;
+		this._modelXPath = keyIndex.rewriteModelXPath(sectionModelBindingConfig.getModelXPath());
+		this._templateConfig = templateConfig;
+		this._sectionModelBindings = CompiledBindingConfig.indexSectionModelBindings(sectionModelBindingConfig.getSectionModelBindingConfigs(), templateConfig, keyIndex);
+		
+		// Compile the variable declarations and the placeholders.
+		StringBuilder variableDeclarations = new StringBuilder();
+		List<String> variableNames = new ArrayList<>();
+		if (sectionModelBindingConfig.hasVariableName()) {
+			variableNames.add(sectionModelBindingConfig.getVariableName());
+			logger.fine(String.format("Compiling variable '%s' for SectionModelBinding '%s'.", sectionModelBindingConfig.getVariableName(), sectionModelBindingConfig.getSectionName()));
+			variableDeclarations.append(String.format("<xsl:variable name=\"%s\" select=\".\" />", sectionModelBindingConfig.getVariableName()));
+		}
+		List<PlaceholderRewriter.Rule> placeholderRules = new ArrayList<>();
+		if (sectionModelBindingConfig.getPlaceholderConfigs() != null) {
+			for (PlaceholderConfig placeholderConfig : sectionModelBindingConfig.getPlaceholderConfigs()) {
+				String placeholderModelXPath = keyIndex.rewriteModelXPath(placeholderConfig.getModelXPath());
+				// If a variable is defined for a placeholder, we use the variable i.s.o. the modelXPath in the placeholder replacements.
+				if (placeholderConfig.hasVariableName()) {
+					variableNames.add(placeholderConfig.getVariableName());
+					logger.fine(String.format("Compiling variable '%s' for Placeholder '%s'.", placeholderConfig.getVariableName(), placeholderConfig.getName()));
+					variableDeclarations.append(String.format("<xsl:variable name=\"%s\" select=\"%s\" />", placeholderConfig.getVariableName(), placeholderModelXPath));
+				}
+				placeholderRules.addAll(compilePlaceholder(placeholderConfig.getName(), (placeholderConfig.hasVariableName()) ? String.format("$%s", placeholderConfig.getVariableName()) : placeholderModelXPath, templateConfig));
+			}
+		}
+		this._variableDeclarations = variableDeclarations.toString();
+		this._variableNames = Collections.unmodifiableList(variableNames);
+		this._placeholderRules = Collections.unmodifiableList(placeholderRules);
+		
+		// Compile the literals.
+		List<PlaceholderRewriter.Rule> literalRules = new ArrayList<>();
+		if (sectionModelBindingConfig.getLiteralConfigs() != null) {
+			for (LiteralConfig literalConfig : sectionModelBindingConfig.getLiteralConfigs()) {
+				literalRules.add(new PlaceholderRewriter.Rule(
+						Pattern.compile(Pattern.quote(literalConfig.getLiteral())),
+						literalConfig.getLiteral(),
+						XsltTemplate.getPlaceholderReplacement("%s", keyIndex.rewriteModelXPath(literalConfig.getModelXPath()), PlaceholderType.XSL_VALUE_OF, templateConfig)
+				));
+			}
+		}
+		this._literalRules = Collections.unmodifiableList(literalRules);
+		
+		// Compile the rewriter with the placeholder name of the binding, other names are compiled when used.
+		getPlaceholderRewriter(sectionModelBindingConfig.getPlaceholderName());
+	}
+	
+	/**
+	 * Compile the rules of a placeholder, for the current accessor and the child accessor (if configured).
+	 * @param placeholderName The placeholder name.
+	 * @param modelXPath The model XPath (or variable) the placeholder points to.
+	 * @param templateConfig The template config.
+	 * @return The placeholder rules.
+	 */
+	private static List<PlaceholderRewriter.Rule> compilePlaceholder(String placeholderName, String modelXPath, RootTemplateConfig templateConfig) {
+		List<PlaceholderRewriter.Rule> placeholderRules = new ArrayList<>(2);
+		String currentAccessor = templateConfig.getFileFormatConfig().getCurrentAccessor();
+		placeholderRules.add(new PlaceholderRewriter.Rule(
+				Pattern.compile(XsltTemplate.getPlaceholderRegex(placeholderName, currentAccessor)),
+				PlaceholderRewriter.getLiteralPrefix(placeholderName, currentAccessor),
+				XsltTemplate.getPlaceholderReplacement(XsltTemplate.CURRENT_ACCESSOR_REPLACE_XPATH, modelXPath, PlaceholderType.XSL_VALUE_OF, templateConfig)
+		));
+		if (XsltTemplate.hasChildAccessor(templateConfig)) {
+			String childAccessor = templateConfig.getFileFormatConfig().getChildAccessor();
+			placeholderRules.add(new PlaceholderRewriter.Rule(
+					Pattern.compile(XsltTemplate.getPlaceholderRegex(placeholderName, childAccessor)),
+					PlaceholderRewriter.getLiteralPrefix(placeholderName, childAccessor),
+					XsltTemplate.getPlaceholderReplacement(XsltTemplate.CHILD_ACCESSOR_REPLACE_XPATH, modelXPath, PlaceholderType.XSL_VALUE_OF, templateConfig)
+			));
+		}
+		return placeholderRules;
+	}
+	
+	/**
+	 * Get the rewriter for a placeholder name of the section, compiling it the first time the placeholder name is used.
+	 * Within the section the placeholder points to the current element (or the variable of the binding).
+	 * The placeholder of the section has priority over the placeholders of the binding, which have priority over the literals.
+	 * @param placeholderName The placeholder name.
+	 * @return The placeholder rewriter.
+	 */
+	private PlaceholderRewriter getPlaceholderRewriter(String placeholderName) {
+		return this._placeholderRewriters.computeIfAbsent(placeholderName, name -> {
+			List<PlaceholderRewriter.Rule> rules = new ArrayList<>(compilePlaceholder(name, (this._sectionModelBindingConfig.hasVariableName()) ? String.format("$%s", this._sectionModelBindingConfig.getVariableName()) : ".", this._templateConfig));
+			rules.addAll(this._placeholderRules);
+			rules.addAll(this._literalRules);
+			return new PlaceholderRewriter(rules);
+		});
+	}
+	
+	/**
+	 * The config is returned as is (not a copy), it must not be modified.
+	 * @return the section model binding config the binding is compiled from
+	 */
+	public SectionModelBindingConfig getSectionModelBindingConfig() {
+		return _sectionModelBindingConfig;
+	}
+	
+	/**
+	 * @return the model XPath of the binding, rewritten into a key lookup if possible
+	 */
+	public String getModelXPath() {
+		return _modelXPath;
+	}
+	
+	/**
+	 * Get the nested section model bindings for a section.
+	 * @param sectionName The name of the section.
+	 * @return The section model bindings bound to the section (empty if there are none).
+	 */
+	public CompiledSectionModelBinding[] getSectionModelBindings(String sectionName) {
+		return CompiledBindingConfig.getSectionModelBindings(this._sectionModelBindings, sectionName);
+	}
+	
+	/**
+	 * @return the XSLT variable declarations for the binding and its placeholders (empty if there are no variables)
+	 */
+	public String getVariableDeclarations() {
+		return _variableDeclarations;
+	}
+	
+	/**
+	 * @return the names of the XSLT variables declared for the binding and its placeholders
+	 */
+	public List<String> getVariableNames() {
+		return _variableNames;
+	}
+	
+	/**
+	 * Replace the placeholders and literals in a template part with the XSLT instructions, in a single pass.
+	 * The placeholder of the section is processed first, after which the placeholders and literals of the binding are processed.
+	 * @param templatePart The template part to process.
+	 * @param placeholderName The placeholder name of the section.
+	 * @return The processed template part.
+	 */
+	public String processPlaceholders(String templatePart, String placeholderName) {
+		return getPlaceholderRewriter(placeholderName).rewrite(templatePart);
+	}
+}
@@ -27,13 +27,14 @@ package com.xbreeze.xgenerate.config;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
 import java.util.logging.Logger;
 
 import javax.xml.XMLConstants;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
@@ -42,7 +43,6 @@ import javax.xml.validation.SchemaFactory;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
-import org.xml.sax.XMLReader;
 
 import com.xbreeze.xgenerate.config.binding.BindingConfig;
 import com.xbreeze.xgenerate.config.model.ModelConfig;
@@ -50,11 +50,14 @@ import com.xbreeze.xgenerate.config.template.RootTemplateConfig;
 import com.xbreeze.xgenerate.config.template.TextTemplateConfig;
 import com.xbreeze.xgenerate.config.template.XMLTemplateConfig;
 import com.xbreeze.xgenerate.utils.FileUtils;
-import com.xbreeze.xgenerate.utils.XMLUtils;
 import com.xbreeze.xgenerate.utils.XmlException;
+import com.xbreeze.xgenerate.utils.XmlIncludeFilter;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore.IncludedFile;
 
 import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
 import jakarta.xml.bind.UnmarshalException;
 import jakarta.xml.bind.Unmarshaller;
 import jakarta.xml.bind.annotation.XmlAccessType;
@@ -62,6 +65,7 @@ import jakarta.xml.bind.annotation.XmlAccessorType;
 import jakarta.xml.bind.annotation.XmlElement;
 import jakarta.xml.bind.annotation.XmlElements;
 import jakarta.xml.bind.annotation.XmlRootElement;
+import jakarta.xml.bind.annotation.XmlTransient;
 import jakarta.xml.bind.annotation.XmlType;
 
 /**
@@ -76,6 +80,12 @@ public class XGenConfig {
 	// The logger for this class.
 	private static final Logger logger = Logger.getLogger(XGenConfig.class.getName());
 	
+	/**
+	 * The compiled schema and JAXB context, shared by all config loads.
+	 */
+	private static Schema _configSchema;
+	private static JAXBContext _jaxbContext;
+	
 	/**
 	 * The model configuration.
 	 * @see ModelConfig
@@ -100,6 +110,19 @@ public class XGenConfig {
 	 */
 	@XmlElement(name="Binding")
 	private BindingConfig bindingConfig;
+	
+	/**
+	 * The files included in the config, with their modification time when the config was read.
+	 */
+	@XmlTransient
+	private List<IncludedFile> includedFiles = Collections.emptyList();
+	
+	/**
+	 * The compiled binding configuration, built the first time it's requested.
+	 * @see CompiledBindingConfig
+	 */
+	@XmlTransient
+	private CompiledBindingConfig compiledBindingConfig;
 
 	/**
 	 * @return the model
@@ -125,8 +148,9 @@ public class XGenConfig {
 	/**
 	 * @param templateConfig the template to set
 	 */
-	public void setTemplateConfig(XMLTemplateConfig templateConfig) {
+	public synchronized void setTemplateConfig(XMLTemplateConfig templateConfig) {
 		this.templateConfig = templateConfig;
+		this.compiledBindingConfig = null;
 	}
 
 	/**
@@ -139,8 +163,97 @@ public class XGenConfig {
 	/**
 	 * @param bindingConfig the binding to set
 	 */
-	public void setBindingConfig(BindingConfig bindingConfig) {
+	public synchronized void setBindingConfig(BindingConfig bindingConfig) {
 		this.bindingConfig = bindingConfig;
+		this.compiledBindingConfig = null;
+	}
+	
+	/**
+	 * Get the compiled binding, it's compiled the first time it's requested.
+	 * The compiled binding is immutable, so it's shared by all template pre-processing using this config.
+	 * @return the compiled binding, or null if there is no binding configured
+	 */
+	public synchronized CompiledBindingConfig getCompiledBindingConfig() {
+		if (compiledBindingConfig == null && bindingConfig != null) {
+			compiledBindingConfig = new CompiledBindingConfig(bindingConfig, templateConfig);
+		}
+		return compiledBindingConfig;
+	}
+	
+	/**
+	 * @return the files included in the config
+	 */
+	public List<IncludedFile> getIncludedFiles() {
+		return includedFiles;
+	}
+	
+	/**
+	 * Get the compiled XGenConfig schema, it's compiled the first time it's requested.
+	 * The Schema is immutable and thread-safe, so it's shared by all config loads.
+	 * @return The Schema.
+	 * @throws ConfigException
+	 */
+	private static synchronized Schema getConfigSchema() throws ConfigException {
+		if (_configSchema == null) {
+			// Create a resource on the schema file.
+			// Schema file generated using following tutorial: https://examples.javacodegeeks.com/core-java/xml/bind/jaxb-schema-validation-example/
+			String xGenConfigXsdFileName = String.format("%s.xsd", XGenConfig.class.getSimpleName());
+			InputStream xGenConfigSchemaAsStream = XGenConfig.class.getResourceAsStream(xGenConfigXsdFileName);
+			// If the schema file can't be found, throw an exception.
+			if (xGenConfigSchemaAsStream == null) {
+				throw new ConfigException(String.format("Can't find the schema file '%s'", xGenConfigXsdFileName));
+			}
+			// Create the StreamSource for the schema.
+			StreamSource xGenConfigXsdResource = new StreamSource(xGenConfigSchemaAsStream);
+			
+			// Try to load the schema.
+			try {
+				SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+				_configSchema = sf.newSchema(xGenConfigXsdResource);
+			} catch (SAXException e) {
+				throw new ConfigException(String.format("Couldn't read the schema file (%s)", xGenConfigXsdResource.toString()), e);
+			}
+		}
+		return _configSchema;
+	}
+	
+	/**
+	 * Get the JAXB context for the XGenConfig, it's created the first time it's requested.
+	 * The JAXBContext is thread-safe, so it's shared by all config loads (the unmarshallers aren't).
+	 * @return The JAXBContext.
+	 * @throws JAXBException
+	 */
+	private static synchronized JAXBContext getJAXBContext() throws JAXBException {
+		if (_jaxbContext == null) {
+			_jaxbContext = JAXBContext.newInstance(XGenConfig.class);
+		}
+		return _jaxbContext;
+	}
+	
+	/**
+	 * Marshal the config into a String, which contains the config with all includes resolved.
+	 * @return The config as XML.
+	 * @throws ConfigException
+	 */
+	public String toXml() throws ConfigException {
+		return toXml(this);
+	}
+	
+	/**
+	 * Marshal the config or a part of it into a String.
+	 * @param configElement The XGenConfig, or a part of it wrapped in a JAXBElement.
+	 * @return The config element as XML.
+	 * @throws ConfigException
+	 */
+	public static String toXml(Object configElement) throws ConfigException {
+		StringWriter configElementWriter = new StringWriter();
+		try {
+			Marshaller configElementMarshaller = getJAXBContext().createMarshaller();
+			configElementMarshaller.marshal(configElement, configElementWriter);
+		} catch (JAXBException e) {
+			throw new ConfigException(String.format("Couldn't write the config: %s", e.getMessage()), e);
+		}
+		return configElementWriter.toString();
 	}
 	
 	/**
@@ -150,71 +263,69 @@ public class XGenConfig {
 	 * @return The unmarshelled XGenConfig object.
 	 * @throws ConfigException
 	 */
-	public static XGenConfig fromString(String configFileContent, URI basePath) throws ConfigException {		
+	public static XGenConfig fromString(String configFileContent, URI basePath) throws ConfigException {
+		return fromInputSource(new InputSource(new StringReader(configFileContent)), basePath, new XmlIncludeStore());
+	}
+	
+	/**
+	 * Unmarshal a config from an InputSource.
+	 * @param configInputSource The InputSource to unmarshal.
+	 * @param basePath, the basepath used to resolve relative XIncludes
+	 * @param includeStore The store to take the included files from.
+	 * @return The unmarshelled XGenConfig object.
+	 * @throws ConfigException
+	 */
+	private static XGenConfig fromInputSource(InputSource configInputSource, URI basePath, XmlIncludeStore includeStore) throws ConfigException {		
 		XGenConfig xGenConfig;
-		// Before validating against the XSD, resolve any includes first
-		HashMap<URI, Integer> resolvedIncludes = new HashMap<>();
+		// The includes are resolved while the config is parsed, before validating against the XSD.
 		logger.info(String.format("Reading config from %s and resolving includes when found.", basePath.toString()));
-		String resolvedInputSource;
+		XmlIncludeFilter xmlIncludeFilter;
 		try {
-			resolvedInputSource = XMLUtils.getXmlWithResolvedIncludes(configFileContent, basePath, 0, resolvedIncludes, true);
+			xmlIncludeFilter = new XmlIncludeFilter(basePath, true, includeStore);
 		} catch (XmlException xec) {
 			throw new ConfigException(xec);
 		}
-		// Create a resource on the schema file.
-		// Schema file generated using following tutorial: https://examples.javacodegeeks.com/core-java/xml/bind/jaxb-schema-validation-example/
-		String xGenConfigXsdFileName = String.format("%s.xsd", XGenConfig.class.getSimpleName());
-		InputStream xGenConfigSchemaAsStream = XGenConfig.class.getResourceAsStream(xGenConfigXsdFileName);
-		// If the schema file can't be found, throw an exception.
-		if (xGenConfigSchemaAsStream == null) {
-			throw new ConfigException(String.format("Can't find the schema file '%s'", xGenConfigXsdFileName));
-		}
-		// Create the StreamSource for the schema.
-		StreamSource xGenConfigXsdResource = new StreamSource(xGenConfigSchemaAsStream);
-		
-		// Try to load the schema.
-		Schema configSchema;
-		try {
-			SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-			configSchema = sf.newSchema(xGenConfigXsdResource);
-		} catch (SAXException e) {
-			throw new ConfigException(String.format("Couldn't read the schema file (%s)", xGenConfigXsdResource.toString()), e);
-		}
+		// Get the compiled schema, which is shared by all config loads.
+		Schema configSchema = getConfigSchema();
 		
 		// Try to unmarshal the config file.
 		try {
-			// Create the JAXB context.
-			JAXBContext jaxbContext = JAXBContext.newInstance(XGenConfig.class);
-			Unmarshaller xGenConfigUnmarshaller = jaxbContext.createUnmarshaller();
-			//xGenConfigUnmarshaller.setSchema(configSchema);
-			//Create a SAXParser factory
-			 SAXParserFactory spf = SAXParserFactory.newInstance();
-			 //Since XInclude processing is handled through custom implementation, disabled in the spf
-			 // spf.setXIncludeAware(true);
-			 spf.setNamespaceAware(true);
-			 spf.setSchema(configSchema);
-			 XMLReader xr = spf.newSAXParser().getXMLReader();
-			 //Prevent xml:base tags from being added when includes are processed
-			 xr.setFeature("http://apache.org/xml/features/xinclude/fixup-base-uris", false);
-			 SAXSource saxSource = new SAXSource(xr, new InputSource(new StringReader(resolvedInputSource)));
+			// Create the unmarshaller using the shared JAXB context.
+			Unmarshaller xGenConfigUnmarshaller = getJAXBContext().createUnmarshaller();
+			// Validate the config after the includes are resolved by the include filter.
+			xGenConfigUnmarshaller.setSchema(configSchema);
+			SAXSource saxSource = new SAXSource(xmlIncludeFilter, configInputSource);
 			
 			 // Set the event handler.
 			 xGenConfigUnmarshaller.setEventHandler(new UnmarshallValidationEventHandler());
 					 
 			// Unmarshal the config.			
 			xGenConfig = (XGenConfig) xGenConfigUnmarshaller.unmarshal(saxSource);
-		} catch (UnmarshalException | SAXException  e) {
+			xGenConfig.includedFiles = xmlIncludeFilter.getIncludedFiles();
+		} catch (UnmarshalException e) {
+			// If the exception was caused by a XML exception, an include couldn't be resolved.
+			for (Throwable cause = e.getLinkedException(); cause != null; cause = (cause instanceof SAXException) ? ((SAXException)cause).getException() : cause.getCause()) {
+				if (cause instanceof XmlException)
+					throw new ConfigException((XmlException)cause);
+			}
+			Throwable linkedException = e.getLinkedException();
 			// If the linked exception is a sax parse exception, it contains the error in the config file.
-			if (e instanceof UnmarshalException && ((UnmarshalException)e).getLinkedException() instanceof SAXParseException) {
-				throw new ConfigException(String.format("Error in config file: %s", ((UnmarshalException)e).getLinkedException().getMessage()), e);
+			if (linkedException instanceof SAXParseException) {
+				// Only the included documents are parsed with a system id (their file), so an error in an included file is reported with that file.
+				String systemId = ((SAXParseException)linkedException).getSystemId();
+				if (systemId != null)
+					throw new ConfigException(String.format("Error in config file: %s (in included file %s)", linkedException.getMessage(), systemId), e);
+				throw new ConfigException(String.format("Error in config file: %s", linkedException.getMessage()), e);
+			}
+			// If the linked exception is an invocation target exception, it was thrown while processing the unmarshalled config (for example in afterUnmarshal).
+			else if (linkedException instanceof InvocationTargetException) {
+				throw new ConfigException(String.format("Error in config file: %s", ((InvocationTargetException)linkedException).getTargetException().getMessage()), e);
 			} else {
 				throw new ConfigException(String.format("Error in config file: %s", e.getMessage()), e);
 			}
 		} catch (JAXBException e) {
 			throw new ConfigException(String.format("Couldn't read the config file"), e);
-		} catch (ParserConfigurationException e) { 
-			throw new ConfigException(String.format("Parser configuration error"), e);
-		} 
+		}
 		logger.info(String.format("Reading config from %s complete.", basePath.toString()));
 		return xGenConfig;
 		
@@ -227,10 +338,22 @@ public class XGenConfig {
 	 * @throws ConfigException 
 	 */
 	public static XGenConfig fromFile(URI configFileUri) throws ConfigException {
+		return fromFile(configFileUri, new XmlIncludeStore());
+	}
+	
+	/**
+	 * Unmarshal a file into a XGenConfig object, taking the included files from an include store.
+	 * @param configFileUri The file to unmarshal.
+	 * @param includeStore The store to take the included files from.
+	 * @return The unmarshalled XGenConfig object.
+	 * @throws ConfigException 
+	 */
+	public static XGenConfig fromFile(URI configFileUri, XmlIncludeStore includeStore) throws ConfigException {
 		logger.fine(String.format("Creating XGenConfigFile object from '%s'", configFileUri));		
 		XGenConfig xGenConfig;
-		try {
-			xGenConfig = fromString(FileUtils.getFileContent(configFileUri), configFileUri);
+		// The config is parsed from the bytes of the file, the parser detects the encoding.
+		try (InputStream configFileInputStream = FileUtils.getFileInputStream(configFileUri)) {
+			xGenConfig = fromInputSource(new InputSource(configFileInputStream), configFileUri, includeStore);
 		} catch (ConfigException | IOException e) {
 			// Catch the config exception here to add the filename in the exception text.
 			throw new ConfigException(String.format("%s (%s)", e.getMessage(), configFileUri.toString()), e.getCause());
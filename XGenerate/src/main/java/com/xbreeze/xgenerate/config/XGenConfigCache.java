@@ -0,0 +1,116 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import com.xbreeze.xgenerate.utils.XmlIncludeStore;
+
+/**
+ * The cache of configs read by a generator (see Generator), so a config which is used by multiple generation steps is only read once.
+ * The configs are cached by canonical path and are read again when the config file or one of the files included in it is modified.
+ * The cached configs are shared by the generation steps (which may run in parallel), so they must only be read after they are loaded.
+ * The cache is only kept as long as the generator using it, so the configs aren't kept in memory after the generation run.
+ *
+ * @author Harmen
+ */
+public class XGenConfigCache {
+	// The logger for this class.
+	private static final Logger logger = Logger.getLogger(XGenConfigCache.class.getName());
+	
+	/**
+	 * The cached configs by canonical config file URI.
+	 */
+	private final ConcurrentHashMap<URI, CachedConfig> _configs = new ConcurrentHashMap<>();
+	
+	/**
+	 * The store to take the files included in the configs from.
+	 */
+	private final XmlIncludeStore _includeStore;
+	
+	/**
+	 * Constructor.
+	 * @param includeStore The store to take the files included in the configs from.
+	 */
+	public XGenConfigCache(XmlIncludeStore includeStore) {
+		this._includeStore = includeStore;
+	}
+	
+	/**
+	 * Get the config from the cache, reading it when it's not in the cache or when it's modified.
+	 * @param configFileUri The config file location.
+	 * @return The XGenConfig.
+	 * @throws ConfigException
+	 */
+	public XGenConfig getConfig(URI configFileUri) throws ConfigException {
+		URI canonicalConfigFileUri;
+		try {
+			canonicalConfigFileUri = new File(configFileUri).getCanonicalFile().toURI();
+		} catch (IOException e) {
+			throw new ConfigException(String.format("Couldn't resolve the canonical path of the config file (%s)", configFileUri.toString()), e);
+		}
+		// Get the modification time before reading, so a modification while reading causes the config to be read again.
+		long lastModified = new File(canonicalConfigFileUri).lastModified();
+		CachedConfig cachedConfig = _configs.get(canonicalConfigFileUri);
+		if (cachedConfig != null && cachedConfig.isUpToDate(lastModified)) {
+			logger.info(String.format("Using config %s from the config cache.", canonicalConfigFileUri.toString()));
+			return cachedConfig.getConfig();
+		}
+		
+		XGenConfig xGenConfig = XGenConfig.fromFile(configFileUri, this._includeStore);
+		_configs.put(canonicalConfigFileUri, new CachedConfig(xGenConfig, lastModified));
+		return xGenConfig;
+	}
+	
+	/**
+	 * A cached config, with the modification time of the config file when it was read.
+	 */
+	private static class CachedConfig {
+		private XGenConfig _config;
+		private long _lastModified;
+		
+		private CachedConfig(XGenConfig config, long lastModified) {
+			this._config = config;
+			this._lastModified = lastModified;
+		}
+		
+		private XGenConfig getConfig() {
+			return _config;
+		}
+		
+		/**
+		 * @param lastModified The current modification time of the config file.
+		 * @return Whether the config file and none of the files included in it are modified since the config was read.
+		 */
+		private boolean isUpToDate(long lastModified) {
+			return this._lastModified == lastModified
+					&& this._config.getIncludedFiles().stream().allMatch(includedFile -> new File(includedFile.getFileUri()).lastModified() == includedFile.getLastModified());
+		}
+	}
+}
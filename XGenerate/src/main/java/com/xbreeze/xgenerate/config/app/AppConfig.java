@@ -30,6 +30,7 @@ import jakarta.xml.bind.annotation.XmlElement;
  * The App part of the CrossGenerate configuration.
  * This part of the configuration contains:
  *  - outputlocations
+ *  - the template and model cache
  *  
  * 
  * @author Harmen
@@ -55,6 +56,26 @@ public class AppConfig {
 	 * The folder location for the config files.
 	 */
 	private String _configFolder;
+	
+	/**
+	 * The folder location for the cache of pre-processed templates (optional, templates are only cached when set).
+	 */
+	private String _templateCacheFolder;
+	
+	/**
+	 * The maximum size of the template cache in megabytes.
+	 */
+	private int _templateCacheMaxSize = 100;
+	
+	/**
+	 * The folder location for the cache of preprocessed models (optional, models are only cached when set).
+	 */
+	private String _modelCacheFolder;
+	
+	/**
+	 * The maximum size of the model cache in megabytes.
+	 */
+	private int _modelCacheMaxSize = 4096;
 
 	/**
 	 * @return the templateFolder
@@ -115,4 +136,64 @@ public class AppConfig {
 	public void setConfigFolder(String configFolder) {
 		this._configFolder = configFolder;
 	}
+
+	/**
+	 * @return the templateCacheFolder
+	 */
+	@XmlElement(name="TemplateCacheFolder")
+	public String getTemplateCacheFolder() {
+		return _templateCacheFolder;
+	}
+
+	/**
+	 * @param templateCacheFolder the templateCacheFolder to set
+	 */
+	public void setTemplateCacheFolder(String templateCacheFolder) {
+		this._templateCacheFolder = templateCacheFolder;
+	}
+
+	/**
+	 * @return the templateCacheMaxSize
+	 */
+	@XmlElement(name="TemplateCacheMaxSize")
+	public int getTemplateCacheMaxSize() {
+		return _templateCacheMaxSize;
+	}
+
+	/**
+	 * @param templateCacheMaxSize the templateCacheMaxSize to set
+	 */
+	public void setTemplateCacheMaxSize(int templateCacheMaxSize) {
+		this._templateCacheMaxSize = templateCacheMaxSize;
+	}
+
+	/**
+	 * @return the modelCacheFolder
+	 */
+	@XmlElement(name="ModelCacheFolder")
+	public String getModelCacheFolder() {
+		return _modelCacheFolder;
+	}
+
+	/**
+	 * @param modelCacheFolder the modelCacheFolder to set
+	 */
+	public void setModelCacheFolder(String modelCacheFolder) {
+		this._modelCacheFolder = modelCacheFolder;
+	}
+
+	/**
+	 * @return the modelCacheMaxSize
+	 */
+	@XmlElement(name="ModelCacheMaxSize")
+	public int getModelCacheMaxSize() {
+		return _modelCacheMaxSize;
+	}
+
+	/**
+	 * @param modelCacheMaxSize the modelCacheMaxSize to set
+	 */
+	public void setModelCacheMaxSize(int modelCacheMaxSize) {
+		this._modelCacheMaxSize = modelCacheMaxSize;
+	}
 }
@@ -60,6 +60,12 @@ public class XGenAppConfig {
 	// The logger for this class.
 	private static final Logger logger = Logger.getLogger(XGenAppConfig.class.getName());
 	
+	/**
+	 * The compiled schema and JAXB context, shared by all app config loads.
+	 */
+	private static Schema _appConfigSchema;
+	private static JAXBContext _jaxbContext;
+	
 	/**
 	 * The app configuration.
 	 * @see AppConfig
@@ -118,6 +124,47 @@ public class XGenAppConfig {
 		return xGenAppConfig;
 	}
 	
+	/**
+	 * Get the compiled XGenAppConfig schema, it's compiled the first time it's requested.
+	 * The Schema is immutable and thread-safe, so it's shared by all app config loads.
+	 * @return The Schema.
+	 * @throws ConfigException
+	 */
+	private static synchronized Schema getAppConfigSchema() throws ConfigException {
+		if (_appConfigSchema == null) {
+			// Create a resource on the schema file.
+			// Schema file generated using following tutorial: https://examples.javacodegeeks.com/core-java/xml/bind/jaxb-schema-validation-example/
+			String xGenAppConfigXsdFileName = String.format("%s.xsd", XGenAppConfig.class.getSimpleName());
+			URL xGenAppConfigXsdResource = XGenAppConfig.class.getResource(xGenAppConfigXsdFileName);
+			// If the schema file can't be found, throw an exception.
+			if (xGenAppConfigXsdResource == null) {
+				throw new ConfigException(String.format("Can't find the schema file '%s'", xGenAppConfigXsdFileName));
+			}
+			
+			// Try to load the schema.
+			try {
+				SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+				_appConfigSchema = sf.newSchema(xGenAppConfigXsdResource);
+			} catch (SAXException e) {
+				throw new ConfigException(String.format("Couldn't read the schema file (%s)", xGenAppConfigXsdResource.toString()), e);
+			}
+		}
+		return _appConfigSchema;
+	}
+	
+	/**
+	 * Get the JAXB context for the XGenAppConfig, it's created the first time it's requested.
+	 * The JAXBContext is thread-safe, so it's shared by all app config loads (the unmarshallers aren't).
+	 * @return The JAXBContext.
+	 * @throws JAXBException
+	 */
+	private static synchronized JAXBContext getJAXBContext() throws JAXBException {
+		if (_jaxbContext == null) {
+			_jaxbContext = JAXBContext.newInstance(XGenAppConfig.class);
+		}
+		return _jaxbContext;
+	}
+	
 	/**
 	 * Create a XGenAppConfig object using a InputSource.
 	 * @param inputSource The InputSource.
@@ -126,31 +173,12 @@ public class XGenAppConfig {
 	 */
 	private static XGenAppConfig fromInputSource(InputSource inputSource) throws ConfigException {
 		XGenAppConfig xGenAppConfig;
-		// Create a resource on the schema file.
-		// Schema file generated using following tutorial: https://examples.javacodegeeks.com/core-java/xml/bind/jaxb-schema-validation-example/
-		String xGenAppConfigXsdFileName = String.format("%s.xsd", XGenAppConfig.class.getSimpleName());
-		URL xGenAppConfigXsdResource = XGenAppConfig.class.getResource(xGenAppConfigXsdFileName);
-		// If the schema file can't be found, throw an exception.
-		if (xGenAppConfigXsdResource == null) {
-			throw new ConfigException(String.format("Can't find the schema file '%s'", xGenAppConfigXsdFileName));
-		}
-		
-		// Try to load the schema.
-		Schema configSchema;
-		try {
-			SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-			configSchema = sf.newSchema(xGenAppConfigXsdResource);
-		} catch (SAXException e) {
-			throw new ConfigException(String.format("Couldn't read the schema file (%s)", xGenAppConfigXsdResource.toString()), e);
-		}
-		
 		// Try to unmarshal the config file.
 		try {
-			// Create the JAXB context.
-			JAXBContext jaxbContext = JAXBContext.newInstance(XGenAppConfig.class);
-			Unmarshaller xGenAppConfigUnmarshaller = jaxbContext.createUnmarshaller();
-			// Set the schema on the unmarshaller.
-			xGenAppConfigUnmarshaller.setSchema(configSchema);
+			// Create the unmarshaller using the shared JAXB context.
+			Unmarshaller xGenAppConfigUnmarshaller = getJAXBContext().createUnmarshaller();
+			// Set the shared schema on the unmarshaller.
+			xGenAppConfigUnmarshaller.setSchema(getAppConfigSchema());
 			// Set the event handler.
 			xGenAppConfigUnmarshaller.setEventHandler(new UnmarshallValidationEventHandler());
 			// Unmarshal the config.
@@ -24,13 +24,18 @@
  *******************************************************************************/
 package com.xbreeze.xgenerate.config.binding;
 
+import java.util.ArrayList;
+
 import jakarta.xml.bind.annotation.XmlAttribute;
+import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlElementWrapper;
 
 /**
  * The Binding part of the CrossGenerate configuration.
  * The Binding configuration can contain:
  *  - SectionModelBinding's
- *  - Placeholder's.
+ *  - Placeholder's
+ *  - Key's.
  *  
  * @author Harmen
  */
@@ -53,6 +58,17 @@ public class BindingConfig extends BindingContainer {
 	 */
 	private String _implicitPlaceholderSuffix = "_e_";
 	
+	/**
+	 * The keys to declare in the XSLT, which can be used in the model XPath's using the key() function.
+	 */
+	private ArrayList<KeyConfig> _keyConfigs;
+	
+	/**
+	 * Set whether model XPath's which select elements using an equality predicate are rewritten into key lookups.
+	 * The default value is true.
+	 */
+	private Boolean _automaticKeysEnabled = true;
+	
 	/**
 	 * @return the implicitPlaceholders
 	 */
@@ -97,4 +113,36 @@ public class BindingConfig extends BindingContainer {
 	public void setImplicitPlaceholderSuffix(String implicitPlaceholderSuffix) {
 		this._implicitPlaceholderSuffix = implicitPlaceholderSuffix;
 	}
+
+	/**
+	 * @return the automaticKeys
+	 */
+	@XmlAttribute(name="automaticKeys")
+	public Boolean isAutomaticKeysEnabled() {
+		return _automaticKeysEnabled;
+	}
+
+	/**
+	 * @param automaticKeysEnabled the automaticKeys to set
+	 */
+	public void setAutomaticKeysEnabled(Boolean automaticKeysEnabled) {
+		this._automaticKeysEnabled = automaticKeysEnabled;
+	}
+
+	/**
+	 * Get the list of key config's.
+	 * @return The list of key config's.
+	 */
+	@XmlElement(name="Key")
+	@XmlElementWrapper(name="Keys")
+	public ArrayList<KeyConfig> getKeyConfigs() {
+		return _keyConfigs;
+	}
+
+	/**
+	 * @param keyConfigs the key config's to set
+	 */
+	public void setKeyConfigs(ArrayList<KeyConfig> keyConfigs) {
+		this._keyConfigs = keyConfigs;
+	}
 }
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.config.binding;
+
+import jakarta.xml.bind.annotation.XmlAttribute;
+
+/**
+ * The key configuration object.
+ * A key is added to the XSLT as a xsl:key declaration, so it can be used in the model XPath's of the binding using the key() function.
+ * 
+ * @author Harmen
+ */
+public class KeyConfig {
+	/**
+	 * The name of the key.
+	 */
+	private String name;
+	
+	/**
+	 * The pattern of the model elements to index.
+	 */
+	private String match;
+	
+	/**
+	 * The XPath of the value to index the model elements by.
+	 */
+	private String use;
+
+	/**
+	 * @return the name
+	 */
+	@XmlAttribute(required=true)
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param name the name to set
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return the match
+	 */
+	@XmlAttribute(required=true)
+	public String getMatch() {
+		return match;
+	}
+
+	/**
+	 * @param match the match to set
+	 */
+	public void setMatch(String match) {
+		this.match = match;
+	}
+
+	/**
+	 * @return the use
+	 */
+	@XmlAttribute(required=true)
+	public String getUse() {
+		return use;
+	}
+
+	/**
+	 * @param use the use to set
+	 */
+	public void setUse(String use) {
+		this.use = use;
+	}
+}
@@ -25,7 +25,11 @@
 package com.xbreeze.xgenerate.config.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
+import jakarta.xml.bind.Unmarshaller;
 import jakarta.xml.bind.annotation.XmlAttribute;
 import jakarta.xml.bind.annotation.XmlElement;
 
@@ -34,6 +38,11 @@ public class ModelAttributeInjectionValueMappings {
 	private String inputNode;
 	
 	private ArrayList<ModelAttributeInjectionValueMapping> modelAttributeInjectionValueMappings;
+	
+	/**
+	 * The index from input value to output value, built once when the config is loaded.
+	 */
+	private Map<String, String> valueMappingIndex;
 
 	/**
 	 * @return the input node
@@ -58,5 +67,66 @@ public class ModelAttributeInjectionValueMappings {
 	public void setModelAttributeInjectionValueMappings(
 			ArrayList<ModelAttributeInjectionValueMapping> modelAttributeInjectionValueMappings) {
 		this.modelAttributeInjectionValueMappings = modelAttributeInjectionValueMappings;
+		// Reset the index, it is rebuilt on the next lookup.
+		this.valueMappingIndex = null;
+	}
+	
+	/**
+	 * Get the output value for an input value.
+	 * @param inputValue The input value.
+	 * @return The output value, or null if there is no value mapping for the input value.
+	 */
+	public String getOutputValue(String inputValue) {
+		return getValueMappingIndex().get(inputValue);
+	}
+	
+	/**
+	 * Get the index from input value to output value.
+	 * @return The (unmodifiable) value mapping index.
+	 * @throws IllegalArgumentException When an input value occurs in more then 1 value mapping.
+	 */
+	public Map<String, String> getValueMappingIndex() {
+		if (this.valueMappingIndex == null) {
+			HashMap<String, String> index = new HashMap<>();
+			if (this.modelAttributeInjectionValueMappings != null) {
+				for (ModelAttributeInjectionValueMapping vm : this.modelAttributeInjectionValueMappings) {
+					// There should only be 1 value mapping for each input value.
+					if (index.containsKey(vm.getInputValue())) {
+						throw new IllegalArgumentException(String.format("%d value mappings found for input value ´%s´ of input node ´%s´, expected exactly 1!", countValueMappings(vm.getInputValue()), vm.getInputValue(), this.inputNode));
+					}
+					index.put(vm.getInputValue(), vm.getOutputValue());
+				}
+			}
+			this.valueMappingIndex = Collections.unmodifiableMap(index);
+		}
+		return this.valueMappingIndex;
+	}
+	
+	/**
+	 * Get the warning message for an input node value for which no value mapping is found.
+	 * @param inputNodeValue The input node value.
+	 * @return The warning message.
+	 */
+	public static String getNoValueMappingMessage(String inputNodeValue) {
+		return String.format("No value mapping found for input node value ´%s´.", inputNodeValue);
+	}
+	
+	/**
+	 * Count the value mappings for an input value.
+	 * @param inputValue The input value.
+	 * @return The number of value mappings.
+	 */
+	private long countValueMappings(String inputValue) {
+		return this.modelAttributeInjectionValueMappings.stream().filter(vm -> vm.getInputValue().equals(inputValue)).count();
+	}
+	
+	/**
+	 * Build the value mapping index when the config is unmarshalled, so duplicate input values are reported when loading the config.
+	 * This method is called by JAXB.
+	 * @param unmarshaller The unmarshaller.
+	 * @param parent The parent object.
+	 */
+	void afterUnmarshal(Unmarshaller unmarshaller, Object parent) {
+		getValueMappingIndex();
 	}
 }
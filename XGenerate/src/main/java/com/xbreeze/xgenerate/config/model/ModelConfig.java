@@ -26,12 +26,18 @@ package com.xbreeze.xgenerate.config.model;
 
 import java.util.ArrayList;
 
+import javax.xml.namespace.QName;
+
+import jakarta.xml.bind.JAXBElement;
 import jakarta.xml.bind.annotation.XmlAttribute;
 import jakarta.xml.bind.annotation.XmlElement;
 import jakarta.xml.bind.annotation.XmlElementWrapper;
 import jakarta.xml.bind.annotation.XmlType;
 
+import com.xbreeze.xgenerate.config.ConfigException;
 import com.xbreeze.xgenerate.config.NamespaceConfig;
+import com.xbreeze.xgenerate.config.XGenConfig;
+import com.xbreeze.xgenerate.config.XGenConfigNamespace;
 
 /**
  * The Model configuration object.
@@ -142,4 +148,13 @@ public class ModelConfig {
 	public void setModelNodeRemovals(ArrayList<ModelNodeRemoval> modelNodeRemovals) {
 		this.modelNodeRemovals = modelNodeRemovals;
 	}
+
+	/**
+	 * Marshal the model config into a String, so it can be used to detect changes in the model config.
+	 * @return The model config as XML.
+	 * @throws ConfigException
+	 */
+	public String toXml() throws ConfigException {
+		return XGenConfig.toXml(new JAXBElement<ModelConfig>(new QName(XGenConfigNamespace.NAMESPACE, "Model"), ModelConfig.class, this));
+	}
 }
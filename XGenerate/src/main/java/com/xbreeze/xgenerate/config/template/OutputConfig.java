@@ -48,6 +48,12 @@ public class OutputConfig {
 	 * @see OutputType
 	 */
 	private OutputType _type;
+	
+	/**
+	 * The number of threads used to generate the outputs.
+	 * This is only used for the output type output_per_element, where the elements mapped to the root section are divided over the threads.
+	 */
+	private int _parallelism = 1;
 
 	/**
 	 * @return the type
@@ -63,4 +69,19 @@ public class OutputConfig {
 	public void setType(OutputType type) {
 		this._type = type;
 	}
+
+	/**
+	 * @return the parallelism
+	 */
+	@XmlAttribute
+	public int getParallelism() {
+		return _parallelism;
+	}
+
+	/**
+	 * @param parallelism the parallelism to set
+	 */
+	public void setParallelism(int parallelism) {
+		this._parallelism = parallelism;
+	}
 }
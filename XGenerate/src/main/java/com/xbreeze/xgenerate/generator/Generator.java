@@ -31,6 +31,12 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import jakarta.xml.bind.JAXBException;
@@ -42,9 +48,12 @@ import com.xbreeze.xgenerate.UnhandledException;
 import com.xbreeze.xgenerate.config.ConfigException;
 import com.xbreeze.xgenerate.config.NamespaceConfig;
 import com.xbreeze.xgenerate.config.XGenConfig;
+import com.xbreeze.xgenerate.config.XGenConfigCache;
+import com.xbreeze.xgenerate.config.template.OutputConfig.OutputType;
 import com.xbreeze.xgenerate.config.template.RootTemplateConfig;
 import com.xbreeze.xgenerate.generator.GenerationResult.GenerationStatus;
 import com.xbreeze.xgenerate.model.Model;
+import com.xbreeze.xgenerate.model.ModelCache;
 import com.xbreeze.xgenerate.model.ModelException;
 import com.xbreeze.xgenerate.model.ModelPreprocessor;
 import com.xbreeze.xgenerate.model.ModelPreprocessorException;
@@ -53,10 +62,19 @@ import com.xbreeze.xgenerate.template.TemplateException;
 import com.xbreeze.xgenerate.template.TemplatePreprocessor;
 import com.xbreeze.xgenerate.template.TemplatePreprocessorException;
 import com.xbreeze.xgenerate.template.XsltTemplate;
+import com.xbreeze.xgenerate.template.XsltTemplateCache;
+import com.xbreeze.xgenerate.template.XsltTemplateCache.CachedXsltTemplate;
 import com.xbreeze.xgenerate.template.annotation.UnknownAnnotationException;
 import com.xbreeze.xgenerate.utils.XMLUtils;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore;
 
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.QName;
 import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XPathCompiler;
+import net.sf.saxon.s9api.XdmAtomicValue;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XsltExecutable;
 import net.sf.saxon.s9api.XsltTransformer;
 
 public class Generator {
@@ -67,6 +85,41 @@ public class Generator {
 	protected boolean _debugMode = false;
 	
 	protected boolean _testMode = false;
+	
+	/**
+	 * The persistent cache of pre-processed templates (optional).
+	 */
+	protected XsltTemplateCache _templateCache;
+	
+	/**
+	 * The persistent cache of preprocessed models (optional).
+	 */
+	protected ModelCache _modelCache;
+	
+	/**
+	 * The store of the files included in the models and configs read by this generator.
+	 */
+	private final XmlIncludeStore _includeStore = new XmlIncludeStore();
+	
+	/**
+	 * The cache of the configs read by this generator, so a config used by multiple generation steps is only read once.
+	 */
+	private final XGenConfigCache _configCache = new XGenConfigCache(_includeStore);
+	
+	/**
+	 * The Saxon processor used to compile the pre-processed templates and parse the models, shared by the generation steps.
+	 */
+	private final Processor _processor = XMLUtils.createProcessor();
+	
+	/**
+	 * The threads used to generate the outputs in parallel, shared by the generation steps.
+	 * The threads are only created when needed and end when they are idle for a while, they don't keep the application running.
+	 */
+	private final ExecutorService _transformExecutorService = Executors.newCachedThreadPool(runnable -> {
+		Thread transformThread = new Thread(runnable, "xgenerate-transform");
+		transformThread.setDaemon(true);
+		return transformThread;
+	});
 
 	/**
 	 * Constructor.
@@ -92,6 +145,22 @@ public class Generator {
 	public void setTestMode(boolean testMode) {
 		this._testMode = testMode;
 	}
+	
+	public XsltTemplateCache getTemplateCache() {
+		return _templateCache;
+	}
+	
+	public void setTemplateCache(XsltTemplateCache templateCache) {
+		this._templateCache = templateCache;
+	}
+	
+	public ModelCache getModelCache() {
+		return _modelCache;
+	}
+	
+	public void setModelCache(ModelCache modelCache) {
+		this._modelCache = modelCache;
+	}
 
 
 	/**
@@ -106,23 +175,32 @@ public class Generator {
 	 * @throws UnknownAnnotationException 
 	 */
 	public GenerationResult generateFromFiles(URI modelFileUri, URI templateFileUri, URI configFileUri, URI outputFolderUri, String relativeTemplateFolderUri) throws GeneratorException {
-		// Unmarshal the config file into a XGenConfig object.
+		// Get the XGenConfig object from the config cache, the config file is only unmarshalled once by this generator.
 		XGenConfig xGenConfig;
 		try {
-			xGenConfig = XGenConfig.fromFile(configFileUri);
+			xGenConfig = _configCache.getConfig(configFileUri);
 		} catch (ConfigException e) {
 			throw new GeneratorException(e);
 		}
 		
 		// Create the model object from the model file.
-		Model model;
-		try {
-			boolean namespaceAware = false;
-			if (xGenConfig.getModelConfig() != null)
-				namespaceAware = xGenConfig.getModelConfig().isNamespaceAware();
-			model = Model.fromFile(modelFileUri, namespaceAware);
-		} catch (ModelException me) {
-			throw new GeneratorException(me);
+		Model model = null;
+		boolean namespaceAware = false;
+		if (xGenConfig.getModelConfig() != null)
+			namespaceAware = xGenConfig.getModelConfig().isNamespaceAware();
+		// If the model cache is configured, check whether the model was preprocessed before.
+		String modelFingerprint = null;
+		if (_modelCache != null) {
+			modelFingerprint = ModelCache.getFingerprint(modelFileUri, xGenConfig.getModelConfig(), namespaceAware);
+			model = _modelCache.get(modelFingerprint, modelFileUri);
+		}
+		boolean isCachedModel = (model != null);
+		if (!isCachedModel) {
+			try {
+				model = Model.fromFile(modelFileUri, namespaceAware, _includeStore);
+			} catch (ModelException me) {
+				throw new GeneratorException(me);
+			}
 		}
 		
 		// Create a RawTemplate object from the template file.
@@ -134,7 +212,13 @@ public class Generator {
 		}
 		
 		// Generate using the model, template and config.
-		return generate(model, rawTemplate, xGenConfig, outputFolderUri, relativeTemplateFolderUri);
+		GenerationResult generationResult = generate(model, rawTemplate, xGenConfig, outputFolderUri, relativeTemplateFolderUri);
+		
+		// Store the preprocessed model in the model cache.
+		if (_modelCache != null && !isCachedModel)
+			_modelCache.put(modelFingerprint, model);
+		
+		return generationResult;
 	}
 	
 	
@@ -192,8 +276,22 @@ public class Generator {
 	 */
 	public GenerationResult generate(Model model, RawTemplate rawTemplate, XGenConfig xGenConfig, URI outputFolderUri, String relativeTemplateFolder) throws GeneratorException {
 		
-		// Pre-process the model (if model attribute injections are defined.
-		if (xGenConfig.getModelConfig() != null) {
+		// A model restored from the model cache is preprocessed already, using the model config it was cached with.
+		// When it's used with another model config, the model file is read again so it's preprocessed using this model config.
+		if (model.getModelCacheFingerprint() != null) {
+			boolean namespaceAware = (xGenConfig.getModelConfig() != null) ? xGenConfig.getModelConfig().isNamespaceAware() : false;
+			if (!model.getModelCacheFingerprint().equals(ModelCache.getFingerprint(model.getModelFileUri(), xGenConfig.getModelConfig(), namespaceAware))) {
+				logger.info("The model is restored from the model cache using another model config, reading the model file again");
+				try {
+					model = Model.fromFile(model.getModelFileUri(), namespaceAware, _includeStore);
+				} catch (ModelException me) {
+					throw new GeneratorException(me);
+				}
+			}
+		}
+		
+		// Pre-process the model (if model attribute injections are defined), unless it's restored from the model cache.
+		if (xGenConfig.getModelConfig() != null && model.getModelCacheFingerprint() == null) {
 			try {
 				ModelPreprocessor.preprocessModel(model, xGenConfig.getModelConfig());
 
@@ -221,26 +319,48 @@ public class Generator {
 				// Get the template configuration.
 				RootTemplateConfig templateConfig = xGenConfig.getTemplateConfig();				
 				// Pre-process the template.
-				String xsltTemplateString;
+				// The content of the pre-processed template, which is passed to the XSLT compiler without copying it into a String.
+				CharSequence xsltTemplateContent;
+				String rootModelXPath;
 				{
 					logger.info("Begin template pre-processing");
-					// Get the template preprocessor for the template type we are dealing with.
-					TemplatePreprocessor templatePreprocessor = templateConfig.getTemplatePreprocessor(xGenConfig);
-					
 					//Get the model namespaces if defined, needed to include in the template XSLT.
 					ArrayList<NamespaceConfig> modelNamespaces = null;
 					if (xGenConfig.getModelConfig() != null) {
 						modelNamespaces = xGenConfig.getModelConfig().getNamespaces();
 					}
-					// Pre-process the raw template into a XSLT template.					
-					XsltTemplate xsltTemplate = templatePreprocessor.preProcess(rawTemplate, relativeTemplateFolder, modelNamespaces);
-					xsltTemplateString = xsltTemplate.toString();
+					
+					// If the template cache is configured, check whether the template was pre-processed before.
+					String templateFingerprint = null;
+					CachedXsltTemplate cachedXsltTemplate = null;
+					if (_templateCache != null) {
+						templateFingerprint = _templateCache.getFingerprint(rawTemplate, xGenConfig, relativeTemplateFolder, modelNamespaces, this.isDebugMode());
+						cachedXsltTemplate = _templateCache.get(templateFingerprint);
+					}
+					
+					if (cachedXsltTemplate != null) {
+						xsltTemplateContent = cachedXsltTemplate.getXsltTemplate();
+						rootModelXPath = cachedXsltTemplate.getRootModelXPath();
+					} else {
+						// Get the template preprocessor for the template type we are dealing with.
+						TemplatePreprocessor templatePreprocessor = templateConfig.getTemplatePreprocessor(xGenConfig);
+						// Pre-process the raw template into a XSLT template.
+						XsltTemplate xsltTemplate = templatePreprocessor.preProcess(rawTemplate, relativeTemplateFolder, modelNamespaces, this.isDebugMode());
+						xsltTemplateContent = xsltTemplate.getTemplateContent();
+						rootModelXPath = xsltTemplate.getRootModelXPath();
+						// Store the pre-processed template in the template cache.
+						if (_templateCache != null) {
+							// The cache stores the template as a String, which is also used for the rest of the generation.
+							xsltTemplateContent = xsltTemplateContent.toString();
+							_templateCache.put(templateFingerprint, (String) xsltTemplateContent, rootModelXPath);
+						}
+					}
 					// If in debug mode, write the pre-processed template.
 					if (this.isDebugMode()) {
 						// Construct the path to the pre-processed template.
 						String preprocessedFileLocation = Paths.get(outputFolderUri).resolve(String.format("preprocessed_%s", rawTemplate.getRawTemplateFileName())).toString();
 						logger.info(String.format("Writing preprocessed template to '%s'", preprocessedFileLocation));
-						writeToFile(preprocessedFileLocation, xsltTemplateString);
+						writeToFile(preprocessedFileLocation, xsltTemplateContent.toString());
 					}
 					logger.info("End template pre-processing");
 				}
@@ -249,28 +369,16 @@ public class Generator {
 				{
 					logger.info("Begin template transformation");
 					
-					XsltTransformer xsltTransformer = XMLUtils.getXsltTransformer(xsltTemplateString, model.getPreprocessedModel(), outputFolderUri);
+					// Compile the template and parse the model, both can be shared (read-only) by multiple transformers.
+					XsltExecutable xsltExecutable = XMLUtils.getXsltExecutable(_processor, xsltTemplateContent);
+					XdmNode modelDocumentNode = XMLUtils.getModelDocumentNode(_processor, model.getPreprocessedModel());
 					
-					// If running in test mode, cast the XslTransformer to net.sf.saxon.jaxp.TransformerImpl and set our custom
-					// output resolver to get the output in GenerationResults instead of files					 
-					if (this._testMode) {
-						GenerationResultOutputResolver outputResolver = new GenerationResultOutputResolver(generationResult);
-						xsltTransformer.getUnderlyingController().setOutputURIResolver(outputResolver);
-					}
-					
-					// Perform the transformation.
-					try {
-						xsltTransformer.transform();
-					}
-					// We catch the SaxonApiException here and check for a specific error which occurs when the root node has no matches in the binding.
-					catch (SaxonApiException e) {
-						if (e.getMessage().equals("Result has no system ID, writer, or output stream defined")) {
-							logger.warning("The generation yielded no results because the root node binding has no matches.");
-						}
-						// Re-throw all other errors.
-						else {
-							throw e;
-						}
+					// If the output is per element and parallelism is configured, divide the root elements over multiple transformers.
+					if (templateConfig.getOutputConfig().getType().equals(OutputType.output_per_element) && templateConfig.getOutputConfig().getParallelism() > 1) {
+						ArrayList<NamespaceConfig> modelNamespaces = (xGenConfig.getModelConfig() != null) ? xGenConfig.getModelConfig().getNamespaces() : null;
+						transformInParallel(xsltExecutable, modelDocumentNode, rootModelXPath, modelNamespaces, model, rawTemplate, outputFolderUri, templateConfig.getOutputConfig().getParallelism(), generationResult);
+					} else {
+						transform(xsltExecutable, modelDocumentNode, outputFolderUri, generationResult);
 					}
 					
 					logger.info("End template transformation");
@@ -290,4 +398,121 @@ public class Generator {
 		// Return the generation result.
 		return generationResult;
 	}
+	
+	/**
+	 * Transform the model using the XSLT template.
+	 * @param xsltExecutable The compiled XSLT template.
+	 * @param modelDocumentNode The document node of the model.
+	 * @param outputFolderUri The output folder.
+	 * @param generationResult The generation result, to store the outputs in when running in test mode.
+	 * @throws SaxonApiException
+	 */
+	private void transform(XsltExecutable xsltExecutable, XdmNode modelDocumentNode, URI outputFolderUri, GenerationResult generationResult) throws SaxonApiException {
+		XsltTransformer xsltTransformer = XMLUtils.getXsltTransformer(xsltExecutable, modelDocumentNode, outputFolderUri);
+		
+		// If running in test mode, cast the XslTransformer to net.sf.saxon.jaxp.TransformerImpl and set our custom
+		// output resolver to get the output in GenerationResults instead of files					 
+		if (this._testMode) {
+			GenerationResultOutputResolver outputResolver = new GenerationResultOutputResolver(generationResult);
+			xsltTransformer.getUnderlyingController().setOutputURIResolver(outputResolver);
+		}
+		
+		// Perform the transformation.
+		try {
+			xsltTransformer.transform();
+		}
+		// We catch the SaxonApiException here and check for a specific error which occurs when the root node has no matches in the binding.
+		catch (SaxonApiException e) {
+			if (e.getMessage().equals("Result has no system ID, writer, or output stream defined")) {
+				logger.warning("The generation yielded no results because the root node binding has no matches.");
+			}
+			// Re-throw all other errors.
+			else {
+				throw e;
+			}
+		}
+	}
+	
+	/**
+	 * Transform the model using the XSLT template, dividing the root elements over multiple transformers which run in parallel.
+	 * The root elements are divided in ranges of positions, and each transformer only writes the outputs for the root elements in its range.
+	 * Each transformer still iterates over all root elements, so position() and last() are the same as when transforming sequentially (a root section with a prefix or suffix depends on them).
+	 * @param xsltExecutable The compiled XSLT template.
+	 * @param modelDocumentNode The document node of the model.
+	 * @param rootModelXPath The model XPath of the root section binding.
+	 * @param modelNamespaces The model namespaces.
+	 * @param model The model.
+	 * @param rawTemplate The raw template.
+	 * @param outputFolderUri The output folder.
+	 * @param parallelism The number of threads to use.
+	 * @param generationResult The generation result, to store the outputs in when running in test mode.
+	 * @throws GeneratorException
+	 * @throws SaxonApiException
+	 */
+	private void transformInParallel(XsltExecutable xsltExecutable, XdmNode modelDocumentNode, String rootModelXPath, ArrayList<NamespaceConfig> modelNamespaces, Model model, RawTemplate rawTemplate, URI outputFolderUri, int parallelism, GenerationResult generationResult) throws GeneratorException, SaxonApiException {
+		// Evaluate the root model XPath to get the number of root elements.
+		XPathCompiler xPathCompiler = _processor.newXPathCompiler();
+		if (modelNamespaces != null) {
+			for (NamespaceConfig ns : modelNamespaces) {
+				xPathCompiler.declareNamespace(ns.getPrefix(), ns.getNamespace());
+			}
+		}
+		int rootElementCount = xPathCompiler.evaluate(rootModelXPath, modelDocumentNode).size();
+		if (rootElementCount == 0) {
+			logger.warning("The generation yielded no results because the root node binding has no matches.");
+			return;
+		}
+		
+		// Divide the root elements in ranges, more ranges than threads so the work is balanced when some outputs take longer.
+		int rangeSize = Math.max(1, (int) Math.ceil((double) rootElementCount / (parallelism * 4)));
+		int rangeCount = (rootElementCount + rangeSize - 1) / rangeSize;
+		logger.info(String.format("Generating %d outputs using %d threads", rootElementCount, parallelism));
+		
+		// Each range gets its own generation result, which are combined in order of the ranges afterwards.
+		GenerationResult[] rangeResults = new GenerationResult[rangeCount];
+		AtomicInteger nextRangeIndex = new AtomicInteger();
+		// Each thread transforms the next range which isn't taken yet, until all ranges are done.
+		Callable<Void> rangeTransformer = () -> {
+			for (int rangeIndex = nextRangeIndex.getAndIncrement(); rangeIndex < rangeCount; rangeIndex = nextRangeIndex.getAndIncrement()) {
+				XsltTransformer xsltTransformer = XMLUtils.getXsltTransformer(xsltExecutable, modelDocumentNode, outputFolderUri);
+				xsltTransformer.setParameter(new QName(XsltTemplate.FIRST_POSITION_PARAMETER), new XdmAtomicValue(rangeIndex * rangeSize + 1));
+				xsltTransformer.setParameter(new QName(XsltTemplate.LAST_POSITION_PARAMETER), new XdmAtomicValue(Math.min(rootElementCount, (rangeIndex + 1) * rangeSize)));
+				GenerationResult rangeResult = new GenerationResult(model.getModelFileName(), rawTemplate.getRawTemplateFileName());
+				if (this._testMode) {
+					xsltTransformer.getUnderlyingController().setOutputURIResolver(new GenerationResultOutputResolver(rangeResult));
+				}
+				xsltTransformer.transform();
+				rangeResults[rangeIndex] = rangeResult;
+			}
+			return null;
+		};
+		
+		ArrayList<Future<Void>> rangeTransformerFutures = new ArrayList<>();
+		try {
+			for (int i = 0; i < Math.min(parallelism, rangeCount); i++) {
+				rangeTransformerFutures.add(_transformExecutorService.submit(rangeTransformer));
+			}
+			// Wait for the threads to finish.
+			for (Future<Void> rangeTransformerFuture : rangeTransformerFutures) {
+				rangeTransformerFuture.get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SaxonApiException)
+				throw (SaxonApiException) e.getCause();
+			throw new GeneratorException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GeneratorException(String.format("Interrupted while generating the outputs: %s", e.getMessage()));
+		} finally {
+			// Make sure the other threads don't start on a new range when stopping early.
+			nextRangeIndex.set(rangeCount);
+		}
+		
+		// Collect the outputs of the ranges.
+		for (GenerationResult rangeResult : rangeResults) {
+			for (GenerationOutput generationOutput : rangeResult.getGenerationOutputs()) {
+				generationResult.addGenerationOutput(generationOutput);
+			}
+		}
+	}
 }
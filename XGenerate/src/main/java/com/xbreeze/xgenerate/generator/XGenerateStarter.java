@@ -46,7 +46,9 @@ import org.apache.commons.io.FileUtils;
 import com.xbreeze.xgenerate.config.ConfigException;
 import com.xbreeze.xgenerate.config.app.XGenAppConfig;
 import com.xbreeze.xgenerate.gui.GenerationProgressScreen;
+import com.xbreeze.xgenerate.model.ModelCache;
 import com.xbreeze.xgenerate.observer.GenerationObserverSource;
+import com.xbreeze.xgenerate.template.XsltTemplateCache;
 
 /**
  * Class for starting up generator using licensed classloader
@@ -246,6 +248,17 @@ public class XGenerateStarter extends GenerationObserverSource {
 			// Notify the generation observers the generation is starting.
 			this.notifyGenerationStarting(modelTemplateConfigCombinations.size(), LocalDateTime.now());
 			Generator generator = new Generator();
+			
+			// If the template cache folder is configured, use the persistent template cache.
+			if (appConfig.getAppConfig().getTemplateCacheFolder() != null && appConfig.getAppConfig().getTemplateCacheFolder().length() > 0) {
+				logger.info(String.format("Using template cache folder '%s'", appConfig.getAppConfig().getTemplateCacheFolder()));
+				generator.setTemplateCache(new XsltTemplateCache(Paths.get(appConfig.getAppConfig().getTemplateCacheFolder()), appConfig.getAppConfig().getTemplateCacheMaxSize() * 1024L * 1024L));
+			}
+			// If the model cache folder is configured, use the persistent model cache.
+			if (appConfig.getAppConfig().getModelCacheFolder() != null && appConfig.getAppConfig().getModelCacheFolder().length() > 0) {
+				logger.info(String.format("Using model cache folder '%s'", appConfig.getAppConfig().getModelCacheFolder()));
+				generator.setModelCache(new ModelCache(Paths.get(appConfig.getAppConfig().getModelCacheFolder()), appConfig.getAppConfig().getModelCacheMaxSize() * 1024L * 1024L));
+			}
 
 			// Loop through the model-template-config combinations and perform the generation.
 			for (int generationStepIndex=0; generationStepIndex<modelTemplateConfigCombinations.size(); generationStepIndex++) {
@@ -24,16 +24,21 @@
  *******************************************************************************/
 package com.xbreeze.xgenerate.model;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
 import java.util.logging.Logger;
 
 import com.xbreeze.xgenerate.generator.GeneratorException;
 import com.xbreeze.xgenerate.utils.FileUtils;
 import com.xbreeze.xgenerate.utils.XMLUtils;
 import com.xbreeze.xgenerate.utils.XmlException;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore.IncludedFile;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore.ResolvedXml;
 
 public class Model {
 	// The logger for this class.
@@ -54,15 +59,32 @@ public class Model {
 	 */
 	private String _preprocessedModel;
 	
+	/**
+	 * The fingerprint of the model cache entry the model is restored from (null if the model isn't restored from the model cache).
+	 * The model content of a restored model is preprocessed already, using the model config covered by the fingerprint.
+	 */
+	private String _modelCacheFingerprint;
+	
+	/**
+	 * The modification time of the model file when it was read (0 if the model isn't read from a file).
+	 */
+	private long _lastModified = 0;
+	
+	/**
+	 * The files included in the model.
+	 */
+	private List<IncludedFile> _includedFiles;
+	
 	/**
 	 * Constructor.
 	 * @param modelFileUri The model file location.
 	 */
-	private Model(URI modelFileUri, String modelFileContent) {
+	private Model(URI modelFileUri, String modelFileContent, List<IncludedFile> includedFiles) {
 		this._modelFileUri = modelFileUri;
 		this._modelFileContent = modelFileContent;
+		this._includedFiles = includedFiles;
 		// Store the initial model content in the preprocessed model, in case there is no pre-processing.
-		setPreprocessedModel(this._modelFileContent);
+		this._preprocessedModel = this._modelFileContent;
 	}
 	
 	/**
@@ -80,7 +102,20 @@ public class Model {
 	 * @throws GeneratorException 
 	 */
 	public static Model fromFile(URI modelFileUri, boolean namespaceAware) throws ModelException {
+		return fromFile(modelFileUri, namespaceAware, new XmlIncludeStore());
+	}
+	
+	/**
+	 * Get the Model object using a model file location, taking the included files from an include store.
+	 * @param modelFileUri The model file location.
+	 * @param includeStore The store to take the included files from.
+	 * @return The Model object.
+	 * @throws ModelException 
+	 */
+	public static Model fromFile(URI modelFileUri, boolean namespaceAware, XmlIncludeStore includeStore) throws ModelException {
 		logger.fine(String.format("Creating Model object from '%s'", modelFileUri));
+		// Get the modification time before reading, so a modification while reading is detected when the model is cached.
+		long lastModified = new File(modelFileUri).lastModified();
 		
 		// Read the model file content into a String.
 		String modelFileContent;
@@ -90,7 +125,25 @@ public class Model {
 			throw new ModelException(String.format("Couldn't read the model file (%s): %s", modelFileUri, e.getMessage()));
 		}
 		
-		return fromString(modelFileContent, modelFileUri, namespaceAware);
+		Model model = fromString(modelFileContent, modelFileUri, namespaceAware, includeStore);
+		model._lastModified = lastModified;
+		return model;
+	}
+	
+	/**
+	 * Get a Model object for a model which is restored from the model cache, so it's preprocessed already.
+	 * @param modelFileUri The model file location.
+	 * @param preprocessedModel The preprocessed model.
+	 * @param lastModified The modification time of the model file when it was read.
+	 * @param includedFiles The files included in the model.
+	 * @param modelCacheFingerprint The fingerprint of the model cache entry.
+	 * @return The Model object.
+	 */
+	public static Model fromModelCache(URI modelFileUri, String preprocessedModel, long lastModified, List<IncludedFile> includedFiles, String modelCacheFingerprint) {
+		Model model = new Model(modelFileUri, preprocessedModel, includedFiles);
+		model._lastModified = lastModified;
+		model._modelCacheFingerprint = modelCacheFingerprint;
+		return model;
 	}
 	
 	/**
@@ -101,17 +154,30 @@ public class Model {
 	 * @throws ModelException
 	 */
 	public static Model fromString(String modelFileContents, URI modelFileUri, boolean namespaceAware) throws ModelException {
-		String resolvedModelFileContents;
+		return fromString(modelFileContents, modelFileUri, namespaceAware, new XmlIncludeStore());
+	}
+	
+	/**
+	 * Construct a Model object from a string, taking the included files from an include store.
+	 * @param modelFileContents The model content.
+	 * @param modelFileUri The model file location, used to resolve relative includes.
+	 * @param namespaceAware Whether to resolve the includes namespace aware.
+	 * @param includeStore The store to take the included files from.
+	 * @return The Model object.
+	 * @throws ModelException
+	 */
+	public static Model fromString(String modelFileContents, URI modelFileUri, boolean namespaceAware, XmlIncludeStore includeStore) throws ModelException {
+		ResolvedXml resolvedModel;
 		try {
 			// Before constructing the model object, resolve any includes first
 			HashMap<URI, Integer> resolvedIncludes = new HashMap<>();
-			resolvedModelFileContents = XMLUtils.getXmlWithResolvedIncludes(modelFileContents, modelFileUri, 0, resolvedIncludes, namespaceAware);
+			resolvedModel = XMLUtils.getResolvedXml(modelFileContents, modelFileUri, 0, resolvedIncludes, namespaceAware, includeStore);
 		} catch (XmlException xec) {
 			throw new ModelException(String.format("Error while reading model: %s", xec.getMessage()), xec);
 		}
 		
 		// Return the new Model object.
-		return new Model(modelFileUri, resolvedModelFileContents);
+		return new Model(modelFileUri, resolvedModel.getContent(), resolvedModel.getIncludedFiles());
 	}
 
 	/**
@@ -134,4 +200,32 @@ public class Model {
 	public void setPreprocessedModel(String preprocessedModel) {
 		this._preprocessedModel = preprocessedModel;
 	}
+	
+	/**
+	 * @return the fingerprint of the model cache entry the model is restored from, or null if it isn't restored from the model cache
+	 */
+	public String getModelCacheFingerprint() {
+		return _modelCacheFingerprint;
+	}
+	
+	/**
+	 * @return the model file location
+	 */
+	public URI getModelFileUri() {
+		return _modelFileUri;
+	}
+	
+	/**
+	 * @return the modification time of the model file when it was read
+	 */
+	public long getLastModified() {
+		return _lastModified;
+	}
+	
+	/**
+	 * @return the files included in the model
+	 */
+	public List<IncludedFile> getIncludedFiles() {
+		return _includedFiles;
+	}
 }
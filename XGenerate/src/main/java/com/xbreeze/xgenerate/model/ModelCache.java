@@ -0,0 +1,156 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.xbreeze.xgenerate.config.ConfigException;
+import com.xbreeze.xgenerate.config.model.ModelConfig;
+import com.xbreeze.xgenerate.utils.FileCache;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore.IncludedFile;
+
+/**
+ * The persistent cache of preprocessed models, so an unchanged model isn't read, resolved and preprocessed again in the next generation run.
+ * The models are stored in the cache folder by a fingerprint of the model file location and the model config.
+ * With the preprocessed model the modification times of the model file and the files included in it are stored, the cached model is only used when none of them are modified.
+ *
+ * @author Harmen
+ */
+public class ModelCache {
+	// The logger for this class.
+	private static final Logger logger = Logger.getLogger(ModelCache.class.getName());
+	
+	/**
+	 * The cache of the model files.
+	 */
+	private FileCache _fileCache;
+	
+	/**
+	 * Constructor.
+	 * @param cacheFolder The folder in which the models are cached.
+	 * @param maxSize The maximum size of the cache in bytes.
+	 */
+	public ModelCache(Path cacheFolder, long maxSize) {
+		this._fileCache = new FileCache(cacheFolder, ".model", maxSize);
+	}
+	
+	/**
+	 * Get the fingerprint of a model, which is the key of the model in the cache.
+	 * The fingerprint covers the canonical model file location, the model config and the CrossGenerate version.
+	 * @param modelFileUri The model file location.
+	 * @param modelConfig The model config (can be null).
+	 * @param namespaceAware Whether the model is read namespace aware.
+	 * @return The fingerprint, or null if it can't be computed (in which case the model isn't cached).
+	 */
+	public static String getFingerprint(URI modelFileUri, ModelConfig modelConfig, boolean namespaceAware) {
+		try {
+			return FileCache.getFingerprint(
+					new File(modelFileUri).getCanonicalPath(),
+					Boolean.toString(namespaceAware),
+					(modelConfig != null) ? modelConfig.toXml() : ""
+			);
+		} catch (NoSuchAlgorithmException | ConfigException | IOException e) {
+			logger.warning(String.format("Couldn't compute the fingerprint of model '%s', it won't be cached: %s", modelFileUri.toString(), e.getMessage()));
+			return null;
+		}
+	}
+	
+	/**
+	 * Get a preprocessed model from the cache.
+	 * @param fingerprint The fingerprint of the model.
+	 * @param modelFileUri The model file location.
+	 * @return The preprocessed model, or null if it isn't in the cache or the model file or one of the files included in it is modified.
+	 */
+	public Model get(String fingerprint, URI modelFileUri) {
+		if (fingerprint == null)
+			return null;
+		Path cacheFile = _fileCache.getCacheFile(fingerprint);
+		try {
+			ByteBuffer cacheFileBuffer = _fileCache.read(fingerprint);
+			if (cacheFileBuffer == null)
+				return null;
+			
+			// Check whether the model file and the included files are modified since the model was cached.
+			long lastModified = cacheFileBuffer.getLong();
+			if (new File(modelFileUri).lastModified() != lastModified) {
+				logger.info(String.format("The model file is modified since it was cached (%s)", cacheFile.toString()));
+				return null;
+			}
+			int includedFileCount = cacheFileBuffer.getInt();
+			List<IncludedFile> includedFiles = new ArrayList<>(includedFileCount);
+			for (int i = 0; i < includedFileCount; i++) {
+				IncludedFile includedFile = new IncludedFile(new URI(FileCache.readString(cacheFileBuffer)), cacheFileBuffer.getInt(), cacheFileBuffer.getLong());
+				if (new File(includedFile.getFileUri()).lastModified() != includedFile.getLastModified()) {
+					logger.info(String.format("The included file '%s' is modified since the model was cached (%s)", includedFile.getFileUri().toString(), cacheFile.toString()));
+					return null;
+				}
+				includedFiles.add(includedFile);
+			}
+			
+			// The preprocessed model is decoded directly from the cache file buffer.
+			String preprocessedModel = FileCache.readString(cacheFileBuffer);
+			logger.info(String.format("Using the preprocessed model from the model cache (%s)", cacheFile.toString()));
+			return Model.fromModelCache(modelFileUri, preprocessedModel, lastModified, includedFiles, fingerprint);
+		} catch (IOException | URISyntaxException | RuntimeException e) {
+			logger.warning(String.format("Couldn't read the cached model '%s': %s", cacheFile.toString(), e.getMessage()));
+			return null;
+		}
+	}
+	
+	/**
+	 * Store a preprocessed model in the cache.
+	 * @param fingerprint The fingerprint of the model.
+	 * @param model The preprocessed model.
+	 */
+	public void put(String fingerprint, Model model) {
+		if (fingerprint == null)
+			return;
+		Path cacheFile = _fileCache.getCacheFile(fingerprint);
+		try {
+			_fileCache.write(fingerprint, cacheOutputStream -> {
+				cacheOutputStream.writeLong(model.getLastModified());
+				cacheOutputStream.writeInt(model.getIncludedFiles().size());
+				for (IncludedFile includedFile : model.getIncludedFiles()) {
+					FileCache.writeString(cacheOutputStream, includedFile.getFileUri().toString());
+					cacheOutputStream.writeInt(includedFile.getRelativeLevel());
+					cacheOutputStream.writeLong(includedFile.getLastModified());
+				}
+				FileCache.writeString(cacheOutputStream, model.getPreprocessedModel());
+			});
+			logger.info(String.format("Stored the preprocessed model in the model cache (%s)", cacheFile.toString()));
+		} catch (IOException e) {
+			logger.warning(String.format("Couldn't store the preprocessed model in the model cache (%s): %s", cacheFile.toString(), e.getMessage()));
+		}
+	}
+}
@@ -0,0 +1,402 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.model;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.text.StringEscapeUtils;
+
+import com.xbreeze.xgenerate.config.NamespaceConfig;
+import com.xbreeze.xgenerate.config.model.ModelAttributeInjection;
+import com.xbreeze.xgenerate.config.model.ModelAttributeInjectionValueMappings;
+import com.xbreeze.xgenerate.config.model.ModelConfig;
+import com.xbreeze.xgenerate.config.model.ModelNodeRemoval;
+
+import net.sf.saxon.s9api.MessageListener2;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.Serializer;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XsltCompiler;
+import net.sf.saxon.s9api.XsltExecutable;
+import net.sf.saxon.s9api.XsltTransformer;
+
+/**
+ * The model config compiled into a single XSLT identity transform.
+ * Each model attribute injection and model node removal becomes a template rule, so Saxon can apply all of them in one walk over the model.
+ *
+ * The sequential preprocessor evaluates every XPath on the result of the previous step.
+ * The single pass evaluates every XPath on the original model, so a model config is only compiled when the outcome is the same:
+ *  - All model XPaths must be rooted paths (starting with '/'), since only then the expression and the pattern select the same nodes.
+ *  - An injection may not read an attribute which is injected by an earlier injection.
+ *  - A removal may not read an injected attribute, or depend in its predicates on nodes removed by an earlier removal.
+ *
+ * @author Harmen
+ */
+public class ModelConfigXslt {
+	// The logger for this class.
+	private static final Logger logger = Logger.getLogger(ModelConfigXslt.class.getName());
+
+	/**
+	 * The pattern for attribute names which can be injected using the single pass (no prefix and no attribute value template).
+	 */
+	private static final Pattern INJECTABLE_ATTRIBUTE_NAME = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_.-]*");
+
+	/**
+	 * The pattern to find XPath parts which read nodes without naming them, like wildcards, kind tests or positional functions.
+	 */
+	private static final Pattern NAMELESS_NODE_ACCESS = Pattern.compile("\\*|node\\s*\\(|text\\s*\\(|attribute\\s*\\(|last\\s*\\(|position\\s*\\(|count\\s*\\(|deep-equal\\s*\\(|serialize\\s*\\(|^\\s*[0-9]+\\s*$|(?<![\\w.])\\.(?![\\w./])");
+
+	/**
+	 * The Saxon processor, which compiles the stylesheets and is reused for the transforms.
+	 */
+	private static final Processor PROCESSOR = new Processor(false);
+
+	/**
+	 * The XSLT stylesheet content.
+	 */
+	private String _xsltContent;
+
+	/**
+	 * The compiled XSLT stylesheet.
+	 */
+	private XsltExecutable _xsltExecutable;
+
+	/**
+	 * Constructor.
+	 * @param xsltContent The XSLT stylesheet content.
+	 * @param xsltExecutable The compiled XSLT stylesheet.
+	 */
+	private ModelConfigXslt(String xsltContent, XsltExecutable xsltExecutable) {
+		this._xsltContent = xsltContent;
+		this._xsltExecutable = xsltExecutable;
+	}
+
+	/**
+	 * Compile the model config into a single XSLT identity transform.
+	 * @param modelConfig The model config.
+	 * @return The ModelConfigXslt, or null if the model config can't be applied in a single pass.
+	 */
+	public static ModelConfigXslt fromModelConfig(ModelConfig modelConfig) {
+		ArrayList<ModelAttributeInjection> modelAttributeInjections = (modelConfig.getModelAttributeInjections() != null) ? modelConfig.getModelAttributeInjections() : new ArrayList<>();
+		ArrayList<ModelNodeRemoval> modelNodeRemovals = (modelConfig.getModelNodeRemovals() != null) ? modelConfig.getModelNodeRemovals() : new ArrayList<>();
+
+		// Check whether the model config can be applied in a single pass, otherwise return null so the sequential preprocessor is used.
+		String reason = getSinglePassBlocker(modelAttributeInjections, modelNodeRemovals);
+		if (reason != null) {
+			logger.fine(String.format("Model config can't be applied in a single pass: %s", reason));
+			return null;
+		}
+
+		StringBuilder xslt = new StringBuilder();
+		xslt.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>").append(System.lineSeparator());
+		xslt.append("<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"3.0\"");
+		// Add the model namespaces, so prefixes in the XPaths can be resolved.
+		if (modelConfig.getNamespaces() != null) {
+			for (NamespaceConfig ns : modelConfig.getNamespaces()) {
+				xslt.append(" ").append(ns.getNamespaceDeclaration());
+			}
+		}
+		xslt.append(">").append(System.lineSeparator());
+		xslt.append("<xsl:output method=\"xml\" encoding=\"UTF-8\" indent=\"no\" />").append(System.lineSeparator());
+		// The default mode copies the model, the injection mode only outputs the attributes of matching injections.
+		xslt.append("<xsl:mode on-no-match=\"shallow-copy\" />").append(System.lineSeparator());
+		xslt.append("<xsl:mode name=\"injection\" on-no-match=\"deep-skip\" />").append(System.lineSeparator());
+		xslt.append("<xsl:template match=\"element()\"><xsl:copy><xsl:apply-templates select=\"@*\" /><xsl:apply-templates select=\".\" mode=\"injection\" /><xsl:apply-templates select=\"node()\" /></xsl:copy></xsl:template>").append(System.lineSeparator());
+
+		// Add a template rule for each model attribute injection.
+		// The priority is the position of the injection, each rule first calls the rules of the earlier injections (xsl:next-match) and then outputs its own attribute.
+		// This way the last injection for an attribute wins, just as in the sequential preprocessor.
+		for (int i = 0; i < modelAttributeInjections.size(); i++) {
+			ModelAttributeInjection mai = modelAttributeInjections.get(i);
+			int priority = i + 1;
+
+			// The value mappings are stored in a global map variable.
+			if (mai.getTargetXPath() == null && mai.getTargetValue() == null && mai.getValueMappings() != null) {
+				xslt.append(String.format("<xsl:variable name=\"value-mappings-%d\" select=\"map{", priority));
+				boolean isFirst = true;
+				for (Map.Entry<String, String> vm : mai.getValueMappings().getValueMappingIndex().entrySet()) {
+					xslt.append(isFirst ? "" : ",").append(escape(String.format("%s:%s", getStringLiteral(vm.getKey()), getStringLiteral(vm.getValue()))));
+					isFirst = false;
+				}
+				xslt.append("}\" />").append(System.lineSeparator());
+			}
+
+			xslt.append(String.format("<xsl:template match=\"%s\" mode=\"injection\" priority=\"%d\"><xsl:next-match />", escape(mai.getModelXPath()), priority));
+			if (mai.getTargetXPath() != null) {
+				xslt.append(String.format("<xsl:attribute name=\"%s\" select=\"string((%s)[1])\" />", mai.getTargetAttribute(), escape(mai.getTargetXPath())));
+			} else if (mai.getTargetValue() != null) {
+				xslt.append(String.format("<xsl:attribute name=\"%s\" select=\"%s\" />", mai.getTargetAttribute(), escape(getStringLiteral(mai.getTargetValue()))));
+			} else if (mai.getValueMappings() != null) {
+				xslt.append(String.format("<xsl:variable name=\"input-node-value\" select=\"string((%s)[1])\" />", escape(mai.getValueMappings().getInputNode())));
+				xslt.append(String.format("<xsl:variable name=\"output-value\" select=\"$value-mappings-%d($input-node-value)\" />", priority));
+				xslt.append(String.format("<xsl:choose><xsl:when test=\"exists($output-value)\"><xsl:attribute name=\"%s\" select=\"$output-value\" /></xsl:when>", mai.getTargetAttribute()));
+				// When there is no value mapping, send the input node value as message, which is logged as a warning (same as the sequential preprocessor).
+				xslt.append("<xsl:otherwise><xsl:message select=\"$input-node-value\" /></xsl:otherwise></xsl:choose>");
+			}
+			xslt.append("</xsl:template>").append(System.lineSeparator());
+		}
+
+		// Add a template rule for each model node removal.
+		// Only elements and attributes are removed, for other nodes the next rule (the copy) is applied.
+		for (ModelNodeRemoval mnr : modelNodeRemovals) {
+			xslt.append(String.format("<xsl:template match=\"%s\" priority=\"1\"><xsl:if test=\"not(self::element() or self::attribute())\"><xsl:next-match /></xsl:if></xsl:template>", escape(mnr.getModelXPath()))).append(System.lineSeparator());
+		}
+
+		xslt.append("</xsl:stylesheet>");
+
+		// Compile the stylesheet, if a XPath can't be compiled into a pattern or expression the model config can't be applied in a single pass.
+		// Static errors are logged on the fine level, since the sequential preprocessor compiles the same XPaths and reports the error.
+		XsltCompiler xsltCompiler = PROCESSOR.newXsltCompiler();
+		xsltCompiler.setErrorReporter(error -> logger.fine(String.format("Error while compiling model config XSLT: %s", error.getMessage())));
+		try {
+			return new ModelConfigXslt(xslt.toString(), xsltCompiler.compile(new StreamSource(new StringReader(xslt.toString()))));
+		} catch (SaxonApiException e) {
+			logger.fine(String.format("Model config can't be applied in a single pass: %s", e.getMessage()));
+			return null;
+		}
+	}
+
+	/**
+	 * Transform the model using the compiled model config.
+	 * @param modelFileContent The model file content.
+	 * @return The preprocessed model.
+	 * @throws ModelPreprocessorException
+	 */
+	public String transform(String modelFileContent) throws ModelPreprocessorException {
+		try {
+			XsltTransformer xsltTransformer = this._xsltExecutable.load();
+			// The stylesheet only sends a message for an input node value without value mapping, which is logged as a warning.
+			xsltTransformer.setMessageListener((MessageListener2) (content, errorCode, terminate, locator) -> logger.warning(ModelAttributeInjectionValueMappings.getNoValueMappingMessage(content.getStringValue())));
+			// Dynamic errors are logged on the fine level, since they are thrown and reported by the caller.
+			xsltTransformer.setErrorReporter(error -> logger.fine(String.format("Error while applying model config XSLT: %s", error.getMessage())));
+
+			XdmNode modelDocumentNode = PROCESSOR.newDocumentBuilder().build(new StreamSource(new StringReader(modelFileContent)));
+			xsltTransformer.setInitialContextNode(modelDocumentNode);
+
+			StringWriter writer = new StringWriter();
+			Serializer serializer = PROCESSOR.newSerializer(writer);
+			xsltTransformer.setDestination(serializer);
+			xsltTransformer.transform();
+			return writer.toString();
+		} catch (SaxonApiException e) {
+			throw new ModelPreprocessorException("Error while applying model config XSLT", e);
+		}
+	}
+
+	/**
+	 * Check whether the model config can be applied in a single pass.
+	 * @param modelAttributeInjections The model attribute injections.
+	 * @param modelNodeRemovals The model node removals.
+	 * @return The reason why the model config can't be applied in a single pass, or null if it can.
+	 */
+	private static String getSinglePassBlocker(List<ModelAttributeInjection> modelAttributeInjections, List<ModelNodeRemoval> modelNodeRemovals) {
+		// The attribute names injected by the previous injections.
+		HashSet<String> injectedAttributes = new HashSet<>();
+		for (ModelAttributeInjection mai : modelAttributeInjections) {
+			if (mai.getModelXPath() == null || !isRootedPath(mai.getModelXPath()))
+				return String.format("model XPath ´%s´ is not a rooted path", mai.getModelXPath());
+			if (mai.getTargetAttribute() == null || !INJECTABLE_ATTRIBUTE_NAME.matcher(mai.getTargetAttribute()).matches())
+				return String.format("target attribute ´%s´ is not a simple attribute name", mai.getTargetAttribute());
+			if (mai.getTargetXPath() == null && mai.getTargetValue() == null) {
+				if (mai.getValueMappings() == null)
+					return String.format("no target for injection on ´%s´", mai.getModelXPath());
+			}
+			// The XPaths of this injection may not read an attribute injected by an earlier injection.
+			for (String xPath : new String[] { mai.getModelXPath(), mai.getTargetXPath(), (mai.getValueMappings() != null) ? mai.getValueMappings().getInputNode() : null }) {
+				if (xPath != null && readsAnyAttribute(xPath, injectedAttributes))
+					return String.format("XPath ´%s´ reads an attribute injected by an earlier injection", xPath);
+			}
+			injectedAttributes.add(mai.getTargetAttribute());
+		}
+
+		// The node names removed by the previous removals.
+		HashSet<String> removedNodeNames = new HashSet<>();
+		for (ModelNodeRemoval mnr : modelNodeRemovals) {
+			if (mnr.getModelXPath() == null || !isRootedPath(mnr.getModelXPath()))
+				return String.format("model XPath ´%s´ is not a rooted path", mnr.getModelXPath());
+			if (readsAnyAttribute(mnr.getModelXPath(), injectedAttributes))
+				return String.format("XPath ´%s´ reads an injected attribute", mnr.getModelXPath());
+			if (!removedNodeNames.isEmpty()) {
+				for (String predicate : getPredicates(mnr.getModelXPath())) {
+					if (NAMELESS_NODE_ACCESS.matcher(predicate).find() || removedNodeNames.stream().anyMatch(name -> readsName(predicate, name)))
+						return String.format("XPath ´%s´ depends on nodes removed by an earlier removal", mnr.getModelXPath());
+				}
+			}
+			for (String branch : splitTopLevel(mnr.getModelXPath(), '|')) {
+				removedNodeNames.add(getLastStepName(branch));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Check whether all branches of the XPath start at the root.
+	 * @param xPath The XPath.
+	 * @return Whether the XPath is a rooted path.
+	 */
+	private static boolean isRootedPath(String xPath) {
+		for (String branch : splitTopLevel(xPath, '|')) {
+			if (!branch.trim().startsWith("/"))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Check whether the XPath reads one of the attributes, or attributes without naming them.
+	 * @param xPath The XPath.
+	 * @param attributeNames The attribute names.
+	 * @return Whether the XPath (possibly) reads one of the attributes.
+	 */
+	private static boolean readsAnyAttribute(String xPath, HashSet<String> attributeNames) {
+		if (attributeNames.isEmpty())
+			return false;
+		if (Pattern.compile("(@|attribute::)\\s*\\*|attribute\\s*\\(|deep-equal\\s*\\(|serialize\\s*\\(").matcher(xPath).find())
+			return true;
+		return attributeNames.stream().anyMatch(attributeName -> Pattern.compile(String.format("(@|attribute::)\\s*([\\w.-]+:)?%s(?![\\w.-])", Pattern.quote(attributeName))).matcher(xPath).find());
+	}
+
+	/**
+	 * Check whether the XPath contains the node name as a name test.
+	 * @param xPath The XPath.
+	 * @param nodeName The node name.
+	 * @return Whether the name occurs in the XPath.
+	 */
+	private static boolean readsName(String xPath, String nodeName) {
+		return Pattern.compile(String.format("(?<![\\w.$-])%s(?![\\w.-])", Pattern.quote(nodeName))).matcher(xPath).find();
+	}
+
+	/**
+	 * Get the name of the node in the last step of a path, without axis or prefix.
+	 * @param xPath The path.
+	 * @return The node name.
+	 */
+	private static String getLastStepName(String xPath) {
+		List<String> steps = splitTopLevel(xPath, '/');
+		String lastStep = steps.get(steps.size() - 1).trim();
+		// Remove the predicates.
+		int predicateIndex = lastStep.indexOf('[');
+		if (predicateIndex != -1)
+			lastStep = lastStep.substring(0, predicateIndex);
+		// Remove the axis, attribute accessor and prefix.
+		lastStep = lastStep.replaceFirst("^.*::", "").replaceFirst("^@", "").replaceFirst("^.*:", "").trim();
+		return lastStep;
+	}
+
+	/**
+	 * Get the content of all predicates of the XPath, including nested predicates.
+	 * @param xPath The XPath.
+	 * @return The predicates.
+	 */
+	private static List<String> getPredicates(String xPath) {
+		ArrayList<String> predicates = new ArrayList<>();
+		int depth = 0;
+		int predicateStart = -1;
+		char quote = 0;
+		for (int i = 0; i < xPath.length(); i++) {
+			char c = xPath.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == '[') {
+				if (depth++ == 0)
+					predicateStart = i + 1;
+			} else if (c == ']' && depth > 0) {
+				if (--depth == 0)
+					predicates.add(xPath.substring(predicateStart, i));
+			}
+		}
+		return predicates;
+	}
+
+	/**
+	 * Split the XPath on a separator which is not within quotes, brackets or parentheses.
+	 * @param xPath The XPath.
+	 * @param separator The separator.
+	 * @return The parts of the XPath.
+	 */
+	private static List<String> splitTopLevel(String xPath, char separator) {
+		ArrayList<String> parts = new ArrayList<>();
+		int depth = 0;
+		int partStart = 0;
+		char quote = 0;
+		for (int i = 0; i < xPath.length(); i++) {
+			char c = xPath.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == '[' || c == '(') {
+				depth++;
+			} else if ((c == ']' || c == ')') && depth > 0) {
+				depth--;
+			} else if (c == separator && depth == 0) {
+				parts.add(xPath.substring(partStart, i));
+				partStart = i + 1;
+			}
+		}
+		parts.add(xPath.substring(partStart));
+		return parts;
+	}
+
+	/**
+	 * Get the XPath string literal for a value.
+	 * @param value The value.
+	 * @return The quoted value.
+	 */
+	private static String getStringLiteral(String value) {
+		return String.format("'%s'", value.replace("'", "''"));
+	}
+
+	/**
+	 * Escape a value so it can be used in a XSLT attribute.
+	 * @param value The value.
+	 * @return The escaped value.
+	 */
+	private static String escape(String value) {
+		return StringEscapeUtils.escapeXml11(value);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return this._xsltContent;
+	}
+}
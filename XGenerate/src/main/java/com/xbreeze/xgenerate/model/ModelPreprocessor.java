@@ -27,9 +27,7 @@ package com.xbreeze.xgenerate.model;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -45,7 +43,7 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import com.xbreeze.xgenerate.config.model.ModelAttributeInjection;
-import com.xbreeze.xgenerate.config.model.ModelAttributeInjectionValueMapping;
+import com.xbreeze.xgenerate.config.model.ModelAttributeInjectionValueMappings;
 import com.xbreeze.xgenerate.config.model.ModelConfig;
 import com.xbreeze.xgenerate.config.model.ModelNodeRemoval;
 import com.xbreeze.xgenerate.utils.SaxonXMLUtils;
@@ -72,6 +70,15 @@ public class ModelPreprocessor {
 	public static void preprocessModel(Model model, ModelConfig modelConfig) throws ModelPreprocessorException {
 		logger.info("Starting model preprocessing");
 
+		// First try to apply the model config in a single pass using a XSLT identity transform.
+		// If the model config can't be applied in a single pass, the model config is applied step by step below.
+		ModelConfigXslt modelConfigXslt = ModelConfigXslt.fromModelConfig(modelConfig);
+		if (modelConfigXslt != null) {
+			model.setPreprocessedModel(modelConfigXslt.transform(model.getModelFileContent()));
+			logger.info("End model preprocessing");
+			return;
+		}
+
 		// Load the preprocessed model into memory
 		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
 		DocumentBuilder builder;
@@ -161,13 +168,17 @@ public class ModelPreprocessor {
 				XPathExpressionImpl expr = xmlHelper.getXPathExpression(mai.getModelXPath());
 				
 				NodeList result = (NodeList) expr.evaluate(modelDoc, XPathConstants.NODESET);
+				// The target and value mapping expressions are compiled once, when the first node is processed.
+				XPathExpressionImpl targetExpression = null;
+				XPathExpressionImpl valueMappingExpression = null;
 				for (int i = 0; i < result.getLength(); i++) {
 					Node node = result.item(i);
 					String targetValue = null;
 					//If a target xpath is set, evaluate it to get a value
 					if (mai.getTargetXPath() !=null) {
 						try {
-							XPathExpressionImpl targetExpression = xmlHelper.getXPathExpression(mai.getTargetXPath());
+							if (targetExpression == null)
+								targetExpression = xmlHelper.getXPathExpression(mai.getTargetXPath());
 							targetValue = (String)targetExpression.evaluate(node, XPathConstants.STRING);
 						} catch (XPathExpressionException e) {
 							throw new ModelPreprocessorException(String.format("Error while processing model attribute injection for target XPath ´%s´", mai.getTargetXPath()), e.getCause());
@@ -177,29 +188,23 @@ public class ModelPreprocessor {
 					} else if (mai.getValueMappings() != null ) {
 						//Get the input node value to use for finding the mapped output value
 						try {
-							XPathExpressionImpl valueMappingExpression = xmlHelper.getXPathExpression(mai.getValueMappings().getInputNode());
+							if (valueMappingExpression == null)
+								valueMappingExpression = xmlHelper.getXPathExpression(mai.getValueMappings().getInputNode());
 							String inputNodeValue = (String)valueMappingExpression.evaluate(node, XPathConstants.STRING);
-							List<ModelAttributeInjectionValueMapping> foundValueMappings = mai.getValueMappings()
-									.getModelAttributeInjectionValueMappings().stream()
-									.filter(vm -> vm.getInputValue().equals(inputNodeValue))
-									.collect(Collectors.toList());
-							// There should only be 1 found value mapping.
-							if (foundValueMappings.size() == 1) {
-								targetValue = foundValueMappings.get(0).getOutputValue();
+							// Lookup the output value in the value mapping index.
+							try {
+								targetValue = mai.getValueMappings().getOutputValue(inputNodeValue);
+							} catch (IllegalArgumentException e) {
+								throw new ModelPreprocessorException(e.getMessage());
+							}
+							if (targetValue != null) {
 								logger.info(String.format(
 										"Value mappings defined for attribute injection, input node value: ´%s´, target value: ´%s´",
 										inputNodeValue, targetValue));
 							}
-							// If multiple value mappings are found, throw an exception.
-							else if (foundValueMappings.size() > 1) {
-								throw new ModelPreprocessorException(String.format(
-										"%d value mappings found for input node value ´%s´, expected exactly 1!",
-										foundValueMappings.size(), inputNodeValue));
-							}
 							// If no value mappings are found, print a warning.
 							else {
-								logger.warning(String.format("%d value mappings found for input node value ´%s´.",
-										foundValueMappings.size(), inputNodeValue));
+								logger.warning(ModelAttributeInjectionValueMappings.getNoValueMappingMessage(inputNodeValue));
 							}
 						} catch (XPathExpressionException e) {
 							throw new ModelPreprocessorException(String.format("Error evaluating XPath expression for value mapping %s", mai.getValueMappings().getInputNode()), e.getCause());
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.template;
+
+import net.sf.saxon.expr.XPathContext;
+import net.sf.saxon.lib.ExtensionFunctionCall;
+import net.sf.saxon.lib.ExtensionFunctionDefinition;
+import net.sf.saxon.om.Item;
+import net.sf.saxon.om.Sequence;
+import net.sf.saxon.om.StructuredQName;
+import net.sf.saxon.trans.XPathException;
+import net.sf.saxon.value.SequenceType;
+import net.sf.saxon.value.StringValue;
+
+/**
+ * The XSLT extension function to escape a placeholder value in a XML template, so the value is still escaped after the XSLT transformation.
+ * It replaces the characters &, <, > and " with their entities in a single pass using an escape table,
+ * i.s.o. a chain of replace() calls which each evaluate a regex on the value.
+ * 
+ * The function is registered on the Saxon processor which compiles the pre-processed template, see XMLUtils.createProcessor.
+ *
+ * @author Harmen
+ */
+public class EscapeXmlFunction extends ExtensionFunctionDefinition {
+	
+	/**
+	 * The namespace of the XGenerate extension functions.
+	 */
+	public static final String NAMESPACE = "http://www.x-breeze.com/xgenerate/functions";
+	
+	/**
+	 * The prefix of the XGenerate extension functions in the pre-processed template.
+	 */
+	public static final String PREFIX = "xgen";
+	
+	/**
+	 * The name of the function, as used in the pre-processed template.
+	 */
+	public static final String FUNCTION_NAME = String.format("%s:escape-xml", PREFIX);
+	
+	/**
+	 * The instance of the function, the function is stateless so it can be registered on any processor.
+	 */
+	public static final EscapeXmlFunction INSTANCE = new EscapeXmlFunction();
+	
+	/**
+	 * The escaped form of the characters to escape, by character (null if the character isn't escaped).
+	 */
+	private static final String[] ESCAPE_TABLE = new String['>' + 1];
+	static {
+		ESCAPE_TABLE['&'] = "&amp;";
+		ESCAPE_TABLE['<'] = "&lt;";
+		ESCAPE_TABLE['>'] = "&gt;";
+		ESCAPE_TABLE['"'] = "&quot;";
+	}
+	
+	private static final StructuredQName FUNCTION_QNAME = new StructuredQName(PREFIX, NAMESPACE, "escape-xml");
+	
+	private EscapeXmlFunction() {
+	}
+	
+	@Override
+	public StructuredQName getFunctionQName() {
+		return FUNCTION_QNAME;
+	}
+	
+	@Override
+	public SequenceType[] getArgumentTypes() {
+		return new SequenceType[] { SequenceType.OPTIONAL_STRING };
+	}
+	
+	@Override
+	public SequenceType getResultType(SequenceType[] suppliedArgumentTypes) {
+		return SequenceType.SINGLE_STRING;
+	}
+	
+	@Override
+	public ExtensionFunctionCall makeCallExpression() {
+		return new ExtensionFunctionCall() {
+			@Override
+			public Sequence call(XPathContext context, Sequence[] arguments) throws XPathException {
+				// An empty sequence gives an empty string, the same as replace() does.
+				Item value = arguments[0].head();
+				return new StringValue((value != null) ? escapeXml(value.getStringValueCS()) : "");
+			}
+		};
+	}
+	
+	/**
+	 * Escape the characters &, <, > and " in a value.
+	 * @param value The value to escape.
+	 * @return The escaped value (the value itself if there is nothing to escape).
+	 */
+	public static CharSequence escapeXml(CharSequence value) {
+		StringBuilder escapedValue = null;
+		int unescapedIndex = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char valueChar = value.charAt(i);
+			String escapedChar = (valueChar < ESCAPE_TABLE.length) ? ESCAPE_TABLE[valueChar] : null;
+			if (escapedChar != null) {
+				if (escapedValue == null)
+					escapedValue = new StringBuilder(value.length() + 16);
+				escapedValue.append(value, unescapedIndex, i).append(escapedChar);
+				unescapedIndex = i + 1;
+			}
+		}
+		if (escapedValue == null)
+			return value;
+		return escapedValue.append(value, unescapedIndex, value.length());
+	}
+}
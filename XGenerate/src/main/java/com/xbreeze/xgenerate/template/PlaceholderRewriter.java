@@ -0,0 +1,360 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.template;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rewriter which replaces the placeholders and literals of a binding in a template part in a single pass.
+ * 
+ * The rules are matched against the original template part, in order of priority:
+ *  - A rule has priority over the rules after it, so its matches are claimed first.
+ *  - A claimed part is opaque to the rules after it, they can't match in it, across it or look behind or ahead into it.
+ *    The bounds of the unclaimed parts are anchoring, so ^ and $ also match next to a claimed part.
+ *  - The replacement of a rule is never matched by the rules after it.
+ *  - The matches of a rule don't overlap, they are found from left to right.
+ * This differs from applying the rules one after the other using String.replaceAll, where a rule also matches in the XSLT instructions
+ * written by the rules before it (which breaks the instructions), or in the text around them.
+ * The candidate positions of all rules which start with a literal prefix are found in one scan using an Aho-Corasick automaton,
+ * after which the rule's pattern is only matched at those positions. The result is written once into a StringBuilder.
+ * 
+ * The rewriter is immutable and thread-safe.
+ *
+ * @author Harmen
+ */
+public class PlaceholderRewriter {
+	
+	/**
+	 * The characters with a special meaning in a regex, a placeholder name without these is matched literally.
+	 */
+	private static final String REGEX_META_CHARACTERS = "\\^$.|?*+()[]{}";
+	
+	/**
+	 * The rules, in order of priority.
+	 */
+	private final List<Rule> _rules;
+	
+	/**
+	 * The automaton to find the literal prefixes of the rules (null if none of the rules has a literal prefix).
+	 */
+	private final PrefixAutomaton _prefixAutomaton;
+	
+	/**
+	 * Constructor.
+	 * @param rules The rules, in order of priority.
+	 */
+	public PlaceholderRewriter(List<Rule> rules) {
+		this._rules = Collections.unmodifiableList(new ArrayList<>(rules));
+		String[] prefixes = new String[rules.size()];
+		boolean hasPrefix = false;
+		for (int i = 0; i < rules.size(); i++) {
+			prefixes[i] = rules.get(i)._literalPrefix;
+			hasPrefix |= (prefixes[i] != null);
+		}
+		this._prefixAutomaton = (hasPrefix) ? new PrefixAutomaton(prefixes) : null;
+	}
+	
+	/**
+	 * Replace the matches of the rules in the template part.
+	 * @param templatePart The template part.
+	 * @return The template part with the matches replaced.
+	 */
+	public String rewrite(String templatePart) {
+		if (this._rules.isEmpty())
+			return templatePart;
+		
+		// Find the candidate positions of the rules with a literal prefix in one scan.
+		List<List<Integer>> candidatePositions = (this._prefixAutomaton != null) ? this._prefixAutomaton.findPrefixes(templatePart) : null;
+		
+		// The claimed parts, by begin index.
+		TreeMap<Integer, Claim> claims = new TreeMap<>();
+		for (int ruleIndex = 0; ruleIndex < this._rules.size(); ruleIndex++) {
+			Rule rule = this._rules.get(ruleIndex);
+			Matcher matcher = rule._pattern.matcher(templatePart);
+			// Matches may not cross claimed parts, so the region bounds are opaque.
+			matcher.useTransparentBounds(false);
+			List<Claim> ruleClaims = new ArrayList<>();
+			if (rule._literalPrefix != null) {
+				// Match the rule at the positions of its literal prefix.
+				int previousEnd = 0;
+				for (int position : candidatePositions.get(ruleIndex)) {
+					if (position < previousEnd || isClaimed(claims, position))
+						continue;
+					matcher.region(position, getRegionEnd(claims, position, templatePart.length()));
+					if (matcher.lookingAt()) {
+						ruleClaims.add(new Claim(matcher.end(), rule._replacement.expand(matcher)));
+						previousEnd = matcher.end();
+						claims.put(position, ruleClaims.get(ruleClaims.size() - 1));
+					}
+				}
+			} else {
+				// Find the rule in the parts which aren't claimed yet.
+				int regionBegin = 0;
+				for (Map.Entry<Integer, Claim> claim : new ArrayList<>(claims.entrySet())) {
+					findMatches(matcher, rule, regionBegin, claim.getKey(), claims);
+					regionBegin = claim.getValue()._end;
+				}
+				findMatches(matcher, rule, regionBegin, templatePart.length(), claims);
+			}
+		}
+		if (claims.isEmpty())
+			return templatePart;
+		
+		// Write the template part with the claimed parts replaced.
+		int replacementLength = 0;
+		for (Claim claim : claims.values()) {
+			replacementLength += claim._replacement.length();
+		}
+		StringBuilder rewrittenTemplatePart = new StringBuilder(templatePart.length() + replacementLength);
+		int position = 0;
+		for (Map.Entry<Integer, Claim> claim : claims.entrySet()) {
+			rewrittenTemplatePart.append(templatePart, position, claim.getKey()).append(claim.getValue()._replacement);
+			position = claim.getValue()._end;
+		}
+		rewrittenTemplatePart.append(templatePart, position, templatePart.length());
+		return rewrittenTemplatePart.toString();
+	}
+	
+	/**
+	 * Find the matches of a rule in a region and claim them.
+	 */
+	private static void findMatches(Matcher matcher, Rule rule, int regionBegin, int regionEnd, TreeMap<Integer, Claim> claims) {
+		if (regionBegin >= regionEnd)
+			return;
+		matcher.region(regionBegin, regionEnd);
+		while (matcher.find()) {
+			claims.put(matcher.start(), new Claim(matcher.end(), rule._replacement.expand(matcher)));
+		}
+	}
+	
+	/**
+	 * @return Whether the position is within a claimed part.
+	 */
+	private static boolean isClaimed(TreeMap<Integer, Claim> claims, int position) {
+		Map.Entry<Integer, Claim> claim = claims.floorEntry(position);
+		return claim != null && (claim.getKey() == position || claim.getValue()._end > position);
+	}
+	
+	/**
+	 * @return The end of the unclaimed part starting at the position.
+	 */
+	private static int getRegionEnd(TreeMap<Integer, Claim> claims, int position, int length) {
+		Integer nextClaimBegin = claims.higherKey(position);
+		return (nextClaimBegin != null) ? nextClaimBegin : length;
+	}
+	
+	/**
+	 * Get the literal prefix of a placeholder regex, being the placeholder name and the accessor.
+	 * @param placeholderName The placeholder name (which is used as a regex).
+	 * @param accessor The accessor (which is quoted in the regex).
+	 * @return The literal prefix, or null if the placeholder name contains regex characters.
+	 */
+	public static String getLiteralPrefix(String placeholderName, String accessor) {
+		for (int i = 0; i < placeholderName.length(); i++) {
+			if (REGEX_META_CHARACTERS.indexOf(placeholderName.charAt(i)) != -1)
+				return null;
+		}
+		String literalPrefix = placeholderName + accessor;
+		return (literalPrefix.length() > 0) ? literalPrefix : null;
+	}
+	
+	/**
+	 * A part of the template claimed by a rule, with its replacement.
+	 */
+	private static class Claim {
+		private final int _end;
+		private final String _replacement;
+		
+		private Claim(int end, String replacement) {
+			this._end = end;
+			this._replacement = replacement;
+		}
+	}
+	
+	/**
+	 * A rule of the rewriter, a pattern with its replacement.
+	 */
+	public static class Rule {
+		private final Pattern _pattern;
+		private final String _literalPrefix;
+		private final Replacement _replacement;
+		
+		/**
+		 * Constructor.
+		 * @param pattern The pattern to find.
+		 * @param literalPrefix The literal text every match of the pattern starts with (null if there is none).
+		 * @param replacement The replacement, as used in Matcher.replaceAll.
+		 */
+		public Rule(Pattern pattern, String literalPrefix, String replacement) {
+			this._pattern = pattern;
+			this._literalPrefix = (literalPrefix != null && literalPrefix.length() > 0) ? literalPrefix : null;
+			this._replacement = new Replacement(replacement);
+		}
+	}
+	
+	/**
+	 * A parsed replacement, with the same syntax as in Matcher.replaceAll ($n for a group and \ to escape).
+	 */
+	private static class Replacement {
+		// The parts of the replacement, a String for literal text or an Integer for a group reference.
+		private final Object[] _parts;
+		
+		private Replacement(String replacement) {
+			ArrayList<Object> parts = new ArrayList<>();
+			StringBuilder literalPart = new StringBuilder();
+			for (int i = 0; i < replacement.length(); i++) {
+				char replacementChar = replacement.charAt(i);
+				if (replacementChar == '\\' && i + 1 < replacement.length()) {
+					literalPart.append(replacement.charAt(++i));
+				} else if (replacementChar == '$' && i + 1 < replacement.length() && Character.isDigit(replacement.charAt(i + 1))) {
+					if (literalPart.length() > 0) {
+						parts.add(literalPart.toString());
+						literalPart.setLength(0);
+					}
+					parts.add(Character.digit(replacement.charAt(++i), 10));
+				} else {
+					literalPart.append(replacementChar);
+				}
+			}
+			if (literalPart.length() > 0)
+				parts.add(literalPart.toString());
+			this._parts = parts.toArray();
+		}
+		
+		/**
+		 * @return The replacement for the current match of the matcher.
+		 */
+		private String expand(Matcher matcher) {
+			if (this._parts.length == 1 && this._parts[0] instanceof String)
+				return (String) this._parts[0];
+			StringBuilder expandedReplacement = new StringBuilder();
+			for (Object part : this._parts) {
+				if (part instanceof Integer) {
+					String group = matcher.group((Integer) part);
+					if (group != null)
+						expandedReplacement.append(group);
+				} else {
+					expandedReplacement.append((String) part);
+				}
+			}
+			return expandedReplacement.toString();
+		}
+	}
+	
+	/**
+	 * An Aho-Corasick automaton to find the occurrences of a set of prefixes in a single scan.
+	 */
+	private static class PrefixAutomaton {
+		// The transitions per state, by character.
+		private final ArrayList<HashMap<Character, Integer>> _transitions = new ArrayList<>();
+		// The failure link per state.
+		private final ArrayList<Integer> _failures = new ArrayList<>();
+		// The indexes of the prefixes ending in each state (including the ones reached through the failure links).
+		private final ArrayList<List<Integer>> _outputs = new ArrayList<>();
+		// The prefixes by index (null for a rule without a literal prefix).
+		private final String[] _prefixes;
+		
+		private PrefixAutomaton(String[] prefixes) {
+			this._prefixes = prefixes;
+			addState();
+			// Build the trie of the prefixes.
+			for (int prefixIndex = 0; prefixIndex < prefixes.length; prefixIndex++) {
+				if (prefixes[prefixIndex] == null)
+					continue;
+				int state = 0;
+				for (int i = 0; i < prefixes[prefixIndex].length(); i++) {
+					char prefixChar = prefixes[prefixIndex].charAt(i);
+					Integer nextState = this._transitions.get(state).get(prefixChar);
+					if (nextState == null) {
+						nextState = addState();
+						this._transitions.get(state).put(prefixChar, nextState);
+					}
+					state = nextState;
+				}
+				this._outputs.get(state).add(prefixIndex);
+			}
+			// Compute the failure links breadth first.
+			ArrayList<Integer> queue = new ArrayList<>();
+			for (int childState : this._transitions.get(0).values()) {
+				this._failures.set(childState, 0);
+				queue.add(childState);
+			}
+			for (int queueIndex = 0; queueIndex < queue.size(); queueIndex++) {
+				int state = queue.get(queueIndex);
+				for (Map.Entry<Character, Integer> transition : this._transitions.get(state).entrySet()) {
+					int childState = transition.getValue();
+					int failureState = this._failures.get(state);
+					while (failureState != 0 && !this._transitions.get(failureState).containsKey(transition.getKey())) {
+						failureState = this._failures.get(failureState);
+					}
+					Integer failureTarget = this._transitions.get(failureState).get(transition.getKey());
+					this._failures.set(childState, (failureTarget != null && failureTarget != childState) ? failureTarget : 0);
+					this._outputs.get(childState).addAll(this._outputs.get(this._failures.get(childState)));
+					queue.add(childState);
+				}
+			}
+		}
+		
+		private int addState() {
+			this._transitions.add(new HashMap<>());
+			this._failures.add(0);
+			this._outputs.add(new ArrayList<>());
+			return this._transitions.size() - 1;
+		}
+		
+		/**
+		 * Find the occurrences of the prefixes.
+		 * @param text The text to scan.
+		 * @return The begin positions of the occurrences (in ascending order), by prefix index.
+		 */
+		private List<List<Integer>> findPrefixes(String text) {
+			List<List<Integer>> positions = new ArrayList<>(this._prefixes.length);
+			for (int i = 0; i < this._prefixes.length; i++) {
+				positions.add(new ArrayList<>());
+			}
+			int state = 0;
+			for (int i = 0; i < text.length(); i++) {
+				char textChar = text.charAt(i);
+				Integer nextState = this._transitions.get(state).get(textChar);
+				while (nextState == null && state != 0) {
+					state = this._failures.get(state);
+					nextState = this._transitions.get(state).get(textChar);
+				}
+				state = (nextState != null) ? nextState : 0;
+				for (int prefixIndex : this._outputs.get(state)) {
+					positions.get(prefixIndex).add(i - this._prefixes[prefixIndex].length() + 1);
+				}
+			}
+			return positions;
+		}
+	}
+}
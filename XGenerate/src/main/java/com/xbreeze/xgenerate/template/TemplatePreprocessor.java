@@ -31,9 +31,9 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.xbreeze.xgenerate.UnhandledException;
+import com.xbreeze.xgenerate.config.CompiledSectionModelBinding;
 import com.xbreeze.xgenerate.config.NamespaceConfig;
 import com.xbreeze.xgenerate.config.XGenConfig;
-import com.xbreeze.xgenerate.config.binding.SectionModelBindingConfig;
 import com.xbreeze.xgenerate.config.template.RootTemplateConfig;
 import com.xbreeze.xgenerate.template.annotation.TemplateAnnotation;
 import com.xbreeze.xgenerate.template.annotation.TemplateCommentAnnotation;
@@ -79,20 +79,21 @@ public abstract class TemplatePreprocessor {
 	
 	/**
 	 * Perform the pre-processing to get to the pre-processed template.
+	 * @param debugMode Whether to add the diagnostic comments to the pre-processed template.
 	 * @return The pre-processed template.
 	 * @throws UnhandledException 
 	 * @throws UnknownAnnotationException 
 	 */
-	public XsltTemplate preProcess(RawTemplate rawTemplate, String relativeOutputFileUri, ArrayList<NamespaceConfig> modelNamespaces) throws TemplatePreprocessorException, UnhandledException {
+	public XsltTemplate preProcess(RawTemplate rawTemplate, String relativeOutputFileUri, ArrayList<NamespaceConfig> modelNamespaces, boolean debugMode) throws TemplatePreprocessorException, UnhandledException {
 		RootTemplateConfig templateConfig = _config.getTemplateConfig();
 		
 		// Perform the specific sectionizing for the current template.
 		// This should detect sections from the raw template and transform it into a SectionedTemplate object.
 		String rootSectionName = templateConfig.getRootSectionName();
 		
-		SectionModelBindingConfig[] rootSectionModelBindings = null;
-		if (_config.getBindingConfig() != null)
-			rootSectionModelBindings = _config.getBindingConfig().getSectionModelBindingConfigs(rootSectionName);
+		CompiledSectionModelBinding[] rootSectionModelBindings = null;
+		if (_config.getCompiledBindingConfig() != null)
+			rootSectionModelBindings = _config.getCompiledBindingConfig().getSectionModelBindings(rootSectionName);
 		
 		// Check whether there is only 1 root section model binding. If not, throw an exception.
 		if (rootSectionModelBindings == null || rootSectionModelBindings.length != 1) {
@@ -100,7 +101,7 @@ public abstract class TemplatePreprocessor {
 		}
 		
 		// Assign the section model binding for the root section to a local variable.
-		SectionModelBindingConfig rootSectionModelBinding = rootSectionModelBindings[0];
+		CompiledSectionModelBinding rootSectionModelBinding = rootSectionModelBindings[0];
 		
 		// Pre-process the template.
 		PreprocessedTemplate preprocessedTemplate = this.getPreprocessedTemplate(rawTemplate, rootSectionName);
@@ -109,11 +110,14 @@ public abstract class TemplatePreprocessor {
 		SectionedTemplate sectionizedTemplate = this.sectionizeTemplate(preprocessedTemplate);
 		
 		// Now the templates are pre-processed by their specific preprocessor, we can perform the generic pre-processing here.
-		XsltTemplate xsltTemplate = new XsltTemplate(rawTemplate.getRawTemplateFileName(), rawTemplate.getRawTemplateFileLocation(), templateConfig, relativeOutputFileUri, rootSectionModelBinding, modelNamespaces);
+		XsltTemplate xsltTemplate = new XsltTemplate(rawTemplate.getRawTemplateFileName(), rawTemplate.getRawTemplateFileLocation(), templateConfig, relativeOutputFileUri, rootSectionModelBinding.getSectionModelBindingConfig(), modelNamespaces, debugMode);
 		
 		// Append the Xslt from the section to the pre-processed template.
 		sectionizedTemplate.appendTemplateXslt(xsltTemplate, _config, rootSectionModelBinding);
 		
+		// Add the key declarations of the binding, which are used in the model XPath's rewritten into key lookups.
+		xsltTemplate.setKeyDeclarations(_config.getCompiledBindingConfig().getKeyDeclarations());
+		
 		// Finalize the template before returning it.
 		xsltTemplate.finalizeTemplate();
 		
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.template;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.xbreeze.xgenerate.config.binding.KeyConfig;
+
+/**
+ * The xsl:key declarations of a binding, being the keys configured in the binding and the keys generated for the model XPath's.
+ * 
+ * A model XPath which selects elements using an equality predicate, like '//Mapping[@target=$x/@name]', is evaluated by scanning all elements for every iteration.
+ * Such a XPath is rewritten into a key lookup, like 'key('xgen-key-1', $x/@name)', with the key declaration '<xsl:key name="xgen-key-1" match="Mapping" use="@target" />'.
+ * Only XPath's for which the key lookup gives the same result are rewritten:
+ *  - The path before the predicate is absolute and only consists of element names, so it can be used as the match pattern.
+ *  - The predicate compares an attribute with a value which doesn't depend on the element being filtered: a string literal, a path from current() or a path from a variable.
+ *    A key lookup compares the values as strings, while the predicate compares the attribute as a number if the value is a number.
+ *    So a variable itself isn't rewritten, since it can hold a number (like a count()), only a path from it (which selects nodes) is.
+ *  - The path after the predicate only consists of element or attribute names.
+ * 
+ * The key index is built when the binding is compiled, after which it isn't modified anymore.
+ *
+ * @author Harmen
+ */
+public class XsltKeyIndex {
+	// The logger for this class.
+	private static final Logger logger = Logger.getLogger(XsltKeyIndex.class.getName());
+	
+	/**
+	 * A (optionally prefixed) name in a XPath.
+	 */
+	private static final String NAME_REGEX = "(?:[A-Za-z_][\\w.-]*:)?[A-Za-z_][\\w.-]*";
+	
+	/**
+	 * The regex to find a XPath which can be rewritten into a key lookup:
+	 * group 1: The path of the elements to select, being element names separated by / or //.
+	 * group 2: The attribute compared in the predicate.
+	 * group 3: The value the attribute is compared with, being a path from a variable, a path from current() or a string literal.
+	 * group 4: The path after the predicate, being element or attribute names separated by / or //.
+	 */
+	private static final Pattern KEY_XPATH_PATTERN = Pattern.compile(String.format(
+			"^\\s*((?:/{1,2}%1$s)+)\\[\\s*(@%1$s)\\s*=\\s*(\\$%1$s(?:/@?%1$s)+|current\\(\\)(?:/@?%1$s)*|'[^']*')\\s*\\]((?:/{1,2}@?%1$s)*)\\s*$",
+			NAME_REGEX
+	));
+	
+	/**
+	 * Whether the model XPath's are rewritten into key lookups.
+	 */
+	private final boolean _automaticKeysEnabled;
+	
+	/**
+	 * The names of the generated keys, by match pattern and use XPath.
+	 */
+	private final HashMap<String, String> _generatedKeyNames = new HashMap<>();
+	
+	/**
+	 * The xsl:key declarations.
+	 */
+	private final StringBuilder _keyDeclarations = new StringBuilder();
+	
+	/**
+	 * Constructor.
+	 * @param keyConfigs The keys configured in the binding (can be null).
+	 * @param automaticKeysEnabled Whether the model XPath's are rewritten into key lookups.
+	 */
+	public XsltKeyIndex(List<KeyConfig> keyConfigs, boolean automaticKeysEnabled) {
+		this._automaticKeysEnabled = automaticKeysEnabled;
+		if (keyConfigs != null) {
+			for (KeyConfig keyConfig : keyConfigs) {
+				appendKeyDeclaration(keyConfig.getName(), keyConfig.getMatch(), keyConfig.getUse());
+			}
+		}
+	}
+	
+	/**
+	 * Rewrite a model XPath into a key lookup, if it selects elements using an equality predicate which can be indexed.
+	 * @param modelXPath The model XPath.
+	 * @return The rewritten model XPath, or the model XPath itself if it can't be rewritten.
+	 */
+	public String rewriteModelXPath(String modelXPath) {
+		if (!this._automaticKeysEnabled || modelXPath == null)
+			return modelXPath;
+		Matcher keyXPathMatcher = KEY_XPATH_PATTERN.matcher(modelXPath);
+		if (!keyXPathMatcher.matches())
+			return modelXPath;
+		
+		// A path starting with // selects the elements anywhere in the document, which is the default of a match pattern.
+		String match = keyXPathMatcher.group(1);
+		if (match.startsWith("//"))
+			match = match.substring(2);
+		String use = keyXPathMatcher.group(2);
+		String keyName = this._generatedKeyNames.get(String.format("%s|%s", match, use));
+		if (keyName == null) {
+			keyName = String.format("xgen-key-%d", this._generatedKeyNames.size() + 1);
+			this._generatedKeyNames.put(String.format("%s|%s", match, use), keyName);
+			appendKeyDeclaration(keyName, match, use);
+		}
+		String rewrittenModelXPath = String.format("key('%s', %s)%s", keyName, keyXPathMatcher.group(3), keyXPathMatcher.group(4));
+		logger.fine(String.format("Rewriting model XPath '%s' into '%s'", modelXPath, rewrittenModelXPath));
+		return rewrittenModelXPath;
+	}
+	
+	/**
+	 * Append a xsl:key declaration.
+	 */
+	private void appendKeyDeclaration(String name, String match, String use) {
+		this._keyDeclarations.append(String.format("<xsl:key name=\"%s\" match=\"%s\" use=\"%s\" />", name, match, use));
+	}
+	
+	/**
+	 * @return The xsl:key declarations (empty if there are no keys).
+	 */
+	public String getKeyDeclarations() {
+		return this._keyDeclarations.toString();
+	}
+}
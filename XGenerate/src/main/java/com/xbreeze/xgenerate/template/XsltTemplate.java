@@ -26,12 +26,16 @@ package com.xbreeze.xgenerate.template;
 
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 import com.xbreeze.xgenerate.config.NamespaceConfig;
-import com.xbreeze.xgenerate.config.binding.LiteralConfig;
 import com.xbreeze.xgenerate.config.binding.PlaceholderConfig;
 import com.xbreeze.xgenerate.config.binding.SectionModelBindingConfig;
 import com.xbreeze.xgenerate.config.template.OutputConfig.OutputType;
@@ -42,15 +46,72 @@ public class XsltTemplate {
 	// The logger for this class.
 	private static final Logger logger = Logger.getLogger(XsltTemplate.class.getName());
 	
-	private enum PlaceholderType {
+	public enum PlaceholderType {
 		XSL_VALUE_OF,
 		XSL_INLINE
 	};
 	
 	/**
 	 * The template buffer.
+	 * The template is only built by a single thread, so no synchronization is needed.
 	 */
-	private StringBuffer _templateBuffer;
+	private StringBuilder _templateBuffer;
+	
+	/**
+	 * Whether the template is in debug mode, in which case the diagnostic comments are added to the XSLT.
+	 */
+	private boolean _debugMode;
+	
+	/**
+	 * Whether a xsl:text instruction is open at the end of the template buffer.
+	 * Text appended directly after an open text is merged into the same xsl:text instruction.
+	 */
+	private boolean _isTextOpen = false;
+	
+	/**
+	 * The minimal length of a text fragment to share it in a named template.
+	 */
+	private static final int SHARED_TEXT_MIN_LENGTH = 256;
+	
+	/**
+	 * The shared text fragments, with the name of their named template.
+	 */
+	private HashMap<String, String> _sharedTextTemplateNames = new HashMap<>();
+	
+	/**
+	 * The shared text fragments, in order of the named templates.
+	 */
+	private ArrayList<String> _sharedTextFragments = new ArrayList<>();
+	
+	/**
+	 * The names of the XSLT variables in scope at the end of the template buffer.
+	 */
+	private ArrayList<String> _variablesInScope = new ArrayList<>();
+	
+	/**
+	 * The number of variables declared for hoisted expressions in the xsl:template the template buffer is in.
+	 */
+	private int _hoistedVariableCount = 0;
+	
+	/**
+	 * The section templates by signature (the parameters and the content), with the name of their named template.
+	 */
+	private HashMap<String, String> _sectionTemplateNames = new HashMap<>();
+	
+	/**
+	 * The named templates for the sections, in order of creation.
+	 */
+	private ArrayList<String> _sectionTemplates = new ArrayList<>();
+	
+	/**
+	 * The xsl:key declarations, which are added at the top level of the XSLT when the template is finalized.
+	 */
+	private String _keyDeclarations = "";
+	
+	/**
+	 * The state of the enclosing template parts, while the content of a section template is appended.
+	 */
+	private ArrayDeque<SectionTemplateState> _sectionTemplateStates = new ArrayDeque<>();
 	
 	/**
 	 * Track whether the template is finalized.
@@ -64,6 +125,41 @@ public class XsltTemplate {
 	 */
 	private OutputType _outputType;
 	
+	/**
+	 * The name of the stylesheet parameter with the position of the first root element to generate the output for.
+	 */
+	public static final String FIRST_POSITION_PARAMETER = "xgen-first-position";
+	
+	/**
+	 * The name of the stylesheet parameter with the position of the last root element to generate the output for.
+	 */
+	public static final String LAST_POSITION_PARAMETER = "xgen-last-position";
+	
+	/**
+	 * The name of the variable with the position of the element in an iterated section.
+	 */
+	public static final String ITERATION_POSITION_VARIABLE = "xgen-position";
+	
+	/**
+	 * The name of the variable telling whether the element in an iterated section is the last one.
+	 */
+	public static final String ITERATION_LAST_VARIABLE = "xgen-last";
+	
+	/**
+	 * The variables which are in scope within the content of an iterated section.
+	 */
+	private static final List<String> ITERATION_VARIABLES = Arrays.asList(ITERATION_POSITION_VARIABLE, ITERATION_LAST_VARIABLE);
+	
+	/**
+	 * The name of the xsl:iterate parameter with the element of the previous iteration.
+	 */
+	private static final String ITERATION_PREVIOUS_PARAMETER = "xgen-previous";
+	
+	/**
+	 * The model XPath of the root section binding.
+	 */
+	private String _rootModelXPath;
+	
 	/**
 	 * Constructor
 	 * @param templateId
@@ -71,10 +167,13 @@ public class XsltTemplate {
 	 * @param templateConfig
 	 * @param outputFolder
 	 * @param rootSectionModelBindingConfig
+	 * @param debugMode Whether to add the diagnostic comments to the XSLT.
 	 */
-	public XsltTemplate(String templateId, String templateFileLocation, RootTemplateConfig templateConfig, String relativeOutputFileUri, SectionModelBindingConfig rootSectionModelBindingConfig, ArrayList<NamespaceConfig> modelNamespaces) {
-		this._templateBuffer = new StringBuffer();
+	public XsltTemplate(String templateId, String templateFileLocation, RootTemplateConfig templateConfig, String relativeOutputFileUri, SectionModelBindingConfig rootSectionModelBindingConfig, ArrayList<NamespaceConfig> modelNamespaces, boolean debugMode) {
+		this._templateBuffer = new StringBuilder();
+		this._debugMode = debugMode;
 		this._outputType = templateConfig.getOutputConfig().getType();
+		this._rootModelXPath = rootSectionModelBindingConfig.getModelXPath();
 		
 		// Initialize the template.
 		initTemplate(templateId, templateFileLocation, templateConfig, relativeOutputFileUri, rootSectionModelBindingConfig, modelNamespaces);
@@ -87,6 +186,8 @@ public class XsltTemplate {
 		appendLine("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
 		// https://www.w3schools.com/xml/ref_xsl_el_stylesheet.asp
 		appendLine("<xsl:stylesheet id=\"%s\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"3.0\"", templateId);
+		// Declare the namespace of the XGenerate extension functions.
+		appendLine("xmlns:%s=\"%s\" exclude-result-prefixes=\"%s\"", EscapeXmlFunction.PREFIX, EscapeXmlFunction.NAMESPACE, EscapeXmlFunction.PREFIX);
 		// Add namespaces if any
 		if (namespaces != null) {
 			for(NamespaceConfig ns : namespaces) {
@@ -109,11 +210,18 @@ public class XsltTemplate {
 		// Strip white space from all elements (from the model).
 		appendLine("<xsl:strip-space elements=\"*\"/>\n");
 		
-		appendLine("<!-- Match the template on the root node and call the specific template. -->");
+		// For the output-per-element, add the parameters for the range of root elements to generate the output for (by default all).
+		// This way the outputs can be generated in parallel, using a transformer per range.
+		if (_outputType.equals(OutputType.output_per_element)) {
+			appendLine("<xsl:param name=\"%s\" select=\"1\" />", FIRST_POSITION_PARAMETER);
+			appendLine("<xsl:param name=\"%s\" select=\"number('INF')\" />\n", LAST_POSITION_PARAMETER);
+		}
+		
+		appendCommentLine("Match the template on the root node and call the specific template.");
 		appendLine("<xsl:template match=\"/\"><xsl:call-template name=\"%s\" /></xsl:template>\n", templateId);
 		
 		// Add the template part, here we don't include match, since this is handled by the first xsl:for-each.
-		appendLine("<!-- The specific template based on the template files '%s' -->", templateFileName);
+		appendCommentLine("The specific template based on the template files '%s'", templateFileName);
 		append("<xsl:template name=\"%s\">", templateId);
 		
 		// Configure the result document.
@@ -133,16 +241,14 @@ public class XsltTemplate {
 		}
 		
 		// For the output-per-element we first write the for-each and then the result-document.
+		// The for-each iterates over all root elements and only writes the outputs in the range, so position() and last() are the same for each range.
 		else if (_outputType.equals(OutputType.output_per_element)) {
 			append(rootForEach);
+			append("<xsl:if test=\"position() ge $%s and position() le $%s\">", FIRST_POSITION_PARAMETER, LAST_POSITION_PARAMETER);
 			append("<xsl:result-document method=\"text\" href=\"%s\">", fileNamePlaceholder);
 		}
 	}
 	
-	public static String processPlaceholders(String templatePart, SectionModelBindingConfig parentBindingConfig, RootTemplateConfig templateConfig, String placeholderName) {
-		return processPlaceholders(templatePart, parentBindingConfig, templateConfig, PlaceholderType.XSL_VALUE_OF, true, placeholderName);
-	}
-	
 	public static String processPlaceholders(String templatePart, SectionModelBindingConfig parentBindingConfig, RootTemplateConfig templateConfig, PlaceholderType placeholderType, boolean isBounded, String placeholderName) {
 		// Store the result in a local String.
 		String processedTemplatePart = templatePart;
@@ -190,44 +296,57 @@ public class XsltTemplate {
 	private static String processPlaceholder(String placeholderName, String modelXPath, String templatePartToProcess, RootTemplateConfig templateConfig, PlaceholderType placeholderType) {
 		String processedTemplate = templatePartToProcess;
 		
-		/**
-		 * The regex to find a placeholder:
-		 * %s            - The placeholder name
-		 * %s            - The node accessor
-		 * ([a-zA-Z]+)   - The attribute name to select
-		 */
-		String placeholderRegex =  String.format(
-				"%s%s([a-zA-Z]+)",
-				placeholderName,
-				"%s"
-		);
-		
 		// Perform placeholder replacement for the current accessor.
-		/** 
-		 * replacement-regex:
-		 * %s   - The model XPath expression for the placeholder.
-		 * /    - A slash to select something from the element at the level of %s.
-		 * @    - The XML attribute accessor.
-		 * $1   - The value of group 1 (the attribute name to select from the find regex)
-		 */
-		String currentAccessorPlaceholderRegex = String.format(placeholderRegex, Pattern.quote(templateConfig.getFileFormatConfig().getCurrentAccessor()));
-		processedTemplate = replacePlaceholders(processedTemplate, currentAccessorPlaceholderRegex, "%s/@$1", modelXPath, placeholderType, templateConfig);
+		String currentAccessorPlaceholderRegex = getPlaceholderRegex(placeholderName, templateConfig.getFileFormatConfig().getCurrentAccessor());
+		processedTemplate = replacePlaceholders(processedTemplate, currentAccessorPlaceholderRegex, CURRENT_ACCESSOR_REPLACE_XPATH, modelXPath, placeholderType, templateConfig);
 		
 		// Perform placeholder replacement for the child accessor.
-		if (templateConfig.getFileFormatConfig().getChildAccessor() != null && templateConfig.getFileFormatConfig().getChildAccessor().length() > 0) {
-			/**
-			 * replacement-regex:
-			 * %s   - The model XPath expression for the placeholder.
-			 * /    - A slash to select something from the element at the level of %s.
-			 * $1   - The value of group 1 (the attribute name to select from the find regex)
-			 */
-			String childAccessorPlaceholderRegex = String.format(placeholderRegex, Pattern.quote(templateConfig.getFileFormatConfig().getChildAccessor()));
-			processedTemplate = replacePlaceholders(processedTemplate, childAccessorPlaceholderRegex, "%s/$1", modelXPath, placeholderType, templateConfig);
+		if (hasChildAccessor(templateConfig)) {
+			String childAccessorPlaceholderRegex = getPlaceholderRegex(placeholderName, templateConfig.getFileFormatConfig().getChildAccessor());
+			processedTemplate = replacePlaceholders(processedTemplate, childAccessorPlaceholderRegex, CHILD_ACCESSOR_REPLACE_XPATH, modelXPath, placeholderType, templateConfig);
 		}
 		
 		return processedTemplate;
 	}
 	
+	/**
+	 * The replacement XPath for a placeholder with the current accessor:
+	 * %s   - The model XPath expression for the placeholder.
+	 * /    - A slash to select something from the element at the level of %s.
+	 * @    - The XML attribute accessor.
+	 * $1   - The value of group 1 (the attribute name to select from the find regex)
+	 */
+	public static final String CURRENT_ACCESSOR_REPLACE_XPATH = "%s/@$1";
+	
+	/**
+	 * The replacement XPath for a placeholder with the child accessor:
+	 * %s   - The model XPath expression for the placeholder.
+	 * /    - A slash to select something from the element at the level of %s.
+	 * $1   - The value of group 1 (the attribute name to select from the find regex)
+	 */
+	public static final String CHILD_ACCESSOR_REPLACE_XPATH = "%s/$1";
+	
+	/**
+	 * Get the regex to find a placeholder:
+	 * %s            - The placeholder name
+	 * %s            - The node accessor (quoted)
+	 * ([a-zA-Z]+)   - The attribute name to select
+	 * @param placeholderName The placeholder name.
+	 * @param accessor The node accessor.
+	 * @return The placeholder regex.
+	 */
+	public static String getPlaceholderRegex(String placeholderName, String accessor) {
+		return String.format("%s%s([a-zA-Z]+)", placeholderName, Pattern.quote(accessor));
+	}
+	
+	/**
+	 * @param templateConfig The root template config.
+	 * @return Whether a child accessor is configured.
+	 */
+	public static boolean hasChildAccessor(RootTemplateConfig templateConfig) {
+		return templateConfig.getFileFormatConfig().getChildAccessor() != null && templateConfig.getFileFormatConfig().getChildAccessor().length() > 0;
+	}
+	
 	/**
 	 * Replace the placeholders in the templatePartToProcess.
 	 * @param templatePartToProcess The template part to process.
@@ -238,12 +357,26 @@ public class XsltTemplate {
 	 * @return The processed template part, where placeholders are replaced wit the XSLT instruction.
 	 */
 	private static String replacePlaceholders(String templatePartToProcess, String placeholderRegex, String placeholderReplaceXPath, String modelXPath, PlaceholderType placeholderType, RootTemplateConfig templateConfig) {
+		// Perform the replacement for the placeholder.
+		//logger.info(String.format("Processing placeholder '%s' -> %s", placeholderRegex, placeholderReplacement));
+		return templatePartToProcess.replaceAll(placeholderRegex, getPlaceholderReplacement(placeholderReplaceXPath, modelXPath, placeholderType, templateConfig));
+	}
+	
+	/**
+	 * Get the replacement for the placeholders, to be used in a regex replacement.
+	 * @param placeholderReplaceXPath The replacement value for the placeholders.
+	 * @param modelXPath The XPath to the model.
+	 * @param placeholderType The placeholder type.
+	 * @param templateConfig The root template config.
+	 * @return The replacement, the XSLT instruction for the placeholder.
+	 */
+	public static String getPlaceholderReplacement(String placeholderReplaceXPath, String modelXPath, PlaceholderType placeholderType, RootTemplateConfig templateConfig) {
 		// Preprocess the placeholder replace XPath.
 		String preprocessedPlaceholderReplaceXPath = placeholderReplaceXPath;
 		// When processing an XML template, double encode xml entities so the entities are still escaped after XSLT
-		// TODO make this more generic xsl replace is supposed to support regex but didn't seem to work well with & also &apos; is not escaped (gave an error)
+		// The escaping is done in a single pass by the escape-xml extension function (&apos; is not escaped).
 		if (templateConfig instanceof XMLTemplateConfig) {
-			preprocessedPlaceholderReplaceXPath = String.format("replace(replace(replace(replace(%s,'&amp;','&amp;amp;'), '&lt;','&amp;lt;'),'&gt;','&amp;gt;'),'&quot;','&amp;quot;')", placeholderReplaceXPath);
+			preprocessedPlaceholderReplaceXPath = String.format("%s(%s)", EscapeXmlFunction.FUNCTION_NAME, placeholderReplaceXPath);
 		}
 		
 		String placeholderFormat;
@@ -268,39 +401,14 @@ public class XsltTemplate {
 		
 		// Group 1: The attribute name.
 		// Replace the $ in a modelXPath with \\$ so it's escape in the regex while executing the replaceAll.
-		String placeholderReplacement = String.format(placeholderFormat, modelXPath.replace("$", "\\$"));
-
-		// Perform the replacement for the placeholder.
-		//logger.info(String.format("Processing placeholder '%s' -> %s", placeholderRegex, placeholderReplacement));
-		return templatePartToProcess.replaceAll(placeholderRegex, placeholderReplacement);		
+		return String.format(placeholderFormat, modelXPath.replace("$", "\\$"));
 	}
 	
 	/**
-	 * Function to process the literals defined for a SectionModelBinding.
-	 * @param templatePart The template part to process.
-	 * @param parentBindingConfig The SectionModelBinding config for the section of the template part.
-	 * @param templateConfig The root template config.
-	 * @return The processed template part.
+	 * @return The model XPath of the root section binding.
 	 */
-	public static String processLiterals(String templatePart, SectionModelBindingConfig parentBindingConfig, RootTemplateConfig templateConfig) {
-		// If there are not literal configs for this section, return the templatePart directly.
-		if (parentBindingConfig.getLiteralConfigs() == null)
-			return templatePart;
-			
-		// Store the result in a local String.
-		String processedTemplatePart = templatePart;
-		
-		// Loop through the literal configs and apply them to the template part.
-		for (LiteralConfig literal : parentBindingConfig.getLiteralConfigs()) {
-			/** 
-			 * replacement-regex:
-			 * %s   - The model XPath expression for the placeholder.
-			 */
-			String literalRegex = Pattern.quote(literal.getLiteral());
-			processedTemplatePart = replacePlaceholders(processedTemplatePart, literalRegex, "%s", literal.getModelXPath(), PlaceholderType.XSL_VALUE_OF, templateConfig);
-		}
-		
-		return processedTemplatePart;
+	public String getRootModelXPath() {
+		return _rootModelXPath;
 	}
 	
 	/**
@@ -311,6 +419,7 @@ public class XsltTemplate {
 		// If the output is per element, close the result-document before the for-each.
 		if (_outputType.equals(OutputType.output_per_element)) {
 			append("</xsl:result-document>");
+			append("</xsl:if>");
 			append("</xsl:for-each>");
 		}
 		// If the output is a single-output close the result-document after the for-each.
@@ -320,8 +429,22 @@ public class XsltTemplate {
 		}
 		
 		appendLine("</xsl:template>");
-		appendLine("<!-- End of the specific template. -->");
+		appendCommentLine("End of the specific template.");
 		appendLine("");
+		
+		// Add the key declarations.
+		if (_keyDeclarations.length() > 0)
+			appendLine(_keyDeclarations);
+		
+		// Add the named templates for the sections.
+		for (String sectionTemplate : _sectionTemplates) {
+			appendLine(sectionTemplate);
+		}
+		
+		// Add the named templates for the shared text fragments.
+		for (int i = 0; i < _sharedTextFragments.size(); i++) {
+			appendLine("<xsl:template name=\"%s\"><xsl:text>%s</xsl:text></xsl:template>", getSharedTextTemplateName(i), _sharedTextFragments.get(i));
+		}
 		append("</xsl:stylesheet>");
 		
 		// Set the status of isFinalized to true.
@@ -330,12 +453,297 @@ public class XsltTemplate {
 	
 	/**
 	 * Append the content of str to the template buffer.
+	 * The content is a XSLT instruction, so an open xsl:text is closed first.
 	 * @param str The text to append.
 	 */
 	public void append(String str) {
+		closeText();
 		_templateBuffer.append(str);
 	}
 	
+	/**
+	 * Append text to the template, being the content of a xsl:text instruction in which placeholders are replaced with XSLT instructions.
+	 * The text is merged with adjacent text and empty xsl:text instructions (between adjacent placeholders) are left out.
+	 * A large text without instructions is shared in a named template, which is called i.s.o. repeating the text.
+	 * @param text The text to append.
+	 */
+	public void appendText(String text) {
+		if (text.length() >= SHARED_TEXT_MIN_LENGTH && text.indexOf('<') == -1) {
+			String sharedTextTemplateName = _sharedTextTemplateNames.get(text);
+			if (sharedTextTemplateName == null) {
+				sharedTextTemplateName = getSharedTextTemplateName(_sharedTextFragments.size());
+				_sharedTextFragments.add(text);
+				_sharedTextTemplateNames.put(text, sharedTextTemplateName);
+			}
+			append("<xsl:call-template name=\"%s\" />", sharedTextTemplateName);
+			return;
+		}
+		
+		openText();
+		// The text is XML escaped, so the xsl:text tags in it are the ones around the placeholder instructions.
+		int position = 0;
+		int tagIndex;
+		while ((tagIndex = text.indexOf("xsl:text>", position)) != -1) {
+			boolean isEndTag = (tagIndex >= 2 && text.charAt(tagIndex - 1) == '/' && text.charAt(tagIndex - 2) == '<');
+			boolean isStartTag = (tagIndex >= 1 && text.charAt(tagIndex - 1) == '<');
+			if (isEndTag || isStartTag) {
+				int tagBeginIndex = tagIndex - ((isEndTag) ? 2 : 1);
+				_templateBuffer.append(text, position, tagBeginIndex);
+				if (isEndTag)
+					closeText();
+				else
+					openText();
+			} else {
+				_templateBuffer.append(text, position, tagIndex + 9);
+			}
+			position = tagIndex + 9;
+		}
+		_templateBuffer.append(text, position, text.length());
+	}
+	
+	/**
+	 * Set the xsl:key declarations, which are added at the top level of the XSLT when the template is finalized.
+	 * @param keyDeclarations The xsl:key declarations.
+	 */
+	public void setKeyDeclarations(String keyDeclarations) {
+		_keyDeclarations = keyDeclarations;
+	}
+	
+	/**
+	 * Add XSLT variables to the variables in scope, after their declarations are appended.
+	 * The variables in scope are passed as parameters to the section templates.
+	 * @param variableNames The names of the variables.
+	 */
+	public void addVariablesInScope(List<String> variableNames) {
+		_variablesInScope.addAll(variableNames);
+	}
+	
+	/**
+	 * Get the name for the variable of a hoisted expression.
+	 * The name is unique within the xsl:template it's declared in, so it doesn't shadow the variables of an enclosing section (when a section without binding is inlined).
+	 * The numbering restarts for each section template, so the content of a section template is the same for each binding with the same placeholders.
+	 * @return The variable name.
+	 */
+	public String getHoistedVariableName() {
+		return String.format("xgen-value-%d", ++_hoistedVariableCount);
+	}
+	
+	/**
+	 * Begin the content of a section template, which is appended to a separate buffer until endSectionTemplate is called.
+	 * The section content is repeated for each section model binding, often with the same content since the bindings only differ in their model XPath.
+	 * So the content is put in a named template, which is shared by all bindings for which the content is the same.
+	 */
+	public void beginSectionTemplate() {
+		beginSectionTemplate(null);
+		// The content is within a xsl:for-each, so the position variables of an enclosing iteration don't apply.
+		_variablesInScope.removeAll(ITERATION_VARIABLES);
+	}
+	
+	/**
+	 * End the content of a section template and append the call to the named template with the same content.
+	 * The variables in scope at the call are passed as parameters, since they are referenced in the content of the section.
+	 * The focus is passed to the called template, so the context item, position() and last() are the same as when the content is inlined.
+	 */
+	public void endSectionTemplate() {
+		SectionTemplateState sectionTemplateState = endSectionTemplateState();
+		append(getSectionTemplateCall(sectionTemplateState._sectionContent, getParameterNames(false)));
+	}
+	
+	/**
+	 * Begin the content of a section template which is repeated for each element selected by the model XPath using a xsl:iterate.
+	 * Within the content the position of the element and whether it's the last element are available in the iteration variables (i.s.o. position() and last()).
+	 * @param modelXPath The model XPath of the section model binding.
+	 */
+	public void beginIteratedSectionTemplate(String modelXPath) {
+		beginSectionTemplate(modelXPath);
+		_variablesInScope.removeAll(ITERATION_VARIABLES);
+		_variablesInScope.addAll(ITERATION_VARIABLES);
+	}
+	
+	/**
+	 * End the content of an iterated section template and append the xsl:iterate calling the named template for each element.
+	 * To know whether an element is the last one without evaluating last() (which needs the whole sequence up front), the call for an element is done in the next iteration.
+	 * So the iteration keeps the previous element, and the last element is processed on completion.
+	 */
+	public void endIteratedSectionTemplate() {
+		SectionTemplateState sectionTemplateState = endSectionTemplateState();
+		String sectionTemplateCall = getSectionTemplateCall(sectionTemplateState._sectionContent, getParameterNames(true));
+		append("<xsl:iterate select=\"%s\">", sectionTemplateState._iterationModelXPath);
+		append("<xsl:param name=\"%s\" select=\"()\" />", ITERATION_PREVIOUS_PARAMETER);
+		append("<xsl:param name=\"%s\" select=\"0\" />", ITERATION_POSITION_VARIABLE);
+		// Process the last element on completion.
+		append("<xsl:on-completion><xsl:for-each select=\"$%s\">", ITERATION_PREVIOUS_PARAMETER);
+		append("<xsl:variable name=\"%s\" select=\"true()\" />", ITERATION_LAST_VARIABLE);
+		append(sectionTemplateCall);
+		append("</xsl:for-each></xsl:on-completion>");
+		// Process the previous element, which isn't the last one since there is a current element.
+		append("<xsl:for-each select=\"$%s\">", ITERATION_PREVIOUS_PARAMETER);
+		append("<xsl:variable name=\"%s\" select=\"false()\" />", ITERATION_LAST_VARIABLE);
+		append(sectionTemplateCall);
+		append("</xsl:for-each>");
+		append("<xsl:next-iteration>");
+		append("<xsl:with-param name=\"%s\" select=\".\" />", ITERATION_PREVIOUS_PARAMETER);
+		append("<xsl:with-param name=\"%s\" select=\"$%s + 1\" />", ITERATION_POSITION_VARIABLE, ITERATION_POSITION_VARIABLE);
+		append("</xsl:next-iteration></xsl:iterate>");
+	}
+	
+	/**
+	 * @return Whether the template buffer is in the content of an iterated section template, so the iteration variables are in scope.
+	 */
+	public boolean isInIteratedSectionTemplate() {
+		return _variablesInScope.contains(ITERATION_LAST_VARIABLE);
+	}
+	
+	/**
+	 * Push the state of the enclosing template part and start a new buffer for the section content.
+	 * @param iterationModelXPath The model XPath of the iteration, or null if the section isn't iterated.
+	 */
+	private void beginSectionTemplate(String iterationModelXPath) {
+		closeText();
+		_sectionTemplateStates.push(new SectionTemplateState(_templateBuffer, _variablesInScope, _hoistedVariableCount, iterationModelXPath));
+		_templateBuffer = new StringBuilder();
+		_variablesInScope = new ArrayList<>(_variablesInScope);
+		_hoistedVariableCount = 0;
+	}
+	
+	/**
+	 * Pop the state of the enclosing template part, keeping the section content in the state.
+	 * @return The state of the enclosing template part.
+	 */
+	private SectionTemplateState endSectionTemplateState() {
+		closeText();
+		SectionTemplateState sectionTemplateState = _sectionTemplateStates.pop();
+		sectionTemplateState._sectionContent = _templateBuffer.toString();
+		_templateBuffer = sectionTemplateState._templateBuffer;
+		_variablesInScope = sectionTemplateState._variablesInScope;
+		_hoistedVariableCount = sectionTemplateState._hoistedVariableCount;
+		return sectionTemplateState;
+	}
+	
+	/**
+	 * Get the names of the parameters of a section template, being the variables in scope at the call.
+	 * A variable can be declared more than once (when a section without binding uses the binding of its parent).
+	 * @param isIterated Whether the section template is called in an iteration, so the iteration variables are passed as well.
+	 * @return The parameter names.
+	 */
+	private LinkedHashSet<String> getParameterNames(boolean isIterated) {
+		LinkedHashSet<String> parameterNames = new LinkedHashSet<>(_variablesInScope);
+		parameterNames.removeAll(ITERATION_VARIABLES);
+		if (isIterated)
+			parameterNames.addAll(ITERATION_VARIABLES);
+		return parameterNames;
+	}
+	
+	/**
+	 * Get the call to the named template with the section content, creating the named template if there is none with the same signature yet.
+	 * @param sectionContent The section content.
+	 * @param parameterNames The parameter names.
+	 * @return The xsl:call-template instruction.
+	 */
+	private String getSectionTemplateCall(String sectionContent, LinkedHashSet<String> parameterNames) {
+		String sectionTemplateSignature = String.format("%s|%s", String.join(",", parameterNames), sectionContent);
+		String sectionTemplateName = _sectionTemplateNames.get(sectionTemplateSignature);
+		if (sectionTemplateName == null) {
+			sectionTemplateName = String.format("xgen-section-%d", _sectionTemplates.size() + 1);
+			StringBuilder sectionTemplate = new StringBuilder();
+			sectionTemplate.append(String.format("<xsl:template name=\"%s\">", sectionTemplateName));
+			for (String parameterName : parameterNames) {
+				sectionTemplate.append(String.format("<xsl:param name=\"%s\" />", parameterName));
+			}
+			sectionTemplate.append(sectionContent).append("</xsl:template>");
+			_sectionTemplates.add(sectionTemplate.toString());
+			_sectionTemplateNames.put(sectionTemplateSignature, sectionTemplateName);
+		}
+		
+		// Create the call to the section template.
+		if (parameterNames.isEmpty())
+			return String.format("<xsl:call-template name=\"%s\" />", sectionTemplateName);
+		StringBuilder sectionTemplateCall = new StringBuilder(String.format("<xsl:call-template name=\"%s\">", sectionTemplateName));
+		for (String parameterName : parameterNames) {
+			sectionTemplateCall.append(String.format("<xsl:with-param name=\"%s\" select=\"$%s\" />", parameterName, parameterName));
+		}
+		return sectionTemplateCall.append("</xsl:call-template>").toString();
+	}
+	
+	/**
+	 * The state of an enclosing template part, while the content of a section template is appended.
+	 */
+	private static class SectionTemplateState {
+		private final StringBuilder _templateBuffer;
+		private final ArrayList<String> _variablesInScope;
+		private final int _hoistedVariableCount;
+		private final String _iterationModelXPath;
+		private String _sectionContent;
+		
+		private SectionTemplateState(StringBuilder templateBuffer, ArrayList<String> variablesInScope, int hoistedVariableCount, String iterationModelXPath) {
+			this._templateBuffer = templateBuffer;
+			this._variablesInScope = variablesInScope;
+			this._hoistedVariableCount = hoistedVariableCount;
+			this._iterationModelXPath = iterationModelXPath;
+		}
+	}
+	
+	/**
+	 * Append a diagnostic comment, which is only added in debug mode.
+	 * @param comment The comment template.
+	 * @param args The args as an input for the String.format.
+	 */
+	public void appendComment(String comment, Object... args) {
+		if (_debugMode)
+			append("<!-- %s -->", String.format(comment, args));
+	}
+	
+	/**
+	 * Append a diagnostic comment on its own line, which is only added in debug mode.
+	 * @param comment The comment template.
+	 * @param args The args as an input for the String.format.
+	 */
+	private void appendCommentLine(String comment, Object... args) {
+		if (_debugMode)
+			appendLine("<!-- %s -->", String.format(comment, args));
+	}
+	
+	/**
+	 * Open a xsl:text instruction, or continue the xsl:text which was closed last if nothing was appended after it.
+	 */
+	private void openText() {
+		if (_isTextOpen)
+			return;
+		if (endsWith("</xsl:text>"))
+			_templateBuffer.setLength(_templateBuffer.length() - "</xsl:text>".length());
+		else
+			_templateBuffer.append("<xsl:text>");
+		_isTextOpen = true;
+	}
+	
+	/**
+	 * Close the open xsl:text instruction, or remove it if it's empty.
+	 */
+	private void closeText() {
+		if (!_isTextOpen)
+			return;
+		if (endsWith("<xsl:text>"))
+			_templateBuffer.setLength(_templateBuffer.length() - "<xsl:text>".length());
+		else
+			_templateBuffer.append("</xsl:text>");
+		_isTextOpen = false;
+	}
+	
+	/**
+	 * @return Whether the template buffer ends with the suffix.
+	 */
+	private boolean endsWith(String suffix) {
+		int offset = _templateBuffer.length() - suffix.length();
+		return offset >= 0 && _templateBuffer.indexOf(suffix, offset) == offset;
+	}
+	
+	/**
+	 * @return The name of the named template for a shared text fragment.
+	 */
+	private static String getSharedTextTemplateName(int sharedTextIndex) {
+		return String.format("xgen-text-%d", sharedTextIndex + 1);
+	}
+	
 	/**
 	 * Append a string using the template and the args.
 	 * @param template The string template.
@@ -350,6 +758,7 @@ public class XsltTemplate {
 	 * @param str The content of the line to append.
 	 */
 	public void appendLine(String str) {
+		closeText();
 		_templateBuffer.append(str).append(System.lineSeparator());
 	}
 	
@@ -362,6 +771,19 @@ public class XsltTemplate {
 		appendLine(String.format(template, args));
 	}
 	
+	/**
+	 * Get the content of the template, without copying it into a String.
+	 * The content can be passed to the XSLT compiler directly, it's only converted into a String when it needs to be written.
+	 * @return The content of the template.
+	 */
+	public CharSequence getTemplateContent() {
+		// If the template is not finalized yet, give a warning.
+		if (!_isFinalized)
+			logger.log(Level.WARNING, "The getTemplateContent() method is called on a PreprocessedTemplate, but it's not finalized yet!");
+		
+		return _templateBuffer;
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
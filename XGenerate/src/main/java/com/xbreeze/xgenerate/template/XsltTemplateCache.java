@@ -0,0 +1,159 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.template;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+import com.xbreeze.xgenerate.config.ConfigException;
+import com.xbreeze.xgenerate.config.NamespaceConfig;
+import com.xbreeze.xgenerate.config.XGenConfig;
+import com.xbreeze.xgenerate.utils.FileCache;
+
+/**
+ * The persistent cache of pre-processed (XSLT) templates, so unchanged templates aren't pre-processed again in the next generation run.
+ * The templates are stored in the cache folder by a fingerprint of everything the pre-processing depends on.
+ *
+ * @author Harmen
+ */
+public class XsltTemplateCache {
+	// The logger for this class.
+	private static final Logger logger = Logger.getLogger(XsltTemplateCache.class.getName());
+	
+	/**
+	 * The cache of the template files.
+	 */
+	private FileCache _fileCache;
+	
+	/**
+	 * Constructor.
+	 * @param cacheFolder The folder in which the templates are cached.
+	 * @param maxSize The maximum size of the cache in bytes.
+	 */
+	public XsltTemplateCache(Path cacheFolder, long maxSize) {
+		this._fileCache = new FileCache(cacheFolder, ".xslt", maxSize);
+	}
+	
+	/**
+	 * Get the fingerprint of the pre-processing of a template, which is the key of the template in the cache.
+	 * The fingerprint covers the raw template, the config (with includes resolved), the CrossGenerate version, the model namespaces, the relative output folder and the debug mode.
+	 * @param rawTemplate The raw template.
+	 * @param config The XGenConfig.
+	 * @param relativeOutputFileUri The relative output folder.
+	 * @param modelNamespaces The model namespaces.
+	 * @param debugMode Whether the template is pre-processed in debug mode.
+	 * @return The fingerprint, or null if it can't be computed (in which case the template isn't cached).
+	 */
+	public String getFingerprint(RawTemplate rawTemplate, XGenConfig config, String relativeOutputFileUri, ArrayList<NamespaceConfig> modelNamespaces, boolean debugMode) {
+		StringBuilder modelNamespaceDeclarations = new StringBuilder();
+		if (modelNamespaces != null) {
+			for (NamespaceConfig modelNamespace : modelNamespaces) {
+				modelNamespaceDeclarations.append(modelNamespace.getNamespaceDeclaration()).append(' ');
+			}
+		}
+		try {
+			return FileCache.getFingerprint(
+					rawTemplate.getRawTemplateFileName(),
+					rawTemplate.getRawTemplateFileLocation(),
+					rawTemplate.getRawTemplateContent(),
+					config.toXml(),
+					relativeOutputFileUri,
+					modelNamespaceDeclarations.toString(),
+					// The diagnostic comments are only added in debug mode.
+					String.valueOf(debugMode)
+			);
+		} catch (NoSuchAlgorithmException | ConfigException e) {
+			logger.warning(String.format("Couldn't compute the fingerprint of template '%s', it won't be cached: %s", rawTemplate.getRawTemplateFileName(), e.getMessage()));
+			return null;
+		}
+	}
+	
+	/**
+	 * Get a pre-processed template from the cache.
+	 * @param fingerprint The fingerprint of the template.
+	 * @return The cached template, or null if it isn't in the cache.
+	 */
+	public CachedXsltTemplate get(String fingerprint) {
+		if (fingerprint == null)
+			return null;
+		try {
+			ByteBuffer cacheFileBuffer = _fileCache.read(fingerprint);
+			if (cacheFileBuffer == null)
+				return null;
+			String rootModelXPath = FileCache.readString(cacheFileBuffer);
+			String xsltTemplate = FileCache.readString(cacheFileBuffer);
+			logger.info(String.format("Using the pre-processed template from the template cache (%s)", _fileCache.getCacheFile(fingerprint).toString()));
+			return new CachedXsltTemplate(xsltTemplate, rootModelXPath);
+		} catch (IOException | RuntimeException e) {
+			logger.warning(String.format("Couldn't read the cached template '%s': %s", _fileCache.getCacheFile(fingerprint).toString(), e.getMessage()));
+			return null;
+		}
+	}
+	
+	/**
+	 * Store a pre-processed template in the cache.
+	 * @param fingerprint The fingerprint of the template.
+	 * @param xsltTemplate The pre-processed template.
+	 * @param rootModelXPath The model XPath of the root section binding.
+	 */
+	public void put(String fingerprint, String xsltTemplate, String rootModelXPath) {
+		if (fingerprint == null)
+			return;
+		try {
+			_fileCache.write(fingerprint, cacheOutputStream -> {
+				FileCache.writeString(cacheOutputStream, rootModelXPath);
+				FileCache.writeString(cacheOutputStream, xsltTemplate);
+			});
+			logger.info(String.format("Stored the pre-processed template in the template cache (%s)", _fileCache.getCacheFile(fingerprint).toString()));
+		} catch (IOException e) {
+			logger.warning(String.format("Couldn't store the pre-processed template in the template cache (%s): %s", _fileCache.getCacheFile(fingerprint).toString(), e.getMessage()));
+		}
+	}
+	
+	/**
+	 * A pre-processed template read from the cache.
+	 */
+	public static class CachedXsltTemplate {
+		private String _xsltTemplate;
+		private String _rootModelXPath;
+		
+		private CachedXsltTemplate(String xsltTemplate, String rootModelXPath) {
+			this._xsltTemplate = xsltTemplate;
+			this._rootModelXPath = rootModelXPath;
+		}
+		
+		public String getXsltTemplate() {
+			return _xsltTemplate;
+		}
+		
+		public String getRootModelXPath() {
+			return _rootModelXPath;
+		}
+	}
+}
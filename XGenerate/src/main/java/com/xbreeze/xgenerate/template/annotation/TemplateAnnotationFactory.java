@@ -0,0 +1,275 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.template.annotation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.xbreeze.xgenerate.UnhandledException;
+import com.xbreeze.xgenerate.template.annotation.TemplateTextSectionAnnotation.RepetitionAction;
+import com.xbreeze.xgenerate.template.annotation.TemplateTextSectionAnnotation.RepetitionStyle;
+
+/**
+ * The factory for a template annotation class, with the constructor and the set methods of the params resolved once.
+ * The factories are registered by lower-cased annotation name when the class is loaded, so creating an annotation found in a template doesn't need any reflection.
+ * 
+ * @author Harmen
+ */
+class TemplateAnnotationFactory {
+	
+	/**
+	 * The factories by lower-cased annotation name.
+	 */
+	private static final Map<String, TemplateAnnotationFactory> _factories = createFactories(
+			TemplateCommentAnnotation.class,
+			TemplateTextSectionAnnotation.class,
+			TemplateXmlSectionAnnotation.class
+	);
+	
+	/**
+	 * The name of the annotation (Template<Name>Annotation).
+	 */
+	private final String _annotationName;
+	
+	/**
+	 * The constructor of the annotation class.
+	 */
+	private final MethodHandle _constructor;
+	
+	/**
+	 * The param setters by lower-cased param name.
+	 */
+	private final Map<String, ParamSetter> _paramSetters;
+	
+	/**
+	 * The setter which gets the whole params value, when the annotation class only has a set method named after the annotation (like the Comment annotation).
+	 */
+	private final ParamSetter _wholeParamsSetter;
+	
+	/**
+	 * Constructor, resolving the constructor and set methods of the annotation class.
+	 * @param annotationClass The annotation class.
+	 * @throws ReflectiveOperationException
+	 */
+	private TemplateAnnotationFactory(Class<? extends TemplateAnnotation> annotationClass) throws ReflectiveOperationException {
+		String className = annotationClass.getSimpleName();
+		this._annotationName = className.substring("Template".length(), className.length() - "Annotation".length());
+		this._constructor = MethodHandles.publicLookup().findConstructor(annotationClass, MethodType.methodType(void.class));
+		
+		// Only the set methods declared in the annotation class itself are params (not the ones of the superclasses).
+		Method[] annotationSetMethods = Arrays.stream(annotationClass.getDeclaredMethods()).filter(m -> m.getName().startsWith("set")).toArray(Method[]::new);
+		HashMap<String, ParamSetter> paramSetters = new HashMap<>();
+		for (Method setMethod : annotationSetMethods) {
+			paramSetters.putIfAbsent(setMethod.getName().substring("set".length()).toLowerCase(Locale.ROOT), new ParamSetter(this._annotationName, setMethod));
+		}
+		this._paramSetters = Collections.unmodifiableMap(paramSetters);
+		this._wholeParamsSetter = (annotationSetMethods.length == 1 && annotationSetMethods[0].getName().equalsIgnoreCase(String.format("set%s", this._annotationName))) ? paramSetters.values().iterator().next() : null;
+	}
+	
+	/**
+	 * Create the factories for the annotation classes.
+	 * @param annotationClasses The annotation classes.
+	 * @return The factories by lower-cased annotation name.
+	 */
+	@SafeVarargs
+	private static Map<String, TemplateAnnotationFactory> createFactories(Class<? extends TemplateAnnotation>... annotationClasses) {
+		HashMap<String, TemplateAnnotationFactory> factories = new HashMap<>();
+		for (Class<? extends TemplateAnnotation> annotationClass : annotationClasses) {
+			try {
+				TemplateAnnotationFactory factory = new TemplateAnnotationFactory(annotationClass);
+				factories.put(factory._annotationName.toLowerCase(Locale.ROOT), factory);
+			} catch (ReflectiveOperationException e) {
+				// This shouldn't occur, since all annotation classes have a public default constructor.
+				throw new IllegalStateException(String.format("Error while resolving the annotation class '%s'", annotationClass.getName()), e);
+			}
+		}
+		return Collections.unmodifiableMap(factories);
+	}
+	
+	/**
+	 * Get the factory for an annotation.
+	 * @param annotationName The annotation name (case insensitive).
+	 * @return The factory.
+	 * @throws UnknownAnnotationException When there is no annotation with the name.
+	 */
+	static TemplateAnnotationFactory forName(String annotationName) throws UnknownAnnotationException {
+		TemplateAnnotationFactory factory = _factories.get(annotationName.toLowerCase(Locale.ROOT));
+		if (factory == null)
+			throw new UnknownAnnotationException(annotationName, null);
+		return factory;
+	}
+	
+	/**
+	 * Create a new instance of the annotation.
+	 * @return The template annotation.
+	 * @throws UnhandledException
+	 */
+	TemplateAnnotation newInstance() throws UnhandledException {
+		try {
+			return (TemplateAnnotation) _constructor.invoke();
+		} catch (Throwable e) {
+			throw new UnhandledException(String.format("Error while initializing class for '%s'", _annotationName), e);
+		}
+	}
+	
+	/**
+	 * @return Whether the whole params value is assigned to the only param of the annotation.
+	 */
+	boolean hasWholeParamsSetter() {
+		return _wholeParamsSetter != null;
+	}
+	
+	/**
+	 * Assign the whole params value to the only param of the annotation.
+	 * @param templateAnnotation The template annotation.
+	 * @param paramsValue The params value.
+	 * @throws AnnotationException
+	 * @throws UnhandledException
+	 */
+	void setWholeParams(TemplateAnnotation templateAnnotation, String paramsValue) throws AnnotationException, UnhandledException {
+		_wholeParamsSetter.set(templateAnnotation, _annotationName, paramsValue);
+	}
+	
+	/**
+	 * Set a param on the annotation.
+	 * @param templateAnnotation The template annotation.
+	 * @param paramName The param name (case insensitive).
+	 * @param paramValue The param value.
+	 * @throws AnnotationException When there is something wrong with the param.
+	 * @throws UnhandledException When something unexpected happened.
+	 */
+	void setParam(TemplateAnnotation templateAnnotation, String paramName, String paramValue) throws AnnotationException, UnhandledException {
+		ParamSetter paramSetter = _paramSetters.get(paramName.toLowerCase(Locale.ROOT));
+		// When a parameter name was specified for which there is no set<Param-name> method.
+		if (paramSetter == null)
+			throw new UnknownAnnotationParamException(_annotationName, paramName);
+		paramSetter.set(templateAnnotation, paramName, paramValue);
+	}
+	
+	/**
+	 * Converter of a param value into the type of the set method.
+	 */
+	private interface ParamValueConverter {
+		Object convert(String paramValue) throws NumberFormatException, IllegalArgumentException;
+	}
+	
+	/**
+	 * The set method of a param, with the converter for its type.
+	 */
+	private static class ParamSetter {
+		private final String _annotationName;
+		private final String _setMethodName;
+		private final String _paramValueTypeName;
+		// The set method and converter, which are null if the set method doesn't have exactly 1 argument of a supported type.
+		private final MethodHandle _setMethod;
+		private final ParamValueConverter _paramValueConverter;
+		
+		private ParamSetter(String annotationName, Method setMethod) throws IllegalAccessException {
+			this._annotationName = annotationName;
+			this._setMethodName = setMethod.getName();
+			if (setMethod.getParameterCount() == 1) {
+				Type paramValueType = setMethod.getParameters()[0].getParameterizedType();
+				this._paramValueTypeName = paramValueType.toString();
+				this._paramValueConverter = getParamValueConverter(paramValueType);
+				this._setMethod = MethodHandles.publicLookup().unreflect(setMethod);
+			} else {
+				this._paramValueTypeName = null;
+				this._paramValueConverter = null;
+				this._setMethod = null;
+			}
+		}
+		
+		/**
+		 * Get the converter for a set method parameter type.
+		 * @param paramValueType The parameter type.
+		 * @return The converter, or null if the type isn't supported.
+		 */
+		private static ParamValueConverter getParamValueConverter(Type paramValueType) {
+			// String
+			if (String.class.equals(paramValueType))
+				return paramValue -> paramValue;
+			// Integer
+			if (int.class.equals(paramValueType) || Integer.class.equals(paramValueType))
+				return Integer::parseInt;
+			// Boolean
+			if (boolean.class.equals(paramValueType) || Boolean.class.equals(paramValueType))
+				return Boolean::parseBoolean;
+			// RepetitionStyle
+			if (RepetitionStyle.class.equals(paramValueType))
+				return RepetitionStyle::valueOf;
+			// RepetitionAction
+			if (RepetitionAction.class.equals(paramValueType))
+				return RepetitionAction::valueOf;
+			return null;
+		}
+		
+		/**
+		 * Convert the param value and invoke the set method with it.
+		 * @param templateAnnotation The template annotation.
+		 * @param paramName The param name.
+		 * @param paramValue The param value.
+		 * @throws AnnotationException When there is something wrong with the param.
+		 * @throws UnhandledException When something unexpected happened.
+		 */
+		private void set(TemplateAnnotation templateAnnotation, String paramName, String paramValue) throws AnnotationException, UnhandledException {
+			// The set method must have 1 argument.
+			if (_setMethod == null) {
+				// For some reason the set method does not have 1 argument. This is wrong!
+				throw new AnnotationException(String.format("The annotation set method doesn't have exactly 1 argument (%s -> %s)", _annotationName, _setMethodName));
+			}
+			// When we have a set method with a parameter type we don't support yet, we throw an exception.
+			if (_paramValueConverter == null) {
+				throw new AnnotationException(String.format("The annotation set method parameter type is not supported (%s -> %s -> %s)", _annotationName, _setMethodName, _paramValueTypeName));
+			}
+			
+			Object paramValueObject;
+			try {
+				paramValueObject = _paramValueConverter.convert(paramValue);
+			} catch (NumberFormatException e) {
+				// When the parse failed, we throw an exception.
+				throw new IncorrectParamValueException(_annotationName, paramName, paramValue, _paramValueTypeName);
+			} catch (IllegalArgumentException e) {
+				// An unknown enum value was specified.
+				throw new UnhandledException(String.format("Error while initializing class for '%s', maybe default constructor missing?", _annotationName), e);
+			}
+			
+			// Invoke the set method with the param value.
+			try {
+				_setMethod.invoke(templateAnnotation, paramValueObject);
+			} catch (Throwable e) {
+				// This shouldn't occur.
+				throw new UnhandledException(e);
+			}
+		}
+	}
+}
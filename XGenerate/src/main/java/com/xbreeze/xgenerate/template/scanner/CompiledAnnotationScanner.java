@@ -0,0 +1,395 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.template.scanner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.xbreeze.xgenerate.UnhandledException;
+import com.xbreeze.xgenerate.config.template.FileFormatConfig;
+import com.xbreeze.xgenerate.template.TemplatePreprocessor;
+import com.xbreeze.xgenerate.template.TemplatePreprocessorException;
+import com.xbreeze.xgenerate.template.annotation.AnnotationException;
+import com.xbreeze.xgenerate.template.annotation.TemplateAnnotation;
+
+/**
+ * The annotation scanner for a file format, with the annotation and comment patterns compiled once.
+ * The scanners are immutable and cached by the file format settings they are compiled from, so they are shared by all templates (and template parts) with the same file format.
+ * 
+ * A template is scanned in a single pass from left to right, looking for the literal prefixes of the comments and annotations.
+ * The patterns are only evaluated at the positions where a prefix is found, so the template isn't swept by a regex for each comment type.
+ *
+ * @author Harmen
+ */
+public class CompiledAnnotationScanner {
+	protected static final Logger logger = Logger.getLogger(TemplatePreprocessor.class.getName());
+	
+	/**
+	 * The compiled scanners by the file format settings they are compiled from.
+	 */
+	private static final ConcurrentHashMap<List<String>, CompiledAnnotationScanner> _compiledScanners = new ConcurrentHashMap<>();
+	
+	/**
+	 * The annotation prefix and the pattern for in-line annotations.
+	 */
+	private final String _annotationPrefix;
+	private final Pattern _annotationPattern;
+	
+	/**
+	 * The single-line comment prefix and pattern, or null if there are no single-line comments in the file format.
+	 */
+	private final String _singleLineCommentPrefix;
+	private final Pattern _singleLineCommentPattern;
+	
+	/**
+	 * The multi-line comment prefix and pattern, or null if there are no multi-line comments in the file format.
+	 */
+	private final String _multiLineCommentPrefix;
+	private final Pattern _multiLineCommentPattern;
+	
+	/**
+	 * Get the compiled scanner for a file format, compiling it when there is none for the file format settings yet.
+	 * @param fileFormatConfig The file format config.
+	 * @return The compiled scanner.
+	 */
+	public static CompiledAnnotationScanner fromFileFormatConfig(FileFormatConfig fileFormatConfig) {
+		// The key contains all settings used in the patterns, so a changed config gets its own scanner.
+		List<String> scannerKey = Arrays.asList(
+				fileFormatConfig.getAnnotationPrefix(),
+				fileFormatConfig.getAnnotationArgsPrefix(),
+				fileFormatConfig.getAnnotationArgsSuffix(),
+				fileFormatConfig.getLineSeparator(),
+				fileFormatConfig.getSingleLineCommentPrefix(),
+				fileFormatConfig.getMultiLineCommentPrefix(),
+				fileFormatConfig.getMultiLineCommentSuffix()
+		);
+		return _compiledScanners.computeIfAbsent(scannerKey, key -> new CompiledAnnotationScanner(fileFormatConfig));
+	}
+	
+	/**
+	 * Constructor, compiling the patterns for the file format.
+	 * @param fileFormatConfig The file format config.
+	 */
+	private CompiledAnnotationScanner(FileFormatConfig fileFormatConfig) {
+		this._annotationPrefix = fileFormatConfig.getAnnotationPrefix();
+		
+		/**
+		 * [ \t]*       -> Any space or tab characters before the annotation.
+		 * %s           -> The annotation regex.
+		 * Optionally include everything to the new-line if there is no other annotation on this line.
+		 * (
+		 *  	[ \t]*       -> Any space or tab characters after the annotation.
+		 *  	\%s          -> Include the new-line separator character sequence (from the config).
+		 *    |				-> OR
+		 *  	[ \t]*       -> Any space or tab characters after the annotation.
+		 *  	$			 -> End of input (string)
+		 * )?
+		 */
+		this._annotationPattern = Pattern.compile(
+				String.format(
+						"[ \\t]*%s([ \\t]*%s|[ \\t]*$)?",
+						ANNOTATION_REGEX(
+								fileFormatConfig.getAnnotationPrefix(), 
+								fileFormatConfig.getAnnotationArgsPrefix(), 
+								fileFormatConfig.getAnnotationArgsSuffix()
+						),
+						fileFormatConfig.getLineSeparator()
+				),
+				// Match case insensitive.
+				Pattern.CASE_INSENSITIVE
+		);
+		
+		if (fileFormatConfig.getSingleLineCommentPrefix() != null && fileFormatConfig.getSingleLineCommentPrefix().length() > 0) {
+			this._singleLineCommentPrefix = fileFormatConfig.getSingleLineCommentPrefix();
+			// Single line comments can start anywhere on a line (beginning or after some code), but always end with line-end (or end of input).
+			/**
+			 * %s              	-> 1st parameter for String.format, the common comment regex part.
+			 * (               	-> The end of the match should contain: 
+			 *  	%s			-> the newline character sequence from the config.
+			 *   |				-> OR
+			 *   	$			-> end of string (input)
+			 * )
+			 */
+			this._singleLineCommentPattern = Pattern.compile(
+					String.format(
+							"%s(%s|$)",
+							COMMENT_REGEX(
+									fileFormatConfig.getSingleLineCommentPrefix(), 
+									fileFormatConfig.getAnnotationPrefix()
+							),
+							fileFormatConfig.getLineSeparator()
+					),
+					// Match case insensitive.
+					Pattern.CASE_INSENSITIVE
+					// Find the pattern on any line (not only the first or last line).
+					| Pattern.MULTILINE
+			);
+		} else {
+			this._singleLineCommentPrefix = null;
+			this._singleLineCommentPattern = null;
+		}
+		
+		if (fileFormatConfig.getMultiLineCommentPrefix() != null
+				&& fileFormatConfig.getMultiLineCommentPrefix().length() > 0 
+				&& fileFormatConfig.getMultiLineCommentSuffix() != null 
+				&& fileFormatConfig.getMultiLineCommentSuffix().length() > 0) {
+			this._multiLineCommentPrefix = fileFormatConfig.getMultiLineCommentPrefix();
+			/**
+			 * If there is nothing but empty characters between line start and the comment start we take it into the match.
+			 * %s              -> 1st parameter for String.format, the common comment regex part.
+			 * %s          	   -> 2nd parameter for String.format, the multi-line comment suffix. ({1} to match only once and ? to match lazy).
+			 * Optionally include everything to the new-line if there is no other annotation on this line.
+			 * (
+			 *  	[ \t]*       -> Any space or tab characters after the annotation.
+			 *  	\%s          -> Include the new-line separator character sequence (from the config).
+			 *    |				-> OR
+			 *  	[ \t]*       -> Any space or tab characters after the annotation.
+			 *  	$			 -> End of input (string)
+			 * )?
+			 */
+			this._multiLineCommentPattern = Pattern.compile(
+					String.format(
+							"%s%s([ \\t]*%s|[ \\t]*$)?",
+							COMMENT_REGEX(
+									fileFormatConfig.getMultiLineCommentPrefix(), 
+									fileFormatConfig.getAnnotationPrefix()
+							),
+							Pattern.quote(fileFormatConfig.getMultiLineCommentSuffix()),
+							fileFormatConfig.getLineSeparator()
+					),
+					// Match case insensitive.
+					Pattern.CASE_INSENSITIVE
+					// Find the pattern on any line (not only the first or last line).
+					| Pattern.MULTILINE
+					// Also set the . to also match newlines.
+					| Pattern.DOTALL 
+			);
+		} else {
+			this._multiLineCommentPrefix = null;
+			this._multiLineCommentPattern = null;
+		}
+	}
+	
+	/**
+	 * The following regex part is for identifying annotations with is parameters.
+	 * %s           -> 1nd parameter for String.format, the annotation prefix
+	 * ([a-zA-Z]+)  -> The name of the annotation (region 1)
+	 * [ \t]*       -> Again, any space or tab characters
+	 * %s           -> 2rd parameter for String.format, the annotation args prefix
+	 * (.+?[^ \t])  -> The arguments for the annotation, not ending with a space or tab (region 2) (? -> eager so the closing bracket is not part of this section).
+	 * [ \t]*       -> Again, any space or tab characters
+	 * %s           -> 3th parameter for String.format, the annotation args suffix
+	 */
+	private static String ANNOTATION_REGEX(String annotationPrefix, String annotationArgsPrefix, String annotationArgsSuffix) {
+		return String.format(
+				"%s([a-zA-Z]+)[ \\t]*%s(.+?[^ \\t])[ \\t]*%s",
+				Pattern.quote(annotationPrefix),
+				Pattern.quote(annotationArgsPrefix),
+				Pattern.quote(annotationArgsSuffix)
+		);
+	}
+	
+	/**
+	 * The following regex part is the overlapping part of the single and multi-line comment pattern.
+	 * If there is nothing but empty characters between line start and the comment start we take it into the match.
+	 * ^?              -> The beginning of a line (optionally)
+	 * [ \t]*          -> Any space or tab characters (optionally)
+	 * %s              -> 1st parameter for String.format, the (single-line or multi-line) comment prefix
+	 * [ \t]*          -> Again, any space or tab characters
+	 * (.*?%s.+?)      -> The content of the comment section, any character but the annotation prefix must occur (2nd parameter for String.format). (region 1)
+	 * [ \t]*          -> Again, any space or tab characters 
+	 * The remainder of the pattern is specified per single or multi-line comment pattern.
+	 */
+	private static String COMMENT_REGEX(String commentPrefix, String annotationPrefix) {
+		return String.format("^?[ \\t]*%s[ \\t]*(.*?%s.+?)[ \\t]*",
+				Pattern.quote(commentPrefix),
+				Pattern.quote(annotationPrefix)
+		);
+	}
+	
+	/**
+	 * @return Whether the file format has single-line comments.
+	 */
+	public boolean hasSingleLineComments() {
+		return _singleLineCommentPattern != null;
+	}
+	
+	/**
+	 * @return Whether the file format has multi-line comments.
+	 */
+	public boolean hasMultiLineComments() {
+		return _multiLineCommentPattern != null;
+	}
+	
+	/**
+	 * Collection annotations which are in-line in a String. Some parts may be a annotation and other not.
+	 * @param templateContent The template part to scan.
+	 * @param fileFormatConfig The file format config, which is passed to the annotations.
+	 * @param beginIndex The character index of the templateContent to start scanning.
+	 * @param endIndex The character index of the templateContent to stop scanning.
+	 * @return A list of annotations found.
+	 * @throws TemplatePreprocessorException
+	 */
+	public ArrayList<TemplateAnnotation> collectInlineAnnotations(String templateContent, FileFormatConfig fileFormatConfig, int beginIndex, int endIndex) throws TemplatePreprocessorException {
+		ArrayList<TemplateAnnotation> annotations = new ArrayList<>();
+		Matcher matcher = _annotationPattern.matcher(templateContent);
+		
+		// Loop through the template part, matching the annotation pattern where the annotation prefix is found.
+		int previousMatchEndIndex = beginIndex;
+		for (int index = beginIndex; index < endIndex; index++) {
+			if (!lookingAt(matcher, templateContent, _annotationPrefix, index, previousMatchEndIndex, endIndex))
+				continue;
+			
+			// Group 1: The name of the annotation.
+			String annotationName = matcher.group(1);
+			// Group 2: The arguments for the annotation.
+			String annotationParams = matcher.group(2);
+			logger.info(String.format("Found annotation (name: '%s'; params: '%s'; start: %d; end: %d", annotationName, annotationParams, matcher.start(), matcher.end()));
+			
+			try {
+				// Get the TemplateAnnotation using the name and the params.
+				TemplateAnnotation templateAnnotation;
+				try {
+					templateAnnotation = TemplateAnnotation.fromName(annotationName, annotationParams, matcher.start(), matcher.end(), fileFormatConfig);
+				}
+				// When the UnhandledException occurs, wrap it into a TemplatePreprocessorException.
+				catch (UnhandledException e) {
+					throw new TemplatePreprocessorException(e);
+				}
+				// Add the template annotation to the list.
+				annotations.add(templateAnnotation);
+			} catch (AnnotationException e) {
+				throw new TemplatePreprocessorException(e);
+			}
+			
+			// Continue after the annotation.
+			previousMatchEndIndex = matcher.end();
+			index = previousMatchEndIndex - 1;
+		}
+		
+		return annotations;
+	}
+	
+	/**
+	 * Collection the annotations found in the single and multi-line comments of a template part.
+	 * When a comment prefix is found, the comment is matched and the annotations in it are collected, after which the scan for that comment type continues after the comment.
+	 * The single and multi-line comments are tracked separately in the same pass, so a comment within a comment of the other type is also found (like when sweeping the template per comment type).
+	 * @param templateContent The template content.
+	 * @param fileFormatConfig The file format config, which is passed to the annotations.
+	 * @param beginIndex The begin index of the templateContent to search from.
+	 * @param endIndex The end index of the templateContent to search till.
+	 * @return The list of annotations found, first the ones in single-line comments and then the ones in multi-line comments.
+	 * @throws TemplatePreprocessorException
+	 */
+	public ArrayList<TemplateAnnotation> collectCommentAnnotations(String templateContent, FileFormatConfig fileFormatConfig, int beginIndex, int endIndex) throws TemplatePreprocessorException {
+		ArrayList<TemplateAnnotation> singleLineCommentAnnotations = new ArrayList<>();
+		ArrayList<TemplateAnnotation> multiLineCommentAnnotations = new ArrayList<>();
+		Matcher singleLineCommentMatcher = (_singleLineCommentPattern != null) ? _singleLineCommentPattern.matcher(templateContent) : null;
+		Matcher multiLineCommentMatcher = (_multiLineCommentPattern != null) ? _multiLineCommentPattern.matcher(templateContent) : null;
+		
+		// Loop through the template part, matching the comment patterns where a comment prefix is found after the previous comment of the same type.
+		int previousSingleLineCommentEndIndex = beginIndex;
+		int previousMultiLineCommentEndIndex = beginIndex;
+		for (int index = beginIndex; index < endIndex; index++) {
+			if (singleLineCommentMatcher != null && index >= previousSingleLineCommentEndIndex && lookingAt(singleLineCommentMatcher, templateContent, _singleLineCommentPrefix, index, previousSingleLineCommentEndIndex, endIndex)) {
+				collectCommentAnnotations(templateContent, fileFormatConfig, singleLineCommentMatcher, 1, singleLineCommentAnnotations);
+				previousSingleLineCommentEndIndex = singleLineCommentMatcher.end();
+			}
+			if (multiLineCommentMatcher != null && index >= previousMultiLineCommentEndIndex && lookingAt(multiLineCommentMatcher, templateContent, _multiLineCommentPrefix, index, previousMultiLineCommentEndIndex, endIndex)) {
+				collectCommentAnnotations(templateContent, fileFormatConfig, multiLineCommentMatcher, 1, multiLineCommentAnnotations);
+				previousMultiLineCommentEndIndex = multiLineCommentMatcher.end();
+			}
+		}
+		
+		singleLineCommentAnnotations.addAll(multiLineCommentAnnotations);
+		return singleLineCommentAnnotations;
+	}
+	
+	/**
+	 * Collection annotations found in a comment.
+	 * @param templateContent The template content.
+	 * @param fileFormatConfig The file format config.
+	 * @param commentMatcher The matcher matching the comment.
+	 * @param commentContentRegion The comment content region (pattern group nr).
+	 * @param annotations The annotations list to add new found annotations in.
+	 * @throws TemplatePreprocessorException
+	 */
+	private void collectCommentAnnotations(String templateContent, FileFormatConfig fileFormatConfig, Matcher commentMatcher, int commentContentRegion, ArrayList<TemplateAnnotation> annotations) throws TemplatePreprocessorException {
+		logger.fine(String.format("Found comment with annotation. (start: %d; end: %d; commentStart: %d; commentEnd: %d; comment: '%s')", commentMatcher.start(), commentMatcher.end(), commentMatcher.start(commentContentRegion), commentMatcher.end(commentContentRegion), commentMatcher.group(commentContentRegion)));
+		// Collect the annotation in the content of the comment.
+		ArrayList<TemplateAnnotation> foundCommentAnnotations = collectInlineAnnotations(templateContent, fileFormatConfig, commentMatcher.start(commentContentRegion), commentMatcher.end(commentContentRegion));
+		if (foundCommentAnnotations.size() == 1) {
+			TemplateAnnotation onlyAnnotationInComment = foundCommentAnnotations.get(0);
+			logger.fine(String.format("Only one annotation found in comment: '%s'", templateContent.substring(onlyAnnotationInComment.getAnnotationBeginIndex(), onlyAnnotationInComment.getAnnotationEndIndex())));
+			// If the annotation is the only thing on the line, we take the whole line as begin and end index to make sure its not in the result.
+			if (
+					// If the regions of the annotation are the same as the comment content bounds.
+					(
+							onlyAnnotationInComment.getAnnotationBeginIndex() == commentMatcher.start(commentContentRegion) 
+							&& onlyAnnotationInComment.getAnnotationEndIndex() == commentMatcher.end(commentContentRegion)
+					)
+					// Or the remaining content is only white-space.
+					|| (
+							onlyAnnotationInComment.getAnnotationBeginIndex() == commentMatcher.start(commentContentRegion)
+							&& onlyAnnotationInComment.getAnnotationEndIndex() < commentMatcher.end(commentContentRegion)
+							&& templateContent.substring(onlyAnnotationInComment.getAnnotationEndIndex(), commentMatcher.end(commentContentRegion)).trim().length() == 0
+					)
+			) {
+				// Update the section annotation bounds.
+				logger.fine("The comment only contains an annotation, so the whole comment is now part of the annotation.");
+				onlyAnnotationInComment.setAnnotationBeginIndex(commentMatcher.start());
+				onlyAnnotationInComment.setAnnotationEndIndex(commentMatcher.end());
+			}
+		}
+		annotations.addAll(foundCommentAnnotations);
+	}
+	
+	/**
+	 * Match a pattern at the position of a prefix, if the prefix is found at the index.
+	 * The patterns start with optional spaces or tabs before the prefix, so the match starts at the first space or tab before the prefix (after the previous match).
+	 * This gives the same match as searching the pattern from the end of the previous match.
+	 * @param matcher The matcher on the template content.
+	 * @param templateContent The template content.
+	 * @param prefix The prefix, which is compared case insensitive (like the patterns).
+	 * @param index The index to check for the prefix.
+	 * @param previousMatchEndIndex The end of the previous match (or the begin index of the scan).
+	 * @param endIndex The end index of the scan.
+	 * @return Whether the pattern matches, if so the match is available in the matcher.
+	 */
+	private static boolean lookingAt(Matcher matcher, String templateContent, String prefix, int index, int previousMatchEndIndex, int endIndex) {
+		if (!templateContent.regionMatches(true, index, prefix, 0, prefix.length()))
+			return false;
+		int matchBeginIndex = index;
+		while (matchBeginIndex > previousMatchEndIndex && (templateContent.charAt(matchBeginIndex - 1) == ' ' || templateContent.charAt(matchBeginIndex - 1) == '\t'))
+			matchBeginIndex--;
+		matcher.region(matchBeginIndex, endIndex);
+		return matcher.lookingAt();
+	}
+}
@@ -25,13 +25,15 @@
 package com.xbreeze.xgenerate.template.section;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
+import com.xbreeze.xgenerate.config.CompiledSectionModelBinding;
 import com.xbreeze.xgenerate.config.XGenConfig;
-import com.xbreeze.xgenerate.config.binding.PlaceholderConfig;
-import com.xbreeze.xgenerate.config.binding.SectionModelBindingConfig;
 import com.xbreeze.xgenerate.template.TemplatePreprocessorException;
 import com.xbreeze.xgenerate.template.XsltTemplate;
 import com.xbreeze.xgenerate.template.annotation.TemplateSectionAnnotation;
@@ -44,6 +46,11 @@ public class NamedTemplateSection extends TemplateSection {
 	
 	public static final String PLACEHOLDER_PLACEHOLDER_NAME = "{{PLACEHOLDER_NAME}}";
 	
+	/**
+	 * The pattern to find the xsl:value-of instructions of the placeholders and literals, group 1 is the expression.
+	 */
+	private static final Pattern VALUE_OF_PATTERN = Pattern.compile("<xsl:value-of select=\"([^\"]*)\" />");
+	
 	/**
 	 * The template section annotation.
 	 * Used to generate the right XSLT.
@@ -96,25 +103,27 @@ public class NamedTemplateSection extends TemplateSection {
 		return this._templateSections;
 	}
 	
-	public void appendTemplateXslt(XsltTemplate xsltTemplate, XGenConfig config, SectionModelBindingConfig parentBindingConfig) throws TemplatePreprocessorException {
+	public void appendTemplateXslt(XsltTemplate xsltTemplate, XGenConfig config, CompiledSectionModelBinding parentBinding) throws TemplatePreprocessorException {
 		
 		// Add a comment in the XSLT marking the section start.
-		xsltTemplate.append("<!-- Section begin: %s -->", this.getSectionName());
+		xsltTemplate.appendComment("Section begin: %s", this.getSectionName());
 		
-		// If the variable name is set for the section model binding, inject the xsl-variable part.
-		if (parentBindingConfig.hasVariableName()) {
-			logger.info(String.format("Creating variable '%s' for SectionModelBinding '%s'.", parentBindingConfig.getVariableName(), parentBindingConfig.getSectionName()));
-			xsltTemplate.append("<xsl:variable name=\"%s\" select=\".\" />", parentBindingConfig.getVariableName());
+		// Add the xsl-variable part for the section model binding and each placeholder which has a variableName defined.
+		// If a variable is defined for a placeholder, the placeholder is replaced with the variable i.s.o. the modelXPath.
+		if (parentBinding.getVariableDeclarations().length() > 0) {
+			xsltTemplate.append(parentBinding.getVariableDeclarations());
+			xsltTemplate.addVariablesInScope(parentBinding.getVariableNames());
 		}
 		
-		// Add a variable for each placeholder which has a variableName defined.
-		// If a variable is defined for a placeholder, we use the variable i.s.o. replacing the placeholders with the modelXPath in XsltTemplate.processPlaceholders().
-		if (parentBindingConfig.getPlaceholderConfigs() != null) {
-			for (PlaceholderConfig placeholderWithVariable : parentBindingConfig.getPlaceholderConfigs().stream().filter(placeholder -> placeholder.hasVariableName()).collect(Collectors.toList())) {
-				logger.info(String.format("Creating variable '%s' for Placeholder '%s'.", placeholderWithVariable.getVariableName(), placeholderWithVariable.getName()));
-				xsltTemplate.append("<xsl:variable name=\"%s\" select=\"%s\" />", placeholderWithVariable.getVariableName(), placeholderWithVariable.getModelXPath());
-			}
+		// Process the raw template sections, and hoist the placeholder expressions which are used more than once into variables.
+		LinkedHashMap<RawTemplateSection, String> processedRawTemplateContents = new LinkedHashMap<>();
+		for (TemplateSection templateSection : this.getTemplateSections()) {
+			if (templateSection instanceof RawTemplateSection && !(templateSection instanceof RepetitionTemplateSection))
+				processedRawTemplateContents.put((RawTemplateSection) templateSection, processRawTemplateContent((RawTemplateSection) templateSection, config, parentBinding));
 		}
+		String hoistedVariableDeclarations = hoistRepeatedExpressions(processedRawTemplateContents, xsltTemplate);
+		if (hoistedVariableDeclarations.length() > 0)
+			xsltTemplate.append(hoistedVariableDeclarations);
 		
 		// Loop through the template sections and add the needed parts to the pre-processed template (XSLT).
 		for (TemplateSection templateSection : this.getTemplateSections()) {
@@ -124,7 +133,7 @@ public class NamedTemplateSection extends TemplateSection {
 				CommentTemplateSection commentTemplateSection = (CommentTemplateSection) templateSection;
 				// Transform CommentTemplateSection into XSLT comments.
 				// '-- @XGenComment(Some comment written here)' => '<xsl:comment>Some comment written here</xsl:comment>'.
-				xsltTemplate.append("<!-- Comment: %s -->", commentTemplateSection.getComment());
+				xsltTemplate.appendComment("Comment: %s", commentTemplateSection.getComment());
 			}
 			
 			// NamedTemplateSection
@@ -136,19 +145,31 @@ public class NamedTemplateSection extends TemplateSection {
 				// The placeholder replacement is done in the next phase.
 				
 				// Get the local section model bindings for the section.
-				SectionModelBindingConfig[] sectionModelBindingConfigs = parentBindingConfig.getSectionModelBindingConfigs(namedTemplateSection.getSectionName());
+				CompiledSectionModelBinding[] sectionModelBindings = parentBinding.getSectionModelBindings(namedTemplateSection.getSectionName());
 
 				// Repeat the template for each section binding.
-				if (sectionModelBindingConfigs != null && sectionModelBindingConfigs.length > 0) {
+				if (sectionModelBindings.length > 0) {
 					// For each section model binding, repeat the content of the section.
-					for (SectionModelBindingConfig sectionModelBindingConfig : sectionModelBindingConfigs) {
+					for (CompiledSectionModelBinding sectionModelBinding : sectionModelBindings) {
+						
+						// If a prefix or suffix depends on the last position, iterate over the elements so last() isn't needed.
+						// Using last() in a xsl:for-each forces the whole sequence of elements to be selected before the first one is processed.
+						if (namedTemplateSection.isLastPositionDependent()) {
+							xsltTemplate.beginIteratedSectionTemplate(sectionModelBinding.getModelXPath());
+							namedTemplateSection.appendTemplateXslt(xsltTemplate, config, sectionModelBinding);
+							xsltTemplate.endIteratedSectionTemplate();
+							continue;
+						}
 						
 						// Append the start of the for-each.
-						xsltTemplate.append("<xsl:for-each select=\"%s\">", sectionModelBindingConfig.getModelXPath());
+						xsltTemplate.append("<xsl:for-each select=\"%s\">", sectionModelBinding.getModelXPath());
 						
 						// Append the Xstl of the named template section.
 						// The content of the template section needs to be resolved before adding the content here. Recursive call needed.
-						namedTemplateSection.appendTemplateXslt(xsltTemplate, config, sectionModelBindingConfig);
+						// The content is put in a named template, which is shared by the bindings for which the content is the same.
+						xsltTemplate.beginSectionTemplate();
+						namedTemplateSection.appendTemplateXslt(xsltTemplate, config, sectionModelBinding);
+						xsltTemplate.endSectionTemplate();
 						
 						// Append the end of the for-each.
 						xsltTemplate.append("</xsl:for-each>");
@@ -165,7 +186,7 @@ public class NamedTemplateSection extends TemplateSection {
 						logger.warning(String.format("There is no section model binding configured for section '%s'", namedTemplateSection.getSectionName()));
 					}
 					// Append the Xstl of the named template section with the parent binding config.
-					namedTemplateSection.appendTemplateXslt(xsltTemplate, config, parentBindingConfig);		
+					namedTemplateSection.appendTemplateXslt(xsltTemplate, config, parentBinding);		
 				}
 			}
 			
@@ -174,89 +195,21 @@ public class NamedTemplateSection extends TemplateSection {
 			else if (templateSection instanceof RepetitionTemplateSection) {
 				RepetitionTemplateSection repetitionTemplateSection = (RepetitionTemplateSection)templateSection;
 				// Append the repetition xslt for this section.
-				xsltTemplate.append(getRepetitionXSLT(repetitionTemplateSection.getContent(), repetitionTemplateSection.getRepetitionStyle(), repetitionTemplateSection.getRepetitionAction()));
+				xsltTemplate.append(getRepetitionXSLT(repetitionTemplateSection.getContent(), repetitionTemplateSection.getRepetitionStyle(), repetitionTemplateSection.getRepetitionAction(), xsltTemplate.isInIteratedSectionTemplate()));
 			}
 			
 			// RawTemplateSection
 			else if (templateSection instanceof RawTemplateSection) {
 				RawTemplateSection rawTemplateSection = (RawTemplateSection) templateSection;
 				
-				// Store the template content in a local variable.
-				String processedRawTemplateContent = rawTemplateSection.getContent();
-				
-				// Replace the carriage return character with the XML encoded version so it's processed correctly in the XSLT engine.
-				processedRawTemplateContent = processedRawTemplateContent.replace("\r", "&#13;");
-				
-				//Determine the appropriate placeholderName to use (from parent binding config or from section annotation if specified)
-				String placeholderName = parentBindingConfig.getPlaceholderName();
-				if (this._templateSectionAnnotation.getPlaceholderName() != null) {
-					placeholderName = this._templateSectionAnnotation.getPlaceholderName();
-				}
-				// Process the placeholder-name placeholder.
-				// This placeholder is injected during TemplatePlaceholderInjection in XML templates.
-				// TODO Maybe handle this a bit smarter during injection of the placeholder somehow?
-				// ^ This is bit of chicken - egg problem where you can have multiple placeholder names?
-				// ^ But if placeholder names would differ the template would probably not work right?
-				// ^ Cause the sections are repeated, but placeholder can't be different for same section.
-				// ^ Maybe with this information we can check the unique placeholder names upfront and store
-				// ^ Them in this object to be used in the XMLPreprocessor.
-				if (processedRawTemplateContent.indexOf(PLACEHOLDER_PLACEHOLDER_NAME) != -1) {
-					logger.fine("Placeholder name placeholder found, replacing with right name");
-					/**
-					 * TODO: This is a simple way to inject a if for placeholder injections. Should be designed properly later.
-					 * In the template we find something like 'someAttribute="{{PLACEHOLDER_NAME}}_someModelNode"'
-					 * These placeholders are there because of injection.
-					 * We would like to add a <xsl:if> around this attribute so it is only there when there is a value.
-					 */
-					/**
-					 * The regex to find a placeholder injected attribute:
-					 * group 1:
-					 *   [ \\t\\r\\n]* - Whitespace (space, tab or new-line)
-					 *   
-					 * group 2:
-					 *   ([a-zA-Z]+:)? - The namespace prefix (group 3)
-					 *   [a-zA-Z_-]+   - The attribute name
-					 *   [ \\t]*       - Whitespace (space or tab)
-					 *   =             - Assignment operator
-					 *   [ \\t]*       - Whitespace (space or tab)
-					 *   \"            - Opening quote
-					 *  
-					 * group 4:
-					 *   %s            - The placeholder for placeholder name.
-					 * 
-					 * group 5:
-					 *   %s            - Current accessor
-					 *   
-					 * group 6:
-					 *   [a-zA-Z]+     - The attribute name to select
-					 *   
-					 * group 7:
-					 *   \"            - The closing quote
-					 */
-					String placeholderRegex =  String.format(
-							"([ \\t\\r\\n]*)(([a-zA-Z]+:)?[a-zA-Z_-]+[ \\t]*=[ \\t]*\")(%s)(%s)([a-zA-Z]+)(\")",
-							Pattern.quote(PLACEHOLDER_PLACEHOLDER_NAME),
-							Pattern.quote(config.getTemplateConfig().getFileFormatConfig().getCurrentAccessor())
-					);
-					processedRawTemplateContent = processedRawTemplateContent.replaceAll(placeholderRegex, String.format("</xsl:text><xsl:if test=\"./@$6\"><xsl:text>$1$2%s$5$6$7</xsl:text></xsl:if><xsl:text>", placeholderName));
-					
-					// When the placeholder wasn't replaced in the previous replacement, its due to it not being an attribute (probably).
-					// So we replace only the placeholder now.
-					processedRawTemplateContent = processedRawTemplateContent.replaceAll(Pattern.quote(PLACEHOLDER_PLACEHOLDER_NAME), placeholderName);
-				}
-				
-				// Process the placeholder of this section.
-				processedRawTemplateContent = XsltTemplate.processPlaceholders(processedRawTemplateContent, parentBindingConfig, config.getTemplateConfig(), placeholderName);
-				
-				// Process the literals defined for this section.
-				processedRawTemplateContent = XsltTemplate.processLiterals(processedRawTemplateContent, parentBindingConfig, config.getTemplateConfig());
+				// Get the processed content of the raw template section, with the repeated placeholder expressions replaced with their variables.
+				String processedRawTemplateContent = processedRawTemplateContents.get(rawTemplateSection);
 				
 				// Append the raw template section into the pre-processed template.
-				xsltTemplate.append("<!-- Raw begin -->");
-				xsltTemplate.append("<xsl:text>");
-				xsltTemplate.append(processedRawTemplateContent);
-				xsltTemplate.append("</xsl:text>");
-				xsltTemplate.append("<!-- Raw end -->");
+				// The text is merged with the text of adjacent raw sections (when not in debug mode).
+				xsltTemplate.appendComment("Raw begin");
+				xsltTemplate.appendText(processedRawTemplateContent);
+				xsltTemplate.appendComment("Raw end");
 			}
 			
 			// If we get a TemplateSection we don't handle, throw an exception.
@@ -268,8 +221,148 @@ public class NamedTemplateSection extends TemplateSection {
 		}
 		
 		// Add a comment in the XSLT marking the section end.
-		xsltTemplate.append("<!-- Section end: %s -->", this.getSectionName());
+		xsltTemplate.appendComment("Section end: %s", this.getSectionName());
+		
+	}
+	
+	/**
+	 * Process the content of a raw template section, replacing the placeholders and literals with XSLT instructions.
+	 * @param rawTemplateSection The raw template section.
+	 * @param config The XGenConfig.
+	 * @param parentBinding The binding of this section.
+	 * @return The processed content.
+	 */
+	private String processRawTemplateContent(RawTemplateSection rawTemplateSection, XGenConfig config, CompiledSectionModelBinding parentBinding) {
+		// Store the template content in a local variable.
+		String processedRawTemplateContent = rawTemplateSection.getContent();
+		
+		// Replace the carriage return character with the XML encoded version so it's processed correctly in the XSLT engine.
+		processedRawTemplateContent = processedRawTemplateContent.replace("\r", "&#13;");
+		
+		//Determine the appropriate placeholderName to use (from parent binding config or from section annotation if specified)
+		String placeholderName = parentBinding.getSectionModelBindingConfig().getPlaceholderName();
+		if (this._templateSectionAnnotation.getPlaceholderName() != null) {
+			placeholderName = this._templateSectionAnnotation.getPlaceholderName();
+		}
+		// Process the placeholder-name placeholder.
+		// This placeholder is injected during TemplatePlaceholderInjection in XML templates.
+		// TODO Maybe handle this a bit smarter during injection of the placeholder somehow?
+		// ^ This is bit of chicken - egg problem where you can have multiple placeholder names?
+		// ^ But if placeholder names would differ the template would probably not work right?
+		// ^ Cause the sections are repeated, but placeholder can't be different for same section.
+		// ^ Maybe with this information we can check the unique placeholder names upfront and store
+		// ^ Them in this object to be used in the XMLPreprocessor.
+		if (processedRawTemplateContent.indexOf(PLACEHOLDER_PLACEHOLDER_NAME) != -1) {
+			logger.fine("Placeholder name placeholder found, replacing with right name");
+			/**
+			 * TODO: This is a simple way to inject a if for placeholder injections. Should be designed properly later.
+			 * In the template we find something like 'someAttribute="{{PLACEHOLDER_NAME}}_someModelNode"'
+			 * These placeholders are there because of injection.
+			 * We would like to add a <xsl:if> around this attribute so it is only there when there is a value.
+			 */
+			/**
+			 * The regex to find a placeholder injected attribute:
+			 * group 1:
+			 *   [ \\t\\r\\n]* - Whitespace (space, tab or new-line)
+			 *   
+			 * group 2:
+			 *   ([a-zA-Z]+:)? - The namespace prefix (group 3)
+			 *   [a-zA-Z_-]+   - The attribute name
+			 *   [ \\t]*       - Whitespace (space or tab)
+			 *   =             - Assignment operator
+			 *   [ \\t]*       - Whitespace (space or tab)
+			 *   \"            - Opening quote
+			 *  
+			 * group 4:
+			 *   %s            - The placeholder for placeholder name.
+			 * 
+			 * group 5:
+			 *   %s            - Current accessor
+			 *   
+			 * group 6:
+			 *   [a-zA-Z]+     - The attribute name to select
+			 *   
+			 * group 7:
+			 *   \"            - The closing quote
+			 */
+			String placeholderRegex =  String.format(
+					"([ \\t\\r\\n]*)(([a-zA-Z]+:)?[a-zA-Z_-]+[ \\t]*=[ \\t]*\")(%s)(%s)([a-zA-Z]+)(\")",
+					Pattern.quote(PLACEHOLDER_PLACEHOLDER_NAME),
+					Pattern.quote(config.getTemplateConfig().getFileFormatConfig().getCurrentAccessor())
+			);
+			processedRawTemplateContent = processedRawTemplateContent.replaceAll(placeholderRegex, String.format("</xsl:text><xsl:if test=\"./@$6\"><xsl:text>$1$2%s$5$6$7</xsl:text></xsl:if><xsl:text>", placeholderName));
+			
+			// When the placeholder wasn't replaced in the previous replacement, its due to it not being an attribute (probably).
+			// So we replace only the placeholder now.
+			processedRawTemplateContent = processedRawTemplateContent.replaceAll(Pattern.quote(PLACEHOLDER_PLACEHOLDER_NAME), placeholderName);
+		}
+		
+		// Process the placeholder of this section and the placeholders and literals defined for this section.
+		processedRawTemplateContent = parentBinding.processPlaceholders(processedRawTemplateContent, placeholderName);
 		
+		return processedRawTemplateContent;
+	}
+	
+	/**
+	 * Hoist the placeholder expressions which are used more than once in the raw template sections of this section into variables.
+	 * The raw template sections of a section are all evaluated with the same focus (the element of the binding), so the expression
+	 * can be evaluated once in a variable at the start of the section, i.s.o. in each xsl:value-of.
+	 * The variables are named by the XSLT template, so they don't shadow the variables of the enclosing section if this section is inlined.
+	 * @param processedRawTemplateContents The processed contents of the raw template sections, the expressions are replaced with the variables.
+	 * @param xsltTemplate The XSLT template the variables are declared in.
+	 * @return The variable declarations for the hoisted expressions.
+	 */
+	private static String hoistRepeatedExpressions(Map<RawTemplateSection, String> processedRawTemplateContents, XsltTemplate xsltTemplate) {
+		// Count the expressions of the xsl:value-of instructions, the raw content is XML escaped so all instructions are generated.
+		LinkedHashMap<String, Integer> expressionCounts = new LinkedHashMap<>();
+		for (String processedRawTemplateContent : processedRawTemplateContents.values()) {
+			Matcher valueOfMatcher = VALUE_OF_PATTERN.matcher(processedRawTemplateContent);
+			while (valueOfMatcher.find()) {
+				expressionCounts.merge(valueOfMatcher.group(1), 1, Integer::sum);
+			}
+		}
+		
+		// Declare a variable for each expression which is used more than once.
+		HashMap<String, String> expressionVariables = new HashMap<>();
+		StringBuilder variableDeclarations = new StringBuilder();
+		for (Map.Entry<String, Integer> expressionCount : expressionCounts.entrySet()) {
+			if (expressionCount.getValue() > 1) {
+				String variableName = xsltTemplate.getHoistedVariableName();
+				expressionVariables.put(expressionCount.getKey(), variableName);
+				variableDeclarations.append(String.format("<xsl:variable name=\"%s\" select=\"%s\" />", variableName, expressionCount.getKey()));
+			}
+		}
+		if (expressionVariables.isEmpty())
+			return "";
+		
+		// Replace the expressions with the variables.
+		for (Map.Entry<RawTemplateSection, String> processedRawTemplateContent : processedRawTemplateContents.entrySet()) {
+			Matcher valueOfMatcher = VALUE_OF_PATTERN.matcher(processedRawTemplateContent.getValue());
+			StringBuffer hoistedRawTemplateContent = new StringBuffer();
+			while (valueOfMatcher.find()) {
+				String variableName = expressionVariables.get(valueOfMatcher.group(1));
+				if (variableName != null)
+					valueOfMatcher.appendReplacement(hoistedRawTemplateContent, Matcher.quoteReplacement(String.format("<xsl:value-of select=\"$%s\" />", variableName)));
+			}
+			valueOfMatcher.appendTail(hoistedRawTemplateContent);
+			processedRawTemplateContent.setValue(hoistedRawTemplateContent.toString());
+		}
+		return variableDeclarations.toString();
+	}
+	
+	/**
+	 * Check whether the section has a prefix or suffix of which the style depends on the last position.
+	 * @return Whether a repetition section is allButLast, lastOnly or allButFirstAndLast.
+	 */
+	private boolean isLastPositionDependent() {
+		for (TemplateSection templateSection : this.getTemplateSections()) {
+			if (templateSection instanceof RepetitionTemplateSection) {
+				RepetitionStyle style = ((RepetitionTemplateSection) templateSection).getRepetitionStyle();
+				if (style == RepetitionStyle.allButLast || style == RepetitionStyle.lastOnly || style == RepetitionStyle.allButFirstAndLast)
+					return true;
+			}
+		}
+		return false;
 	}
 	
 	/**
@@ -277,26 +370,29 @@ public class NamedTemplateSection extends TemplateSection {
 	 * @param prefixOrSuffix The prefix or suffix.
 	 * @param style The repetition style.
 	 * @param action The repetition action.
+	 * @param isIterated Whether the section is iterated, so the iteration variables are used i.s.o. position() and last().
 	 * @return The prefix or suffix XSLT.
 	 * @throws TemplatePreprocessorException
 	 */
-	private String getRepetitionXSLT(String prefixOrSuffix, RepetitionStyle style, RepetitionAction action) throws TemplatePreprocessorException {
+	private String getRepetitionXSLT(String prefixOrSuffix, RepetitionStyle style, RepetitionAction action, boolean isIterated) throws TemplatePreprocessorException {
+		String position = (isIterated) ? String.format("$%s", XsltTemplate.ITERATION_POSITION_VARIABLE) : "position()";
+		String isLast = (isIterated) ? String.format("$%s", XsltTemplate.ITERATION_LAST_VARIABLE) : "position() = last()";
 		String condition;
 		switch (style) {
 			case allButFirst: 
-				condition = "position() != 1";
+				condition = String.format("%s != 1", position);
 				break;
 			case allButFirstAndLast:
-				condition = "position() != 1 and position() != last()";
+				condition = String.format("%s != 1 and not(%s)", position, isLast);
 				break;
 			case allButLast:
-				condition = "position() != last()";
+				condition = String.format("not(%s)", isLast);
 				break;
 			case firstOnly:
-				condition = "position() = 1";
+				condition = String.format("%s = 1", position);
 				break;
 			case lastOnly:
-				condition = "position() = last()";
+				condition = isLast;
 				break;
 			case all:
 				// When the style is 'all' we want the repetition section to always be included. So we have a condition which is always true.
@@ -48,6 +48,7 @@ import com.xbreeze.xgenerate.template.annotation.TemplateXmlSectionAnnotation;
 import com.xbreeze.xgenerate.template.scanner.AnnotationScanner;
 import com.xbreeze.xgenerate.template.section.NamedTemplateSection;
 import com.xbreeze.xgenerate.template.text.TextTemplatePreprocessor;
+import com.xbreeze.xgenerate.utils.VTDDocument;
 import com.xbreeze.xgenerate.utils.XMLUtils;
 import com.ximpleware.AutoPilot;
 import com.ximpleware.ModifyException;
@@ -90,8 +91,9 @@ public class XMLTemplatePreprocessor extends TemplatePreprocessor {
 		// Store the file format config in a local variable.
 		FileFormatConfig fileFormatConfig = xmlTemplateConfig.getFileFormatConfig();
 		
-		// Store the template in a String so it can be updated while some modifications are done.
-		String preprocessedTemplate = rawTemplate.getRawTemplateContent();
+		// Store the template in bytes while some modifications are done, so it's not converted to a String and back for each modification.
+		// The bytes are only created when there are modifications.
+		byte[] modifiedTemplate = null;
 		
 		// First perform all modifications on the XML document (like attribute and placeholder injection).
 		// This is to make sure the document doesn't change anymore when sectionizing, since character indexes are stored.
@@ -103,21 +105,21 @@ public class XMLTemplatePreprocessor extends TemplatePreprocessor {
 		if (xmlTemplateConfig.getTemplateNodeRemovals() != null
 				&& xmlTemplateConfig.getTemplateNodeRemovals().size() > 0) 
 		{
-			preprocessedTemplate = performNodeRemovals(preprocessedTemplate, xmlTemplateConfig.getTemplateNodeRemovals());
+			modifiedTemplate = performNodeRemovals(getTemplateBytes(rawTemplate, modifiedTemplate), xmlTemplateConfig.getTemplateNodeRemovals());
 		}
 
 		// Perform template attribute injections on XML document (if defined).
 		if (xmlTemplateConfig.getTemplateAttributeInjections() != null
 				&& xmlTemplateConfig.getTemplateAttributeInjections().size() > 0) 
 		{
-			preprocessedTemplate = performAttributeInjections(preprocessedTemplate, xmlTemplateConfig.getTemplateAttributeInjections());
+			modifiedTemplate = performAttributeInjections(getTemplateBytes(rawTemplate, modifiedTemplate), xmlTemplateConfig.getTemplateAttributeInjections());
 		}
 		
 		// Perform the template placeholder injections on the XML document (if defined).
 		if (xmlTemplateConfig.getTemplatePlaceholderInjections() != null
 				&& xmlTemplateConfig.getTemplatePlaceholderInjections().size() > 0) 
 		{
-			preprocessedTemplate = performPlaceholderInjections(preprocessedTemplate, xmlTemplateConfig.getTemplatePlaceholderInjections());
+			modifiedTemplate = performPlaceholderInjections(getTemplateBytes(rawTemplate, modifiedTemplate), xmlTemplateConfig.getTemplatePlaceholderInjections());
 		}
 		
 		// Now all modifications are done we can sectionize the XML document using the sections defined
@@ -128,12 +130,15 @@ public class XMLTemplatePreprocessor extends TemplatePreprocessor {
 		ArrayList<TemplateAnnotation> templateAnnotations = new ArrayList<TemplateAnnotation>();
 		
 		// Create a VTDNav for navigating the document.
-		VTDNav nv;
+		// The VTD offsets are mapped to character offsets in the pre-processed template by the VTDDocument.
+		VTDDocument templateDocument;
 		try {
-			nv = XMLUtils.getVTDNav(preprocessedTemplate);
+			templateDocument = (modifiedTemplate != null) ? VTDDocument.fromBytes(modifiedTemplate, false) : VTDDocument.fromString(rawTemplate.getRawTemplateContent(), false);
 		} catch (GeneratorException e) {
 			throw new TemplatePreprocessorException(String.format("Error while reading pre-processed template after attribute and placeholder injection: %s", e.getMessage()), e);
 		}
+		String preprocessedTemplate = templateDocument.getContent();
+		VTDNav nv = templateDocument.getNav();
 		
 		// Create the xml sections using the sections from the config.
 		if (xmlTemplateConfig.getSectionAnnotations() != null
@@ -160,7 +165,7 @@ public class XMLTemplatePreprocessor extends TemplatePreprocessor {
 				        	++sectionNodesFound;
 				        	
 				        	// Get the TemplateSectionBoundsAnnotation of the current element, correcting for whitespace around the element.
-				        	TemplateSectionBoundsAnnotation tsba = getTemplateSectionBoundsWithWhitespace(preprocessedTemplate, nv, xmlSectionAnnotation);
+				        	TemplateSectionBoundsAnnotation tsba = getTemplateSectionBoundsWithWhitespace(templateDocument, xmlSectionAnnotation);
 	
 				        	// Add the bounds to the collection.
 				        	templateAnnotations.add(tsba);
@@ -217,8 +222,9 @@ public class XMLTemplatePreprocessor extends TemplatePreprocessor {
 		        	
 		        	// Get the annotation value.
 		        	String annotationAttributeValue = annotationNav.toRawString(annotationValueIndex);
-		        	int annotationValueStartIndex = (int)annotationNav.getTokenOffset(annotationValueIndex);
-					int annotationValueEndIndex = annotationValueStartIndex + annotationNav.getTokenLength(annotationValueIndex);
+		        	int annotationValueOffset = annotationNav.getTokenOffset(annotationValueIndex);
+		        	int annotationValueStartIndex = templateDocument.getCharOffset(annotationValueOffset);
+					int annotationValueEndIndex = templateDocument.getCharOffset(annotationValueOffset + annotationNav.getTokenLength(annotationValueIndex));
 					logger.fine(String.format("Found annotation node value (start=%d; end=%d): '%s'", annotationValueStartIndex, annotationValueEndIndex, annotationAttributeValue));
 					
 					// Collect the annotations defined in the template.
@@ -228,7 +234,7 @@ public class XMLTemplatePreprocessor extends TemplatePreprocessor {
 					for (TemplateXmlSectionAnnotation tsa : foundInlineAnnotations.stream().filter(sa -> sa instanceof TemplateXmlSectionAnnotation).toArray(TemplateXmlSectionAnnotation[]::new)) {
 						
 			        	// Get the TemplateSectionBoundsAnnotation of the current element, correcting for whitespace around the element.
-			        	TemplateSectionBoundsAnnotation tsba = getTemplateSectionBoundsWithWhitespace(preprocessedTemplate, nv, tsa);
+			        	TemplateSectionBoundsAnnotation tsba = getTemplateSectionBoundsWithWhitespace(templateDocument, tsa);
 						
 						// Create the template section bounds annotation.
 						foundInlineAnnotations.add(tsba);
@@ -271,8 +277,9 @@ public class XMLTemplatePreprocessor extends TemplatePreprocessor {
 				        	// We are at the point now were the annotationValueIndex points to the text template content.
 				        	// Get the annotation value.
 				        	String textTemplateContent = nv.toRawString(annotationValueIndex);
-				        	int textTemplateStartIndex = (int)nv.getTokenOffset(annotationValueIndex);
-							int textTemplateEndIndex = textTemplateStartIndex + nv.getTokenLength(annotationValueIndex);
+				        	int textTemplateOffset = nv.getTokenOffset(annotationValueIndex);
+				        	int textTemplateStartIndex = templateDocument.getCharOffset(textTemplateOffset);
+							int textTemplateEndIndex = templateDocument.getCharOffset(textTemplateOffset + nv.getTokenLength(annotationValueIndex));
 							logger.fine(String.format("Found text template node value (start=%d; end=%d): '%s'", textTemplateStartIndex, textTemplateEndIndex, textTemplateContent));
 							
 							// Create a template section annotation for the root section of the template.
@@ -318,20 +325,22 @@ public class XMLTemplatePreprocessor extends TemplatePreprocessor {
 	/**
 	 * Get a TemplateSectionBoundsAnnotation based on a TemplateSectionAnnotation and a VTDNav at the section element location.
 	 * It finds the surrounding whitespace and add the right parts to the indexes of the section bounds.
-	 * @param preprocessedTemplate The preprocessed template.
-	 * @param nv The VTDNav object which is at the position of the element to create bounds for.
+	 * @param templateDocument The preprocessed template, where the VTDNav is at the position of the element to create bounds for.
 	 * @param tsa The TemplateSectionAnnotation.
 	 * @return The new TemplateSectionBoundsAnnotation
 	 * @throws NavException
 	 */
-	private TemplateSectionBoundsAnnotation getTemplateSectionBoundsWithWhitespace(String preprocessedTemplate, VTDNav nv, TemplateXmlSectionAnnotation tsa) throws NavException {
+	private TemplateSectionBoundsAnnotation getTemplateSectionBoundsWithWhitespace(VTDDocument templateDocument, TemplateXmlSectionAnnotation tsa) throws NavException {
+		String preprocessedTemplate = templateDocument.getContent();
+		VTDNav nv = templateDocument.getNav();
     	// Get the element offset and length (including whitespaces).
-    	long elementOffset = nv.getElementFragment();
+    	long vtdElementOffset = nv.getElementFragment();
+    	long elementOffset = templateDocument.getCharFragment(vtdElementOffset);
     	int contentStartIndex = (int)elementOffset;
     	int contentEndIndex = contentStartIndex + (int)(elementOffset>>32);
     	
     	try {
-	    	long elementOffsetInclusingWS = nv.expandWhiteSpaces(elementOffset);
+	    	long elementOffsetInclusingWS = templateDocument.getCharFragment(nv.expandWhiteSpaces(vtdElementOffset));
 	    	int contentStartIndexIncludingWS = (int)elementOffsetInclusingWS;
 	    	int contentEndIndexIncludingWS = contentStartIndexIncludingWS + (int)(elementOffsetInclusingWS>>32);
 	    	
@@ -387,20 +396,30 @@ public class XMLTemplatePreprocessor extends TemplatePreprocessor {
     	return tsba;
 	}
 	
+	/**
+	 * Get the template bytes to modify, which are the bytes of the previous modification or else the encoded raw template.
+	 * @param rawTemplate The raw template.
+	 * @param modifiedTemplate The template bytes after the previous modification, or null.
+	 * @return The template bytes.
+	 */
+	private byte[] getTemplateBytes(RawTemplate rawTemplate, byte[] modifiedTemplate) {
+		return (modifiedTemplate != null) ? modifiedTemplate : XMLUtils.getXmlBytes(rawTemplate.getRawTemplateContent());
+	}
+	
 	/**
 	 * Perform the template node removals.
-	 * @param template The pre-processed template.
+	 * @param template The pre-processed template bytes.
 	 * @param templateNodeRemovals The template node removals to perform.
-	 * @return The pre-processed template after removing the nodes.
+	 * @return The pre-processed template bytes after removing the nodes.
 	 * @throws TemplatePreprocessorException
 	 */
-	private String performNodeRemovals(String template, ArrayList<XMLTemplateNodeRemoval> templateNodeRemovals) throws TemplatePreprocessorException {
+	private byte[] performNodeRemovals(byte[] template, ArrayList<XMLTemplateNodeRemoval> templateNodeRemovals) throws TemplatePreprocessorException {
 		logger.info("Performing template node removals.");
 		
 		// Create a VTDNav for navigating the document.
 		VTDNav nv;
 		try {
-			nv = XMLUtils.getVTDNav(template);
+			nv = XMLUtils.getVTDNav(template, false);
 		} catch (GeneratorException e) {
 			throw new TemplatePreprocessorException(String.format("Error while reading raw template before attribute injection: %s", e.getMessage()), e);
 		}
@@ -442,7 +461,7 @@ public class XMLTemplatePreprocessor extends TemplatePreprocessor {
 		
 		// Return the modified XML document.
 		try {
-			return XMLUtils.getResultingXml(xm);
+			return XMLUtils.getResultingXmlBytes(xm);
 		} catch (GeneratorException e) {
 			throw new TemplatePreprocessorException(e);
 		}
@@ -454,13 +473,13 @@ public class XMLTemplatePreprocessor extends TemplatePreprocessor {
 	 * @param templateAttributeInjections
 	 * @throws TemplatePreprocessorException
 	 */
-	private String performAttributeInjections(String template, ArrayList<XMLTemplateAttributeInjection> templateAttributeInjections) throws TemplatePreprocessorException {
+	private byte[] performAttributeInjections(byte[] template, ArrayList<XMLTemplateAttributeInjection> templateAttributeInjections) throws TemplatePreprocessorException {
 		logger.info("Performing template attribute injections.");
 		
 		// Create a VTDNav for navigating the document.
 		VTDNav nv;
 		try {
-			nv = XMLUtils.getVTDNav(template);
+			nv = XMLUtils.getVTDNav(template, false);
 		} catch (GeneratorException e) {
 			throw new TemplatePreprocessorException(String.format("Error while reading raw template before attribute injection: %s", e.getMessage()), e);
 		}
@@ -501,7 +520,7 @@ public class XMLTemplatePreprocessor extends TemplatePreprocessor {
 		
 		// Return the modified XML document.
 		try {
-			return XMLUtils.getResultingXml(xm);
+			return XMLUtils.getResultingXmlBytes(xm);
 		} catch (GeneratorException e) {
 			throw new TemplatePreprocessorException(e);
 		}
@@ -514,13 +533,13 @@ public class XMLTemplatePreprocessor extends TemplatePreprocessor {
 	 * @param templatePlaceholderInjections
 	 * @throws TemplatePreprocessorException
 	 */
-	private String performPlaceholderInjections(String template, ArrayList<XMLTemplatePlaceholderInjection> templatePlaceholderInjections) throws TemplatePreprocessorException {
+	private byte[] performPlaceholderInjections(byte[] template, ArrayList<XMLTemplatePlaceholderInjection> templatePlaceholderInjections) throws TemplatePreprocessorException {
 		logger.info("Performing template placeholder injections.");
 		
 		// Create a VTDNav for navigating the document.
 		VTDNav nv;
 		try {
-			nv = XMLUtils.getVTDNav(template);
+			nv = XMLUtils.getVTDNav(template, false);
 		} catch (GeneratorException e) {
 			throw new TemplatePreprocessorException(String.format("Error while reading preprocessed template after attribute injection and before placeholder injection: %s", e.getMessage()), e);
 		}
@@ -579,7 +598,7 @@ public class XMLTemplatePreprocessor extends TemplatePreprocessor {
 		
 		// Return the modified XML document.
 		try {
-			return XMLUtils.getResultingXml(xm);
+			return XMLUtils.getResultingXmlBytes(xm);
 		} catch (GeneratorException e) {
 			throw new TemplatePreprocessorException(e);
 		}
@@ -0,0 +1,298 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A persistent cache of files in a folder, stored by a key (usually a fingerprint of the input the cached file was created from).
+ * The files are written to a temporary file which is moved into place, so other runs never read a partly written file.
+ * The cache is bounded in size, when it exceeds the maximum size the least recently used files are removed.
+ * The modification time of a file is updated when it's read, so it's used to determine the least recently used files.
+ *
+ * @author Harmen
+ */
+public class FileCache {
+	// The logger for this class.
+	private static final Logger logger = Logger.getLogger(FileCache.class.getName());
+	
+	/**
+	 * The folder in which the files are cached.
+	 */
+	private Path _cacheFolder;
+	
+	/**
+	 * The file extension of the cached files.
+	 */
+	private String _fileExtension;
+	
+	/**
+	 * The maximum size of the cache in bytes.
+	 */
+	private long _maxSize;
+	
+	/**
+	 * The CrossGenerate version, which is included in each fingerprint.
+	 */
+	private static String _version;
+	
+	/**
+	 * Constructor.
+	 * @param cacheFolder The folder in which the files are cached.
+	 * @param fileExtension The file extension of the cached files (including the dot).
+	 * @param maxSize The maximum size of the cache in bytes.
+	 */
+	public FileCache(Path cacheFolder, String fileExtension, long maxSize) {
+		this._cacheFolder = cacheFolder;
+		this._fileExtension = fileExtension;
+		this._maxSize = maxSize;
+	}
+	
+	/**
+	 * @param key The key of the cached file.
+	 * @return The location of the cached file.
+	 */
+	public Path getCacheFile(String key) {
+		return _cacheFolder.resolve(String.format("%s%s", key, _fileExtension));
+	}
+	
+	/**
+	 * Read a file from the cache.
+	 * The file is read completely and closed (not memory-mapped), so it can be replaced or removed directly after reading, also on Windows.
+	 * @param key The key of the cached file.
+	 * @return The ByteBuffer with the cached file content, or null if it isn't in the cache.
+	 * @throws IOException
+	 */
+	public ByteBuffer read(String key) throws IOException {
+		Path cacheFile = getCacheFile(key);
+		if (!Files.isRegularFile(cacheFile))
+			return null;
+		ByteBuffer cacheFileBuffer = ByteBuffer.wrap(Files.readAllBytes(cacheFile));
+		
+		// Update the modification time, which is used to remove the least recently used files.
+		try {
+			Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			logger.fine(String.format("Couldn't update the modification time of the cached file '%s': %s", cacheFile.toString(), e.getMessage()));
+		}
+		return cacheFileBuffer;
+	}
+	
+	/**
+	 * Write a file into the cache, after which the least recently used files are removed when the cache exceeds its maximum size.
+	 * @param key The key of the cached file.
+	 * @param cacheFileWriter The writer of the file content.
+	 * @throws IOException
+	 */
+	public void write(String key, CacheFileWriter cacheFileWriter) throws IOException {
+		Path cacheFile = getCacheFile(key);
+		Files.createDirectories(_cacheFolder);
+		Path temporaryCacheFile = Files.createTempFile(_cacheFolder, key, ".tmp");
+		try {
+			try (DataOutputStream cacheOutputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryCacheFile)))) {
+				cacheFileWriter.write(cacheOutputStream);
+			}
+			try {
+				Files.move(temporaryCacheFile, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporaryCacheFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporaryCacheFile);
+		}
+		
+		// Remove the least recently used files when the cache is too big.
+		evict();
+	}
+	
+	/**
+	 * Remove the least recently used files from the cache until it doesn't exceed the maximum size.
+	 */
+	private synchronized void evict() {
+		ArrayList<Path> cacheFiles = new ArrayList<>();
+		long cacheSize = 0;
+		try (DirectoryStream<Path> cacheFolderStream = Files.newDirectoryStream(_cacheFolder, String.format("*%s", _fileExtension))) {
+			for (Path cacheFile : cacheFolderStream) {
+				cacheFiles.add(cacheFile);
+				cacheSize += cacheFile.toFile().length();
+			}
+		} catch (IOException e) {
+			logger.warning(String.format("Couldn't list the cache folder '%s': %s", _cacheFolder.toString(), e.getMessage()));
+			return;
+		}
+		if (cacheSize <= _maxSize)
+			return;
+		
+		// Remove the files in the order they were last used.
+		cacheFiles.sort(Comparator.comparingLong(cacheFile -> cacheFile.toFile().lastModified()));
+		for (Path cacheFile : cacheFiles) {
+			if (cacheSize <= _maxSize)
+				break;
+			long cacheFileSize = cacheFile.toFile().length();
+			try {
+				Files.deleteIfExists(cacheFile);
+				cacheSize -= cacheFileSize;
+				logger.fine(String.format("Removed the least recently used file '%s' from the cache", cacheFile.toString()));
+			} catch (IOException e) {
+				logger.warning(String.format("Couldn't remove '%s' from the cache: %s", cacheFile.toString(), e.getMessage()));
+			}
+		}
+	}
+	
+	/**
+	 * Get the fingerprint of the parts, as a hexadecimal SHA-256 digest.
+	 * Each part is prefixed with its length, so the concatenation of the parts is unambiguous.
+	 * The CrossGenerate version is always included, so the cache is invalidated when another version is used.
+	 * @param parts The parts to compute the fingerprint of.
+	 * @return The fingerprint.
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static String getFingerprint(String... parts) throws NoSuchAlgorithmException {
+		MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+		updateDigest(messageDigest, getVersion());
+		for (String part : parts) {
+			updateDigest(messageDigest, part);
+		}
+		
+		return toHexString(messageDigest.digest());
+	}
+	
+	/**
+	 * @param digest The digest.
+	 * @return The digest as a hexadecimal String.
+	 */
+	private static String toHexString(byte[] digest) {
+		StringBuilder hexString = new StringBuilder();
+		for (byte digestByte : digest) {
+			hexString.append(String.format("%02x", digestByte));
+		}
+		return hexString.toString();
+	}
+	
+	private static void updateDigest(MessageDigest messageDigest, String value) {
+		byte[] valueBytes = (value != null) ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		messageDigest.update(String.format("%d:", valueBytes.length).getBytes(StandardCharsets.UTF_8));
+		messageDigest.update(valueBytes);
+	}
+	
+	/**
+	 * Get the CrossGenerate version, it's only determined once.
+	 * When the version isn't known (when not running from the released jar), a digest of the contents of the jar or classes folder is used.
+	 * The modification time of a classes folder doesn't change when a class in it is recompiled, so it can't be used to invalidate the cache.
+	 * @return The version.
+	 */
+	private static synchronized String getVersion() {
+		if (_version == null) {
+			_version = FileCache.class.getPackage().getImplementationVersion();
+			if (_version == null) {
+				try {
+					_version = String.format("dev-%s", getCodeSourceDigest(Paths.get(FileCache.class.getProtectionDomain().getCodeSource().getLocation().toURI())));
+				} catch (Exception e) {
+					logger.warning(String.format("Couldn't determine the digest of the CrossGenerate classes: %s", e.getMessage()));
+					_version = "dev";
+				}
+			}
+		}
+		return _version;
+	}
+	
+	/**
+	 * Get the digest of the jar file or of the files in the classes folder the classes are loaded from.
+	 * @param codeSource The jar file or classes folder.
+	 * @return The digest as a hexadecimal String.
+	 * @throws IOException
+	 * @throws NoSuchAlgorithmException
+	 */
+	private static String getCodeSourceDigest(Path codeSource) throws IOException, NoSuchAlgorithmException {
+		MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+		if (Files.isDirectory(codeSource)) {
+			// Digest the relative path and content of each file, in a fixed order.
+			ArrayList<Path> codeSourceFiles = new ArrayList<>();
+			try (Stream<Path> codeSourceStream = Files.walk(codeSource)) {
+				codeSourceStream.filter(Files::isRegularFile).forEach(codeSourceFiles::add);
+			}
+			codeSourceFiles.sort(Comparator.comparing(codeSourceFile -> codeSource.relativize(codeSourceFile).toString()));
+			for (Path codeSourceFile : codeSourceFiles) {
+				byte[] codeSourceFileBytes = Files.readAllBytes(codeSourceFile);
+				updateDigest(messageDigest, codeSource.relativize(codeSourceFile).toString());
+				messageDigest.update(String.format("%d:", codeSourceFileBytes.length).getBytes(StandardCharsets.UTF_8));
+				messageDigest.update(codeSourceFileBytes);
+			}
+		} else {
+			messageDigest.update(Files.readAllBytes(codeSource));
+		}
+		return toHexString(messageDigest.digest());
+	}
+	
+	/**
+	 * Write a String prefixed with its length in bytes, to be read using readString.
+	 * @param outputStream The output stream.
+	 * @param value The String.
+	 * @throws IOException
+	 */
+	public static void writeString(DataOutputStream outputStream, String value) throws IOException {
+		byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+		outputStream.writeInt(valueBytes.length);
+		outputStream.write(valueBytes);
+	}
+	
+	/**
+	 * Read a String written using writeString.
+	 * @param buffer The buffer, its position is moved to after the String.
+	 * @return The String.
+	 */
+	public static String readString(ByteBuffer buffer) {
+		int valueLength = buffer.getInt();
+		ByteBuffer valueBuffer = buffer.slice();
+		valueBuffer.limit(valueLength);
+		buffer.position(buffer.position() + valueLength);
+		return StandardCharsets.UTF_8.decode(valueBuffer).toString();
+	}
+	
+	/**
+	 * Writer of the content of a cached file.
+	 */
+	@FunctionalInterface
+	public interface CacheFileWriter {
+		void write(DataOutputStream outputStream) throws IOException;
+	}
+}
@@ -27,7 +27,9 @@ package com.xbreeze.xgenerate.utils;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Files;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BOMInputStream;
@@ -38,9 +40,21 @@ public class FileUtils {
 		// Create a input stream from the template file.
 		FileInputStream fis = new FileInputStream(new File(fileLocation));
 		// Wrap the input stream in a BOMInputStream so it is invariant for the BOM.
-		BOMInputStream bomInputStream = BOMInputStream.builder().setInputStream(fis).get();
-		// Create a String using the BOMInputStream and the charset.
-		// The charset can be null, this gives no errors.
-		return IOUtils.toString(bomInputStream, bomInputStream.getBOMCharsetName());
+		try (BOMInputStream bomInputStream = BOMInputStream.builder().setInputStream(fis).get()) {
+			// Create a String using the BOMInputStream and the charset.
+			// The charset can be null, this gives no errors.
+			return IOUtils.toString(bomInputStream, bomInputStream.getBOMCharsetName());
+		}
+	}
+	
+	/**
+	 * Get an InputStream on the file bytes, for parsers which detect the encoding themselves.
+	 * The caller should close the InputStream.
+	 * @param fileLocation The file location.
+	 * @return The InputStream.
+	 * @throws IOException
+	 */
+	public static InputStream getFileInputStream(URI fileLocation) throws IOException {
+		return Files.newInputStream(new File(fileLocation).toPath());
 	}
 }
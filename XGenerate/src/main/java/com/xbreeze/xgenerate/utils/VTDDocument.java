@@ -0,0 +1,166 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.utils;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import com.xbreeze.xgenerate.generator.GeneratorException;
+import com.ximpleware.VTDNav;
+
+/**
+ * A XML document parsed by VTD, with its content as a String.
+ * VTD offsets are byte offsets in the encoded document, which differ from the character offsets in the String for multi-byte (UTF-8) characters.
+ * This class maps the VTD offsets to character offsets, the mapping is only built when the document contains multi-byte characters.
+ *
+ * @author Harmen
+ */
+public class VTDDocument {
+	private VTDNav _nav;
+	private Charset _charset;
+	private String _content;
+	
+	/**
+	 * The byte offsets after each multi-byte character, and the number of extra bytes up till there.
+	 * Both are null as long as the mapping isn't built, and empty when all characters are single byte.
+	 */
+	private volatile int[] _multiByteCharacterEnds;
+	private int[] _extraBytes;
+	
+	private VTDDocument(VTDNav nav, String content) {
+		this._nav = nav;
+		this._charset = XMLUtils.getCharset(nav);
+		this._content = content;
+	}
+	
+	/**
+	 * Parse a XML document from a String.
+	 * @param xmlDocument The XML document.
+	 * @param namespaceAware Whether the parser is namespace aware.
+	 * @return The VTDDocument.
+	 * @throws GeneratorException
+	 */
+	public static VTDDocument fromString(String xmlDocument, boolean namespaceAware) throws GeneratorException {
+		return new VTDDocument(XMLUtils.getVTDNav(xmlDocument, namespaceAware), xmlDocument);
+	}
+	
+	/**
+	 * Parse a XML document from bytes, for example the output of a XMLModifier.
+	 * The bytes are parsed as is, the String content is only decoded when it's requested.
+	 * @param xmlBytes The XML document bytes.
+	 * @param namespaceAware Whether the parser is namespace aware.
+	 * @return The VTDDocument.
+	 * @throws GeneratorException
+	 */
+	public static VTDDocument fromBytes(byte[] xmlBytes, boolean namespaceAware) throws GeneratorException {
+		return new VTDDocument(XMLUtils.getVTDNav(xmlBytes, namespaceAware), null);
+	}
+	
+	/**
+	 * @return The VTDNav of the document.
+	 */
+	public VTDNav getNav() {
+		return _nav;
+	}
+	
+	/**
+	 * @return The document content as a String.
+	 */
+	public String getContent() {
+		if (this._content == null) {
+			this._content = new String(this._nav.getXML().getBytes(), this._charset);
+		}
+		return this._content;
+	}
+	
+	/**
+	 * Get the character offset in the String content of a VTD offset.
+	 * @param vtdOffset The VTD (byte) offset.
+	 * @return The character offset.
+	 */
+	public int getCharOffset(int vtdOffset) {
+		if (this._multiByteCharacterEnds == null) {
+			buildCharOffsetMapping();
+		}
+		if (this._multiByteCharacterEnds.length == 0) {
+			return vtdOffset;
+		}
+		// Find the number of multi-byte characters which end before or at the offset.
+		int multiByteCharacterCount = Arrays.binarySearch(this._multiByteCharacterEnds, vtdOffset);
+		multiByteCharacterCount = (multiByteCharacterCount >= 0) ? multiByteCharacterCount + 1 : -multiByteCharacterCount - 1;
+		return (multiByteCharacterCount == 0) ? vtdOffset : vtdOffset - this._extraBytes[multiByteCharacterCount - 1];
+	}
+	
+	/**
+	 * Get the character offset and length of a VTD fragment.
+	 * @param vtdFragment The VTD fragment, with the offset in the lower and the length in the upper 32 bits.
+	 * @return The fragment in characters, encoded the same.
+	 */
+	public long getCharFragment(long vtdFragment) {
+		int vtdOffset = (int) vtdFragment;
+		int charOffset = getCharOffset(vtdOffset);
+		int charLength = getCharOffset(vtdOffset + (int) (vtdFragment >>> 32)) - charOffset;
+		return ((long) charLength << 32) | charOffset;
+	}
+	
+	/**
+	 * Build the mapping from byte to character offsets, by scanning the document bytes for UTF-8 multi-byte sequences.
+	 * For single byte encodings the offsets are the same.
+	 */
+	private synchronized void buildCharOffsetMapping() {
+		if (this._multiByteCharacterEnds != null)
+			return;
+		int[] multiByteCharacterEnds = new int[0];
+		int[] extraBytes = new int[0];
+		if (this._nav.getEncoding() == VTDNav.FORMAT_UTF8) {
+			byte[] xmlBytes = this._nav.getXML().getBytes();
+			int count = 0;
+			int totalExtraBytes = 0;
+			int i = 0;
+			while (i < xmlBytes.length) {
+				int leadByte = xmlBytes[i] & 0xFF;
+				if (leadByte < 0x80) {
+					i++;
+					continue;
+				}
+				// A 2 or 3 byte sequence is 1 character, a 4 byte sequence is 2 characters (a surrogate pair).
+				int sequenceLength = (leadByte >= 0xF0) ? 4 : (leadByte >= 0xE0) ? 3 : 2;
+				totalExtraBytes += (sequenceLength == 4) ? 2 : sequenceLength - 1;
+				i += sequenceLength;
+				if (count == multiByteCharacterEnds.length) {
+					multiByteCharacterEnds = Arrays.copyOf(multiByteCharacterEnds, Math.max(16, count * 2));
+					extraBytes = Arrays.copyOf(extraBytes, multiByteCharacterEnds.length);
+				}
+				multiByteCharacterEnds[count] = i;
+				extraBytes[count] = totalExtraBytes;
+				count++;
+			}
+			multiByteCharacterEnds = Arrays.copyOf(multiByteCharacterEnds, count);
+			extraBytes = Arrays.copyOf(extraBytes, count);
+		}
+		this._extraBytes = extraBytes;
+		this._multiByteCharacterEnds = multiByteCharacterEnds;
+	}
+}
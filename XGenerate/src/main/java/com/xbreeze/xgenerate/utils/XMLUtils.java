@@ -31,22 +31,34 @@ import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.xml.transform.ErrorListener;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.stream.StreamSource;
 
+import org.apache.commons.io.input.CharSequenceReader;
 import org.apache.commons.text.StringEscapeUtils;
 
 import com.xbreeze.xgenerate.config.ConfigException;
 import com.xbreeze.xgenerate.generator.GeneratorException;
+import com.xbreeze.xgenerate.template.EscapeXmlFunction;
 import com.xbreeze.xgenerate.template.TemplatePreprocessor;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore.IncludeContent;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore.IncludeElement;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore.IncludeFile;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore.IncludedFile;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore.ResolvedXml;
 import com.ximpleware.AutoPilot;
 import com.ximpleware.FastLongBuffer;
 import com.ximpleware.ModifyException;
@@ -71,6 +83,12 @@ public class XMLUtils {
 	// The logger for this class.
 	protected static final Logger logger = Logger.getLogger(TemplatePreprocessor.class.getName());
 	
+	// The XML declaration, which is removed from included files.
+	private static final Pattern XML_DECLARATION_PATTERN = Pattern.compile("^<\\?xml.*\\?>");
+	
+	// The encoding in the XML declaration.
+	private static final Pattern XML_ENCODING_PATTERN = Pattern.compile("^\\s*<\\?xml[^>]*?encoding\\s*=\\s*[\"']([^\"']+)[\"']");
+	
 	/**
 	 * Escape XML characters.
 	 * @param input The text to escape.
@@ -92,24 +110,34 @@ public class XMLUtils {
 	
 	/**
 	 * Get the VTDNav object for a XML document.
-	 * See: https://vtd-xml.sourceforge.io/javadoc/.
+	 * The document is encoded using getXmlBytes, so VTD offsets are byte offsets in that encoding.
+	 * When the offsets are used on the String, use a VTDDocument which maps them to character offsets.
 	 * @param xmlDocument The XML document as a String.
 	 * @param namespaceAware Whether the parser is namespace aware.
 	 * @return The VTDNav.
 	 * @throws GeneratorException
 	 */
 	public static VTDNav getVTDNav(String xmlDocument, boolean namespaceAware) throws GeneratorException {
+		return getVTDNav(getXmlBytes(xmlDocument), namespaceAware);
+	}
+	
+	/**
+	 * Get the VTDNav object for a XML document.
+	 * See: https://vtd-xml.sourceforge.io/javadoc/.
+	 * @param xmlBytes The XML document bytes, in the encoding declared in the document (UTF-8 when not declared).
+	 * @param namespaceAware Whether the parser is namespace aware.
+	 * @return The VTDNav.
+	 * @throws GeneratorException
+	 */
+	public static VTDNav getVTDNav(byte[] xmlBytes, boolean namespaceAware) throws GeneratorException {
 		// Create a VTGGen object.
 		VTDGen vg = new VTDGen();
 		
 		// Enable collecting all whitespaces.
 		vg.enableIgnoredWhiteSpace(true);
 		
-		// Set the document (in UTF-8 encoding).
-		// Currently the encoding is set to US_ASCII, cause this solves the issue for special characters and doesn't seem to break anything.
-		// Question is asked to the vtd-gen developer if this is a bug in vtg-gen.
-		// https://stackoverflow.com/questions/51507388/vtd-xml-element-fragment-incorrect
-		vg.setDoc(xmlDocument.getBytes(StandardCharsets.US_ASCII));
+		// Set the document, VTD parses the bytes in place so they are not copied.
+		vg.setDoc(xmlBytes);
 		
 		// When enabling namespace awareness, you must map the URLs of all used namespaces here.
 		try {
@@ -122,6 +150,61 @@ public class XMLUtils {
 		return vg.getNav();
 	}
 	
+	/**
+	 * Encode a XML document for parsing it with VTD.
+	 * A document with only ASCII characters is encoded as ASCII, so the byte offsets are the character offsets.
+	 * Otherwise the document is encoded in the single byte encoding it declares, or in UTF-8.
+	 * @param xmlDocument The XML document as a String.
+	 * @return The XML document bytes.
+	 */
+	public static byte[] getXmlBytes(String xmlDocument) {
+		boolean isAscii = true;
+		for (int i = 0; i < xmlDocument.length() && isAscii; i++) {
+			isAscii = xmlDocument.charAt(i) < 0x80;
+		}
+		if (isAscii)
+			return xmlDocument.getBytes(StandardCharsets.US_ASCII);
+		
+		Charset charset = StandardCharsets.UTF_8;
+		Matcher xmlEncodingMatcher = XML_ENCODING_PATTERN.matcher(xmlDocument);
+		if (xmlEncodingMatcher.lookingAt()) {
+			String encoding = xmlEncodingMatcher.group(1).toUpperCase();
+			if (encoding.startsWith("ISO-8859-") || encoding.startsWith("WINDOWS-125") || encoding.equals("US-ASCII")) {
+				try {
+					charset = Charset.forName(encoding);
+				} catch (IllegalArgumentException e) {
+					logger.warning(String.format("The XML document declares an unsupported encoding (%s), using UTF-8", encoding));
+				}
+			}
+		}
+		return xmlDocument.getBytes(charset);
+	}
+	
+	/**
+	 * Get the charset of a XML document parsed by VTD.
+	 * @param nv The VTDNav.
+	 * @return The charset.
+	 */
+	public static Charset getCharset(VTDNav nv) {
+		int encoding = nv.getEncoding();
+		switch (encoding) {
+			case VTDNav.FORMAT_ASCII:
+				return StandardCharsets.US_ASCII;
+			case VTDNav.FORMAT_ISO_8859_1:
+				return StandardCharsets.ISO_8859_1;
+			case VTDNav.FORMAT_UTF_16BE:
+				return StandardCharsets.UTF_16BE;
+			case VTDNav.FORMAT_UTF_16LE:
+				return StandardCharsets.UTF_16LE;
+			default:
+				if (encoding >= VTDNav.FORMAT_ISO_8859_2 && encoding <= VTDNav.FORMAT_ISO_8859_16)
+					return Charset.forName(String.format("ISO-8859-%d", encoding - VTDNav.FORMAT_ISO_8859_2 + 2));
+				if (encoding >= VTDNav.FORMAT_WIN_1250 && encoding <= VTDNav.FORMAT_WIN_1258)
+					return Charset.forName(String.format("windows-%d", encoding - VTDNav.FORMAT_WIN_1250 + 1250));
+				return StandardCharsets.UTF_8;
+		}
+	}
+	
 	/**
 	 * Append an attribute for the current element.
 	 * @param nv The VTDNav where the element is the current index.
@@ -143,12 +226,12 @@ public class XMLUtils {
 				int lastAttributeValueEndIndex = (int)nv.getTokenOffset(lastAttributeValueIndex) + nv.getTokenLength(lastAttributeValueIndex) + 1;
 				logger.info(String.format("Appending attribute '%s' at %d", attributeName, lastAttributeValueEndIndex));
 				// Insert  the new attribute.
-				xm.insertBytesAt(lastAttributeValueEndIndex, String.format(" %s=\"%s\"", attributeName, encodedAttributeValue).getBytes());
+				xm.insertBytesAt(lastAttributeValueEndIndex, String.format(" %s=\"%s\"", attributeName, encodedAttributeValue).getBytes(getCharset(nv)));
 			}
 			// If the attribute already exists, update it.
 			else {
 				try {
-					xm.updateToken(attributeValueIndex, encodedAttributeValue.getBytes());
+					xm.updateToken(attributeValueIndex, encodedAttributeValue.getBytes(getCharset(nv)));
 				} catch (UnsupportedEncodingException e) {
 					throw new GeneratorException(String.format("Error while updating attribute value (%s)", attributeName), e);
 				}
@@ -181,29 +264,22 @@ public class XMLUtils {
 	}
 	
 	/**
-	 * Write the new XML structure to a String.
+	 * Write the new XML structure to a byte array.
+	 * The bytes are in the encoding of the modified document, they can be parsed again using getVTDNav or VTDDocument.fromBytes.
 	 * @param xm The XMLModifier
-	 * @return The resulting XML document as a String.
+	 * @return The resulting XML document bytes.
 	 * @throws GeneratorException 
 	 */
-	public static String getResultingXml(XMLModifier xm) throws GeneratorException {
+	public static byte[] getResultingXmlBytes(XMLModifier xm) throws GeneratorException {
 		// Write the XML document into a ByteArray.
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try {
 			xm.output(baos);
 		} catch (ModifyException | TranscodeException | IOException e) {
 			throw new GeneratorException("Error while getting resulting XML document after modification(s).", e);
 		}
-        // Store the ByteArray into a String.
-        String modifiedTemplate = baos.toString();
-        // Close the output stream.
-        try {
-			baos.close();
-		} catch (IOException e) {
-			throw new GeneratorException("Error while closing ByteArrayOutputStream after writing XML document.", e);
-		}
-        // Return the XML document as a String.
-        return modifiedTemplate;
+		// Return the XML document bytes.
+		return baos.toByteArray();
 	}
 	
 	/**
@@ -214,39 +290,127 @@ public class XMLUtils {
 	 * @throws ConfigException
 	 */
 	public static String getXmlFragment(String xmlDoc, String xPath) throws XmlException {
+		VTDDocument xmlDocument;
 		try {
-			logger.fine(String.format("Applying xpointer %s on config file %s", xPath, xmlDoc));
-			StringBuilder sb = new StringBuilder();
-			VTDNav nav = getVTDNav(xmlDoc);
+			xmlDocument = VTDDocument.fromString(xmlDoc, false);
+		} catch (GeneratorException e) {
+			throw new XmlException(String.format("Error parsing %s as XML", xmlDoc), e);
+		}
+		StringBuilder sb = new StringBuilder();
+		appendXmlFragments(sb, xmlDoc, getXmlFragmentRanges(xmlDocument, xPath));
+		return sb.toString();
+	}
+	
+	/**
+	 * Apply a XPath expression on a parsed XML document and return the positions of the resulting nodes.
+	 * @param xmlDocument The parsed XML document, its VTDNav is reset before evaluating the XPath expression.
+	 * @param xPath the XPath expression to evaluate
+	 * @return The fragment ranges in the document content, with the character offset in the lower and the length in the upper 32 bits.
+	 * @throws XmlException
+	 */
+	public static long[] getXmlFragmentRanges(VTDDocument xmlDocument, String xPath) throws XmlException {
+		try {
+			logger.fine(String.format("Applying xpointer %s", xPath));
+			VTDNav nav = xmlDocument.getNav();
+			nav.toElement(VTDNav.ROOT);
 			AutoPilot ap = new AutoPilot(nav);
 			ap.selectXPath(xPath);
 			FastLongBuffer flb = new FastLongBuffer();
 			//Store the record identifiers from matching elements
 			while ((ap.evalXPath()) != -1) {
-				flb.append(nav.getElementFragment());				
+				flb.append(xmlDocument.getCharFragment(nav.getElementFragment()));
 			}
 			logger.fine(String.format("Found %d matches", flb.size()));
-			//Process matched elements by extracting them from xml and appending to stringbuilder.
-			byte[] xml = nav.getXML().getBytes();
-			for (int i = 0; i < flb.size(); i++) {
-				sb.append(new String(xml, flb.lower32At(i), flb.upper32At(i)));
-			}
-			return sb.toString();
-		} catch (GeneratorException e) {
-			throw new XmlException(String.format("Error parsing %s as XML", xmlDoc), e);
+			return (flb.size() > 0) ? flb.toLongArray() : new long[0];
 		} catch (XPathParseException | XPathEvalException e) {
-			throw new XmlException(getAutopilotExceptionMessage(xPath, e),e);		
+			throw new XmlException(getAutopilotExceptionMessage(xPath, e),e);
 		} catch (NavException e) {
-			throw new XmlException(String.format("Error navigating %s", xmlDoc), e);
-		}		
+			throw new XmlException(String.format("Error navigating XML document while applying xpointer %s", xPath), e);
+		}
+	}
+	
+	/**
+	 * Append the fragments of a XML document to a StringBuilder, without copying them into intermediate Strings.
+	 * @param sb The StringBuilder to append to.
+	 * @param xmlDoc The XML document.
+	 * @param fragmentRanges The fragment ranges, as returned by getXmlFragmentRanges.
+	 */
+	public static void appendXmlFragments(StringBuilder sb, CharSequence xmlDoc, long[] fragmentRanges) {
+		for (long fragmentRange : fragmentRanges) {
+			int offset = (int) fragmentRange;
+			sb.append(xmlDoc, offset, offset + (int) (fragmentRange >>> 32));
+		}
 	}
 	
-	public static XsltTransformer getXsltTransformer(String xsltTemplateContent, String modelFileContent, URI outputFolderUri) throws GeneratorException {
-		// Create a string reader on the pre-processed template.
-		StringReader xslStringReader = new StringReader(xsltTemplateContent);
-		StreamSource xslSource = new StreamSource(xslStringReader);
+	public static XsltTransformer getXsltTransformer(CharSequence xsltTemplateContent, String modelFileContent, URI outputFolderUri) throws GeneratorException {
+		// Create a Saxon processor.
+		Processor processor = createProcessor();
+		// Compile the XSLT stylesheet and parse the model, and load the Xslt Transformer using them.
+		return getXsltTransformer(getXsltExecutable(processor, xsltTemplateContent), getModelDocumentNode(processor, modelFileContent), outputFolderUri);
+	}
+	
+	/**
+	 * Create a Saxon processor to compile the pre-processed templates with.
+	 * The XGenerate extension functions used in the pre-processed templates are registered on the processor.
+	 * The processor is thread-safe once it's created, so it can be shared to compile and transform multiple templates at the same time.
+	 * @return The Saxon processor.
+	 */
+	public static Processor createProcessor() {
+		Processor processor = new Processor(false);
+		processor.registerExtensionFunction(EscapeXmlFunction.INSTANCE);
+		return processor;
+	}
+	
+	/**
+	 * Compile the XSLT stylesheet.
+	 * The XsltExecutable is thread-safe, so it can be used to load multiple transformers which run in parallel.
+	 * The content is read directly by the compiler, so a template in a StringBuilder isn't copied into a String first.
+	 * @param processor The Saxon processor, created using createProcessor.
+	 * @param xsltTemplateContent The XSLT stylesheet content.
+	 * @return The XsltExecutable.
+	 * @throws GeneratorException
+	 */
+	public static XsltExecutable getXsltExecutable(Processor processor, CharSequence xsltTemplateContent) throws GeneratorException {
+		// Create a reader on the pre-processed template.
+		StreamSource xslSource = new StreamSource(new CharSequenceReader(xsltTemplateContent));
 		
-		// Create an ErrorListener for the TransformerFactory and Transformer, so warnings are logged using the local logger.
+		// Create the Xslt Compiler.
+		XsltCompiler xsltCompiler = processor.newXsltCompiler();
+		
+		// Compile the XSLT stylesheet.
+		try {
+			return xsltCompiler.compile(xslSource);
+		} catch (SaxonApiException e) {
+			throw new GeneratorException(String.format("Error while parsing XSLT template: %s", e.getMessage()));
+		}
+	}
+	
+	/**
+	 * Parse the model into a XdmNode.
+	 * The XdmNode is read-only, so it can be shared by multiple transformers which run in parallel.
+	 * @param processor The Saxon processor.
+	 * @param modelFileContent The model file content.
+	 * @return The document node of the model.
+	 * @throws GeneratorException
+	 */
+	public static XdmNode getModelDocumentNode(Processor processor, String modelFileContent) throws GeneratorException {
+		try {
+			StreamSource modelFileStreamSource = new StreamSource(new StringReader(modelFileContent));
+			return processor.newDocumentBuilder().build(modelFileStreamSource);
+		} catch (SaxonApiException e) {
+			throw new GeneratorException(String.format("Error while parsing model file content: %s", e.getMessage()));
+		}
+	}
+	
+	/**
+	 * Load a Xslt Transformer for the compiled stylesheet, with the model as initial context node.
+	 * @param xsltExecutable The compiled XSLT stylesheet.
+	 * @param modelDocumentNode The document node of the model.
+	 * @param outputFolderUri The output folder, used as base output URI.
+	 * @return The XsltTransformer.
+	 */
+	public static XsltTransformer getXsltTransformer(XsltExecutable xsltExecutable, XdmNode modelDocumentNode, URI outputFolderUri) {
+		// Create an ErrorListener for the Transformer, so warnings are logged using the local logger.
 		ErrorListener errorListener = new ErrorListener() {
 			@Override
 			public void warning(TransformerException exception) throws TransformerException {
@@ -265,35 +429,15 @@ public class XMLUtils {
 			}
 		};
 		
-		// Create a Saxon processor.
-		Processor processor = new Processor(false);
-		// Create the Xslt Compiler.
-		XsltCompiler xsltCompiler = processor.newXsltCompiler();
-		
-		// Compile the XSLT stylesheet.
-		XsltExecutable xsltExecutable;
-		try {
-			xsltExecutable = xsltCompiler.compile(xslSource);
-		} catch (SaxonApiException e) {
-			throw new GeneratorException(String.format("Error while parsing XSLT template: %s", e.getMessage()));
-		}
 		// Load the Xslt Transformer.
 		XsltTransformer xsltTransformer = xsltExecutable.load();
 		// Set the error listener on the XSLT transformer.
 		xsltTransformer.setErrorListener(errorListener);
-		// Create a XdmNode based on the model file content.
-		XdmNode modelDocumentNode;
-		try {
-			StreamSource modelFileStreamSource = new StreamSource(new StringReader(modelFileContent));
-			modelDocumentNode = processor.newDocumentBuilder().build(modelFileStreamSource);
-		} catch (SaxonApiException e) {
-			throw new GeneratorException(String.format("Error while parsing model file content: %s", e.getMessage()));
-		}
 		// Set the initial context node the the model XdmNode.
 		xsltTransformer.setInitialContextNode(modelDocumentNode);
 		// Set the serializer on the transformer, this can be an unconfigured serializer since the output uri's are absolute.
 		xsltTransformer.setBaseOutputURI(outputFolderUri.toString());
-		Serializer outputSerializer = processor.newSerializer();
+		Serializer outputSerializer = xsltExecutable.getProcessor().newSerializer();
 		xsltTransformer.setDestination(outputSerializer);
 		
 		// Return the xslt transformer.
@@ -321,24 +465,238 @@ public class XMLUtils {
 	
 	/**
 	 * Recursively resolve XIncludes in the XML string. 
+	 * The included files are taken from the include store, so each file is only read and scanned once per store.
+	 * Sibling includes are resolved concurrently.
 	 * @param xmlFileContents The XML file contents that might include XIncludes to resolve
 	 * @param xmlFileUri The file URI of the XML file.
 	 * @param level The depth of the current inclusion call.
 	 * @param resolvedIncludes A collection of previously resolved includes to detect a cycle of inclusions
+	 * @param includeStore The store to take the included files from.
 	 * @return The XML file contents with resolved includes 
 	 * @throws ConfigException
 	 */
-	public static String getXmlWithResolvedIncludes(String xmlFileContents, URI xmlFileUri, int level, HashMap<URI, Integer> resolvedIncludes, boolean namespaceAware) throws XmlException {
-		logger.fine(String.format("Scanning file %s for includes", xmlFileUri.toString()));
-		// Check for cycle detection, e.g. an include that is already included previously
-		if (resolvedIncludes.containsKey(xmlFileUri) && resolvedIncludes.get(xmlFileUri) != level) {
+	public static String getXmlWithResolvedIncludes(String xmlFileContents, URI xmlFileUri, int level, HashMap<URI, Integer> resolvedIncludes, boolean namespaceAware, XmlIncludeStore includeStore) throws XmlException {
+		return getResolvedXml(xmlFileContents, xmlFileUri, level, resolvedIncludes, namespaceAware, includeStore).getContent();
+	}
+	
+	/**
+	 * Recursively resolve XIncludes in the XML string, keeping the files included in it.
+	 * @param xmlFileContents The XML file contents that might include XIncludes to resolve
+	 * @param xmlFileUri The file URI of the XML file.
+	 * @param level The depth of the current inclusion call.
+	 * @param resolvedIncludes A collection of previously resolved includes to detect a cycle of inclusions
+	 * @param namespaceAware Whether to resolve namespace aware.
+	 * @param includeStore The store to take the included files from.
+	 * @return The ResolvedXml, with the XML file contents with resolved includes and the included files.
+	 * @throws XmlException
+	 */
+	public static ResolvedXml getResolvedXml(String xmlFileContents, URI xmlFileUri, int level, HashMap<URI, Integer> resolvedIncludes, boolean namespaceAware, XmlIncludeStore includeStore) throws XmlException {
+		checkIncludeCycle(xmlFileUri, level, resolvedIncludes);
+		return resolveIncludes(xmlFileContents, getIncludeElements(xmlFileContents, xmlFileUri, namespaceAware), xmlFileUri, level, resolvedIncludes, namespaceAware, includeStore);
+	}
+	
+	/**
+	 * Check for cycle detection, e.g. an include that is already included previously (on another level).
+	 * @param xmlFileUri The file URI of the XML file.
+	 * @param level The depth of the current inclusion.
+	 * @param resolvedIncludes A collection of previously resolved includes.
+	 * @throws XmlException
+	 */
+	static void checkIncludeCycle(URI xmlFileUri, int level, HashMap<URI, Integer> resolvedIncludes) throws XmlException {
+		Integer resolvedLevel = resolvedIncludes.putIfAbsent(xmlFileUri, level);
+		if (resolvedLevel != null && resolvedLevel != level) {
 			throw new XmlException(String.format("XML include cycle detected at level %d, file %s is already included previously", level, xmlFileUri.toString()));
 		}
-		else if (!resolvedIncludes.containsKey(xmlFileUri)) {
-			resolvedIncludes.put(xmlFileUri, level);						
+	}
+	
+	/**
+	 * Scan a XML document for include elements.
+	 * Depending on the passed namespaceAware parameter this looks for xi:include or include elements in all namespaces.
+	 * @param xmlFileContents The XML file contents.
+	 * @param xmlFileUri The file URI of the XML file.
+	 * @param namespaceAware Whether to scan namespace aware.
+	 * @return The include elements, in document order.
+	 * @throws XmlException
+	 */
+	public static List<IncludeElement> getIncludeElements(String xmlFileContents, URI xmlFileUri, boolean namespaceAware) throws XmlException {
+		logger.fine(String.format("Scanning file %s for includes", xmlFileUri.toString()));
+		try {
+			VTDDocument xmlDocument = VTDDocument.fromString(xmlFileContents, namespaceAware);
+			VTDNav nav = xmlDocument.getNav();
+			AutoPilot ap = new AutoPilot(nav);
+			// Depending on whether we wan't to resolve the includes namespace aware, we setup VTDNav and have an XPath with or without the namespace.
+			if (namespaceAware) {
+				// Declare the XInclude namespace.
+				ap.declareXPathNameSpace("xi", "http://www.w3.org/2001/XInclude");
+				// Search for all xi:include elements.
+				ap.selectXPath("//xi:include");
+			}
+			else {
+				// Search for all include elements.
+				ap.selectXPath("//include");
+			}
+			
+			ArrayList<IncludeElement> includeElements = new ArrayList<>();
+			AutoPilot ap_href = new AutoPilot(nav);
+			ap_href.selectXPath("@href");
+			AutoPilot ap_xpoint = new AutoPilot(nav);
+			ap_xpoint.selectXPath("@xpointer");
+			while ((ap.evalXPath()) != -1) {
+				long fragment = xmlDocument.getCharFragment(nav.getElementFragment());
+				includeElements.add(new IncludeElement((int) fragment, (int) (fragment >> 32), ap_href.evalXPathToString(), ap_xpoint.evalXPathToString()));
+			}
+			logger.fine(String.format("Found %d includes in file %s", includeElements.size(), xmlFileUri.toString()));
+			return includeElements;
+		} catch (NavException e) {
+			throw new XmlException(String.format("Error scanning %s for includes", xmlFileUri.toString()),e);
+		} catch (GeneratorException e) {
+			throw new XmlException(e.getMessage(), e);		
+		} catch (XPathParseException | XPathEvalException e) {
+			throw new XmlException(String.format("XPath error scanning for includes in %s", xmlFileUri.toString()), e);				
+		}
+	}
+	
+	/**
+	 * Resolve the include elements in a XML document, by replacing them with the (resolved) content of the included files.
+	 * @param xmlFileContents The XML file contents.
+	 * @param includeElements The include elements in the XML file contents.
+	 * @param xmlFileUri The file URI of the XML file.
+	 * @param level The depth of the XML file.
+	 * @param resolvedIncludes A collection of previously resolved includes to detect a cycle of inclusions
+	 * @param namespaceAware Whether to resolve namespace aware.
+	 * @param includeStore The store to take the included files from.
+	 * @return The resolved XML, with the files included in it.
+	 * @throws XmlException
+	 */
+	private static ResolvedXml resolveIncludes(String xmlFileContents, List<IncludeElement> includeElements, URI xmlFileUri, int level, HashMap<URI, Integer> resolvedIncludes, boolean namespaceAware, XmlIncludeStore includeStore) throws XmlException {
+		if (includeElements.isEmpty()) {
+			return new ResolvedXml(xmlFileContents, new ArrayList<>());
+		}
+		URI basePath = getBasePath(xmlFileUri);
+		
+		// Replace the include elements with the include contents, in document order so the cycle detection is the same on every run.
+		StringBuilder resolvedXml = new StringBuilder(xmlFileContents.length());
+		ArrayList<IncludedFile> includedFiles = new ArrayList<>();
+		int position = 0;
+		for (IncludeElement includeElement : includeElements) {
+			// Skip include elements within an include element, they are replaced together with the outer one.
+			if (includeElement.getOffset() < position)
+				continue;
+			IncludeContent includeContent = resolveInclude(includeElement, basePath, xmlFileUri, level, resolvedIncludes, namespaceAware, includeStore);
+			resolvedXml.append(xmlFileContents, position, includeElement.getOffset());
+			includeContent.appendTo(resolvedXml);
+			position = includeElement.getOffset() + includeElement.getLength();
+			includedFiles.addAll(includeContent.getIncludedFiles());
+		}
+		resolvedXml.append(xmlFileContents, position, xmlFileContents.length());
+		
+		String resolvedXGenConfig = resolvedXml.toString();
+		logger.fine(String.format("File %s with includes resolved:", xmlFileUri.toString()));
+		logger.fine("**** Begin of file ****");
+		logger.fine(resolvedXGenConfig);
+		logger.fine("**** End of file ****");
+		return new ResolvedXml(resolvedXGenConfig, includedFiles);
+	}
+	
+	/**
+	 * Resolve an include element into the content to replace it with.
+	 * @param includeElement The include element.
+	 * @param basePath The base path to resolve the href against.
+	 * @param xmlFileUri The file URI of the XML file containing the include.
+	 * @param level The depth of the XML file containing the include.
+	 * @param resolvedIncludes A collection of previously resolved includes to detect a cycle of inclusions
+	 * @param namespaceAware Whether to resolve namespace aware.
+	 * @param includeStore The store to take the included files from.
+	 * @return The include content, with the included files relative to the XML file containing the include.
+	 * @throws XmlException
+	 */
+	static IncludeContent resolveInclude(IncludeElement includeElement, URI basePath, URI xmlFileUri, int level, HashMap<URI, Integer> resolvedIncludes, boolean namespaceAware, XmlIncludeStore includeStore) throws XmlException {
+		URI includeFileUri = getIncludeFileUri(includeElement.getHref(), basePath, xmlFileUri);
+		IncludeFile includeFile = getIncludeFile(includeFileUri, level, resolvedIncludes, includeStore);
+		
+		// Get file contents, recursively processing any includes found.
+		// If the file is resolved before, the cycle detection is repeated for the files included in it.
+		ResolvedXml resolvedInclude = includeFile.getResolvedXml(namespaceAware);
+		if (resolvedInclude != null) {
+			for (IncludedFile includedFile : resolvedInclude.getIncludedFiles()) {
+				checkIncludeCycle(includedFile.getFileUri(), level + 1 + includedFile.getRelativeLevel(), resolvedIncludes);
+			}
+		} else {
+			resolvedInclude = resolveIncludes(includeFile.getContent(), includeFile.getIncludeElements(namespaceAware), includeFileUri, level + 1, resolvedIncludes, namespaceAware, includeStore);
+			// When the same file was resolved by another generation step in the meantime, continue with the one stored first so its parsed document is shared.
+			resolvedInclude = includeFile.setResolvedXml(namespaceAware, resolvedInclude);
+		}
+		// Check for xpointer and apply if found, on the parsed document which is kept with the resolved include.
+		// Otherwise the include is the whole resolved document, without the XML declaration if it contains one.
+		long[] fragmentRanges;
+		String xPoint = includeElement.getXpointer();
+		if (xPoint != null && xPoint.length() > 0) {
+			logger.fine(String.format("Found xpointer in include: %s", xPoint));
+			fragmentRanges = resolvedInclude.getFragmentRanges(xPoint);
+		} else {
+			String includeContents = resolvedInclude.getContent();
+			Matcher xmlDeclarationMatcher = XML_DECLARATION_PATTERN.matcher(includeContents);
+			int contentsOffset = xmlDeclarationMatcher.lookingAt() ? xmlDeclarationMatcher.end() : 0;
+			fragmentRanges = new long[] { ((long) (includeContents.length() - contentsOffset) << 32) | contentsOffset };
 		}
 		
-		// Get basePath of configFile. If the provided URI refers to a file, use its parent path, if it refers to a folder use it as base path
+		// The included files, relative to the XML file containing the include.
+		ArrayList<IncludedFile> includedFiles = new ArrayList<>();
+		includedFiles.add(new IncludedFile(includeFileUri, 1, includeFile.getLastModified()));
+		for (IncludedFile includedFile : resolvedInclude.getIncludedFiles()) {
+			includedFiles.add(new IncludedFile(includedFile.getFileUri(), includedFile.getRelativeLevel() + 1, includedFile.getLastModified()));
+		}
+		return new IncludeContent(resolvedInclude, fragmentRanges, includedFiles);
+	}
+	
+	/**
+	 * Resolve the href of an include element to the canonical URI of the included file.
+	 * @param includeFileLocation The href of the include element.
+	 * @param basePath The base path to resolve the href against.
+	 * @param xmlFileUri The file URI of the XML file containing the include.
+	 * @return The canonical URI of the included file.
+	 * @throws XmlException
+	 */
+	static URI getIncludeFileUri(String includeFileLocation, URI basePath, URI xmlFileUri) throws XmlException {
+		logger.fine(String.format("Found include for %s in file %s", includeFileLocation, xmlFileUri.toString()));
+		// Resolve include to a valid path against the basePath
+		logger.fine(String.format("base path %s", basePath.toString()));
+		Path p = Paths.get(basePath);
+		URI includeFileUri = null;
+		try {
+			includeFileUri = p.resolve(Paths.get(includeFileLocation)).toRealPath(LinkOption.NOFOLLOW_LINKS).toUri();
+		} catch (IOException e) {
+			throw new XmlException(String.format("Error resolving found include %s for %s to canonical path", includeFileLocation, xmlFileUri.toString()), e);
+		} 
+		logger.fine(String.format("Resolved include to %s", includeFileUri.toString()));
+		return includeFileUri;
+	}
+	
+	/**
+	 * Get an included file from the include store, after checking it doesn't cause an include cycle.
+	 * @param includeFileUri The canonical URI of the included file.
+	 * @param level The depth of the XML file containing the include.
+	 * @param resolvedIncludes A collection of previously resolved includes to detect a cycle of inclusions
+	 * @param includeStore The store to take the included file from.
+	 * @return The IncludeFile.
+	 * @throws XmlException
+	 */
+	static IncludeFile getIncludeFile(URI includeFileUri, int level, HashMap<URI, Integer> resolvedIncludes, XmlIncludeStore includeStore) throws XmlException {
+		checkIncludeCycle(includeFileUri, level + 1, resolvedIncludes);
+		try {
+			return includeStore.getIncludeFile(includeFileUri);
+		} catch (IOException e) {
+			throw new XmlException(String.format("Could not read contents of included file %s", includeFileUri.toString()), e);
+		}
+	}
+	
+	/**
+	 * Get basePath of a XML file. If the provided URI refers to a file, use its parent path, if it refers to a folder use it as base path
+	 * @param xmlFileUri The file URI of the XML file.
+	 * @return The base path, resolved to the real path.
+	 * @throws XmlException
+	 */
+	static URI getBasePath(URI xmlFileUri) throws XmlException {
 		try {
 			URI basePath  = new URI("file:///../");			
 			File xmlFile = new File(xmlFileUri.getPath());
@@ -353,98 +711,12 @@ public class XMLUtils {
 			}
 			// Resolve basePath to absolute/real path
 			try {
-				basePath = Paths.get(basePath).toRealPath(LinkOption.NOFOLLOW_LINKS).toUri();
+				return Paths.get(basePath).toRealPath(LinkOption.NOFOLLOW_LINKS).toUri();
 			} catch (IOException e) {
 				throw new XmlException(String.format("Error resolving basePath %s to canonical path", basePath.toString()), e);
 			} 
-			
-			// Open the config file and look for includes		
-			// Depending on the passed namespaceAware parameter make this XPath namespace aware.
-			// This setting influences whether to looks for xi:include or include elements in all namespaces.
-			VTDNav nav = XMLUtils.getVTDNav(xmlFileContents, namespaceAware);
-			AutoPilot ap = new AutoPilot(nav);
-			// Depending on whether we wan't to resolve the includes namespace aware, we setup VTDNav and have an XPath with or without the namespace.
-			if (namespaceAware) {
-				// Declare the XInclude namespace.
-				ap.declareXPathNameSpace("xi", "http://www.w3.org/2001/XInclude");
-				// Search for all xi:include elements.
-				ap.selectXPath("//xi:include");
-			}
-			else {
-				// Search for all include elements.
-				ap.selectXPath("//include");
-			}
-			
-			int includeCount = 0;		
-			try {
-				XMLModifier vm = new XMLModifier (nav);
-				while ((ap.evalXPath()) != -1) {
-					// Obtain the filename of include
-					AutoPilot ap_href = new AutoPilot(nav);
-					ap_href.selectXPath("@href");
-					String includeFileLocation = ap_href.evalXPathToString();
-					logger.fine(String.format("Found include for %s in file %s", includeFileLocation, xmlFileUri.toString()));
-					// Resolve include to a valid path against the basePath
-					logger.fine(String.format("base path %s", basePath.toString()));
-					Path p = Paths.get(basePath);
-					URI includeFileUri = null;
-					try {
-						includeFileUri = p.resolve(Paths.get(includeFileLocation)).toRealPath(LinkOption.NOFOLLOW_LINKS).toUri();
-					} catch (IOException e) {
-						throw new XmlException(String.format("Error resolving found include %s for %s to canonical path", includeFileLocation, xmlFileUri.toString()), e);
-					} 
-					logger.fine(String.format("Resolved include to %s", includeFileUri.toString()));
-					
-					try {
-						// get file contents, recursively processing any includes found
-						String includeContents = getXmlWithResolvedIncludes(FileUtils.getFileContent(includeFileUri), includeFileUri, level + 1, resolvedIncludes, namespaceAware);
-
-						// Check for xpointer and apply if found
-						AutoPilot ap_xpoint = new AutoPilot(nav);
-						ap_xpoint.selectXPath("@xpointer");
-						String xPoint = ap_xpoint.evalXPathToString();
-						if (xPoint != null && xPoint.length() > 0) {
-							logger.fine(String.format("Found xpointer in include: %s", xPoint));
-							includeContents = XMLUtils.getXmlFragment(includeContents, xPoint);
-						}
-						
-						// If the file contains an XML declaration, remove it			
-						if (includeContents.startsWith("<?xml")) {
-							includeContents = includeContents.replaceFirst("^<\\?xml.*\\?>", "");
-						}
-						
-						// Replace the node with the include contents
-						vm.insertAfterElement(includeContents);
-						// Then remove the include node
-						vm.remove();					
-					} catch (IOException e) {
-						throw new XmlException(String.format("Could not read contents of included file %s", includeFileUri.toString()), e);
-					}	
-					includeCount++;
-				}				
-				logger.fine(String.format("Found %d includes in file %s", includeCount, xmlFileUri.toString()));
-				//if includes were found, output and parse the modifier and return it, otherwise return the original one
-				if (includeCount > 0) {
-					String resolvedXGenConfig = XMLUtils.getResultingXml(vm);					
-					logger.fine(String.format("File %s with includes resolved:", xmlFileUri.toString()));
-					logger.fine("**** Begin of file ****");
-					logger.fine(resolvedXGenConfig);
-					logger.fine("**** End of file ****");					
-					return resolvedXGenConfig;
-				} else {
-					return xmlFileContents;
-				}
-			} catch (NavException e) {
-				throw new XmlException(String.format("Error scanning %s for includes", xmlFileUri.toString()),e);
-			} 	catch (ModifyException e  ) {
-				throw new XmlException(String.format("Error modifying file %s", xmlFileUri.toString()), e);
-			} 
 		} catch (URISyntaxException e) {
 			throw new XmlException(String.format("Could not extract base path from file %s", xmlFileUri.toString()), e);
-		} catch (GeneratorException e) {
-			throw new XmlException(e.getMessage(), e);		
-		} catch (XPathParseException | XPathEvalException e) {
-			throw new XmlException(String.format("XPath error scanning for includes in %s", xmlFileUri.toString()), e);				
 		}
 	}
 }
@@ -0,0 +1,398 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.commons.io.input.CharSequenceReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.NamespaceSupport;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import com.xbreeze.xgenerate.utils.XmlIncludeStore.IncludeContent;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore.IncludeElement;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore.IncludeFile;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore.IncludedFile;
+
+/**
+ * SAX filter which resolves the includes in a XML document while it's parsed, so the merged document is passed on as events instead of text.
+ * The includes are resolved the same as in XMLUtils.getXmlWithResolvedIncludes:
+ * - Depending on namespaceAware, xi:include elements or include elements are resolved.
+ * - The href is resolved relative to the including file and the included files are taken from the XmlIncludeStore.
+ * - The xpointer is applied on the included file with its includes resolved.
+ * - The content of an include element is ignored and include cycles are detected.
+ * Like with the textual replacement of the include elements, the included content uses the namespace declarations in scope at the include element.
+ * Therefore the documents are parsed without namespace processing and the namespace processing is done here.
+ *
+ * @author Harmen
+ */
+public class XmlIncludeFilter extends XMLFilterImpl {
+	// The logger for this class.
+	private static final Logger logger = Logger.getLogger(XmlIncludeFilter.class.getName());
+	
+	private static final String XINCLUDE_NAMESPACE = "http://www.w3.org/2001/XInclude";
+	private static final String NAMESPACES_FEATURE = "http://xml.org/sax/features/namespaces";
+	private static final String NAMESPACE_PREFIXES_FEATURE = "http://xml.org/sax/features/namespace-prefixes";
+	private static final String STRING_INTERNING_FEATURE = "http://xml.org/sax/features/string-interning";
+	
+	private URI _xmlFileUri;
+	private URI _basePath;
+	private int _level;
+	private HashMap<URI, Integer> _resolvedIncludes;
+	private boolean _namespaceAware;
+	
+	/**
+	 * The files included in the document (directly or nested), shared with the filters of the included documents.
+	 */
+	private List<IncludedFile> _includedFiles;
+	
+	/**
+	 * The namespace declarations in scope, shared with the filters of the included documents.
+	 */
+	private NamespaceSupport _namespaceSupport;
+	
+	/**
+	 * The store to take the included files from, shared with the filters of the included documents.
+	 */
+	private XmlIncludeStore _includeStore;
+	
+	/**
+	 * Whether this filter parses an included document, in which case the document events are not passed on.
+	 */
+	private boolean _included;
+	
+	/**
+	 * The locator of the document parsed by this filter.
+	 */
+	private Locator _locator;
+	
+	/**
+	 * The locator passed on to the content handler, shared with the filters of the included documents.
+	 * It points to the document being parsed, so errors in included content are reported with the included file.
+	 */
+	private IncludeLocator _includeLocator;
+	
+	/**
+	 * The depth within the include element being skipped, 0 when not within an include element.
+	 */
+	private int _skipDepth = 0;
+	
+	/**
+	 * Constructor.
+	 * @param xmlFileUri The file URI of the XML file, used to resolve relative includes.
+	 * @param namespaceAware Whether to resolve xi:include (true) or include (false) elements.
+	 * @param includeStore The store to take the included files from.
+	 * @throws XmlException
+	 */
+	public XmlIncludeFilter(URI xmlFileUri, boolean namespaceAware, XmlIncludeStore includeStore) throws XmlException {
+		this(xmlFileUri, 0, new HashMap<>(), new ArrayList<>(), namespaceAware, new NamespaceSupport(), includeStore, new IncludeLocator(), false);
+	}
+	
+	private XmlIncludeFilter(URI xmlFileUri, int level, HashMap<URI, Integer> resolvedIncludes, List<IncludedFile> includedFiles, boolean namespaceAware, NamespaceSupport namespaceSupport, XmlIncludeStore includeStore, IncludeLocator includeLocator, boolean included) throws XmlException {
+		super(newXmlReader());
+		this._xmlFileUri = xmlFileUri;
+		this._level = level;
+		this._resolvedIncludes = resolvedIncludes;
+		this._includedFiles = includedFiles;
+		this._namespaceAware = namespaceAware;
+		this._namespaceSupport = namespaceSupport;
+		this._includeStore = includeStore;
+		this._includeLocator = includeLocator;
+		this._included = included;
+	}
+	
+	/**
+	 * Get the files included in the parsed document, with their level relative to the document and modification time.
+	 * @return The included files.
+	 */
+	public List<IncludedFile> getIncludedFiles() {
+		return Collections.unmodifiableList(_includedFiles);
+	}
+	
+	/**
+	 * Create a XMLReader without namespace processing, which reports the namespace declarations as attributes.
+	 * @return The XMLReader.
+	 * @throws XmlException
+	 */
+	private static XMLReader newXmlReader() throws XmlException {
+		SAXParserFactory spf = SAXParserFactory.newInstance();
+		spf.setNamespaceAware(false);
+		try {
+			return spf.newSAXParser().getXMLReader();
+		} catch (ParserConfigurationException | SAXException e) {
+			throw new XmlException(String.format("Couldn't create the XML parser: %s", e.getMessage()), e);
+		}
+	}
+	
+	/**
+	 * The namespace processing is done by this filter, so the features are reported for the resulting events instead of set on the parser.
+	 * The names are not interned.
+	 */
+	@Override
+	public boolean getFeature(String name) throws SAXNotRecognizedException, SAXNotSupportedException {
+		if (NAMESPACES_FEATURE.equals(name))
+			return true;
+		else if (NAMESPACE_PREFIXES_FEATURE.equals(name) || STRING_INTERNING_FEATURE.equals(name))
+			return false;
+		return super.getFeature(name);
+	}
+	
+	@Override
+	public void setFeature(String name, boolean value) throws SAXNotRecognizedException, SAXNotSupportedException {
+		if (NAMESPACES_FEATURE.equals(name) || NAMESPACE_PREFIXES_FEATURE.equals(name) || STRING_INTERNING_FEATURE.equals(name)) {
+			if (value != getFeature(name))
+				throw new SAXNotSupportedException(String.format("The feature %s can't be changed on the include filter", name));
+		}
+		else
+			super.setFeature(name, value);
+	}
+	
+	@Override
+	public void setDocumentLocator(Locator locator) {
+		this._locator = locator;
+		this._includeLocator.setLocator(locator);
+		if (!this._included)
+			super.setDocumentLocator(this._includeLocator);
+	}
+	
+	@Override
+	public void startDocument() throws SAXException {
+		if (!this._included) {
+			try {
+				XMLUtils.checkIncludeCycle(this._xmlFileUri, this._level, this._resolvedIncludes);
+			} catch (XmlException e) {
+				throw new SAXException(e);
+			}
+			super.startDocument();
+		}
+	}
+	
+	@Override
+	public void endDocument() throws SAXException {
+		if (!this._included)
+			super.endDocument();
+	}
+	
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+		if (this._skipDepth > 0) {
+			this._skipDepth++;
+			return;
+		}
+		
+		// Declare the namespaces declared on the element.
+		this._namespaceSupport.pushContext();
+		ArrayList<Integer> attributeIndexes = new ArrayList<>();
+		for (int i = 0; i < atts.getLength(); i++) {
+			String attributeName = atts.getQName(i);
+			if (attributeName.equals("xmlns"))
+				this._namespaceSupport.declarePrefix("", atts.getValue(i));
+			else if (attributeName.startsWith("xmlns:"))
+				this._namespaceSupport.declarePrefix(attributeName.substring(6), atts.getValue(i));
+			else
+				attributeIndexes.add(i);
+		}
+		String[] elementName = processName(qName, false);
+		
+		// If the element is an include element, pass on the included content instead.
+		boolean isInclude = (this._namespaceAware) ? XINCLUDE_NAMESPACE.equals(elementName[0]) && elementName[1].equals("include") : qName.equals("include");
+		if (isInclude) {
+			// The namespaces declared on the include element don't apply to the included content.
+			this._namespaceSupport.popContext();
+			try {
+				include(atts.getValue("href"), atts.getValue("xpointer"));
+			} catch (XmlException e) {
+				throw new SAXException(e);
+			} catch (IOException e) {
+				throw new SAXException(String.format("Error while reading included content: %s", e.getMessage()), e);
+			}
+			this._skipDepth = 1;
+			return;
+		}
+		
+		// The prefixes are read through a wildcard type, since getDeclaredPrefixes returns a raw Enumeration on Java 8.
+		Enumeration<?> declaredPrefixes = this._namespaceSupport.getDeclaredPrefixes();
+		while (declaredPrefixes.hasMoreElements()) {
+			String prefix = (String) declaredPrefixes.nextElement();
+			super.startPrefixMapping(prefix, this._namespaceSupport.getURI(prefix));
+		}
+		AttributesImpl attributes = new AttributesImpl();
+		for (int i : attributeIndexes) {
+			String[] attributeName = processName(atts.getQName(i), true);
+			attributes.addAttribute(attributeName[0], attributeName[1], attributeName[2], atts.getType(i), atts.getValue(i));
+		}
+		super.startElement(elementName[0], elementName[1], elementName[2], attributes);
+	}
+	
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		if (this._skipDepth > 0) {
+			this._skipDepth--;
+			return;
+		}
+		String[] elementName = processName(qName, false);
+		super.endElement(elementName[0], elementName[1], elementName[2]);
+		Enumeration<?> declaredPrefixes = this._namespaceSupport.getDeclaredPrefixes();
+		while (declaredPrefixes.hasMoreElements()) {
+			super.endPrefixMapping((String) declaredPrefixes.nextElement());
+		}
+		this._namespaceSupport.popContext();
+	}
+	
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (this._skipDepth == 0)
+			super.characters(ch, start, length);
+	}
+	
+	@Override
+	public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+		if (this._skipDepth == 0)
+			super.ignorableWhitespace(ch, start, length);
+	}
+	
+	@Override
+	public void processingInstruction(String target, String data) throws SAXException {
+		if (this._skipDepth == 0)
+			super.processingInstruction(target, data);
+	}
+	
+	/**
+	 * Get the namespace URI, local name and qualified name of an element or attribute name, using the namespaces in scope.
+	 * @param qName The qualified name.
+	 * @param isAttribute Whether the name is an attribute name.
+	 * @return The namespace URI, local name and qualified name.
+	 * @throws SAXParseException If the prefix isn't declared.
+	 */
+	private String[] processName(String qName, boolean isAttribute) throws SAXParseException {
+		String[] name = this._namespaceSupport.processName(qName, new String[3], isAttribute);
+		if (name == null)
+			throw new SAXParseException(String.format("The prefix \"%s\" for %s \"%s\" is not bound.", qName.substring(0, qName.indexOf(':')), isAttribute ? "attribute" : "element", qName), this._locator);
+		return name;
+	}
+	
+	/**
+	 * Pass on the content of an included file.
+	 * Without xpointer the included file is parsed, resolving the includes in it while parsing.
+	 * With xpointer the fragments of the included file (with its includes resolved) are parsed.
+	 * @param href The href of the include element.
+	 * @param xpointer The xpointer of the include element.
+	 * @throws XmlException
+	 * @throws IOException
+	 * @throws SAXException
+	 */
+	private void include(String href, String xpointer) throws XmlException, IOException, SAXException {
+		if (this._basePath == null)
+			this._basePath = XMLUtils.getBasePath(this._xmlFileUri);
+		if (xpointer == null || xpointer.length() == 0) {
+			URI includeFileUri = XMLUtils.getIncludeFileUri(href, this._basePath, this._xmlFileUri);
+			IncludeFile includeFile = XMLUtils.getIncludeFile(includeFileUri, this._level, this._resolvedIncludes, this._includeStore);
+			this._includedFiles.add(new IncludedFile(includeFileUri, this._level + 1, includeFile.getLastModified()));
+			parseIncluded(includeFileUri, new StringReader(includeFile.getContent()));
+		} else {
+			logger.fine(String.format("Found xpointer in include: %s", xpointer));
+			IncludeContent includeContent = XMLUtils.resolveInclude(new IncludeElement(0, 0, href, xpointer), this._basePath, this._xmlFileUri, this._level, this._resolvedIncludes, this._namespaceAware, this._includeStore);
+			URI includeFileUri = includeContent.getIncludedFiles().get(0).getFileUri();
+			for (IncludedFile includedFile : includeContent.getIncludedFiles()) {
+				this._includedFiles.add(new IncludedFile(includedFile.getFileUri(), this._level + includedFile.getRelativeLevel(), includedFile.getLastModified()));
+			}
+			String resolvedIncludeContent = includeContent.getResolvedXml().getContent();
+			for (long fragmentRange : includeContent.getFragmentRanges()) {
+				int offset = (int) fragmentRange;
+				parseIncluded(includeFileUri, new CharSequenceReader(resolvedIncludeContent, offset, offset + (int) (fragmentRange >>> 32)));
+			}
+		}
+	}
+	
+	/**
+	 * Parse included content, passing on its events to the content handler of this filter.
+	 * @param includeFileUri The file URI of the included file.
+	 * @param includeContentReader The reader on the included content.
+	 * @throws XmlException
+	 * @throws IOException
+	 * @throws SAXException
+	 */
+	private void parseIncluded(URI includeFileUri, Reader includeContentReader) throws XmlException, IOException, SAXException {
+		XmlIncludeFilter includeFilter = new XmlIncludeFilter(includeFileUri, this._level + 1, this._resolvedIncludes, this._includedFiles, this._namespaceAware, this._namespaceSupport, this._includeStore, this._includeLocator, true);
+		includeFilter.setContentHandler(this.getContentHandler());
+		includeFilter.setErrorHandler(this.getErrorHandler());
+		InputSource includeInputSource = new InputSource(includeContentReader);
+		includeInputSource.setSystemId(includeFileUri.toString());
+		includeFilter.parse(includeInputSource);
+		// Continue locating in the including document.
+		this._includeLocator.setLocator(this._locator);
+	}
+	
+	/**
+	 * Locator which points to the location in the document being parsed, being the main document or an included document.
+	 */
+	private static class IncludeLocator implements Locator {
+		private Locator _locator;
+		
+		private void setLocator(Locator locator) {
+			this._locator = locator;
+		}
+		
+		@Override
+		public String getPublicId() {
+			return (_locator != null) ? _locator.getPublicId() : null;
+		}
+		
+		@Override
+		public String getSystemId() {
+			return (_locator != null) ? _locator.getSystemId() : null;
+		}
+		
+		@Override
+		public int getLineNumber() {
+			return (_locator != null) ? _locator.getLineNumber() : -1;
+		}
+		
+		@Override
+		public int getColumnNumber() {
+			return (_locator != null) ? _locator.getColumnNumber() : -1;
+		}
+	}
+}
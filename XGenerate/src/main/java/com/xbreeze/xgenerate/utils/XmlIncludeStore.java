@@ -0,0 +1,291 @@
+/*******************************************************************************
+ *   Copyright (c) 2021 CrossBreeze
+ *
+ *   This file is part of CrossGenerate.
+ *
+ *      CrossGenerate is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      CrossGenerate is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with CrossGenerate.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *  Contributors:
+ *      Willem Otten - CrossBreeze
+ *      Harmen Wessels - CrossBreeze
+ *      Jacob Siemaszko - CrossBreeze
+ *
+ *******************************************************************************/
+package com.xbreeze.xgenerate.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import com.xbreeze.xgenerate.generator.GeneratorException;
+
+/**
+ * The store of included XML files, shared by the include resolutions of a generator (see Generator).
+ * Files which are included from many models and configs are only read and scanned for includes once.
+ * The files are stored by canonical URI and are read again when the modification time changes.
+ * The store is only kept as long as the generator using it, so the included files aren't kept in memory after the generation run.
+ *
+ * @author Harmen
+ */
+public class XmlIncludeStore {
+	// The logger for this class.
+	private static final Logger logger = Logger.getLogger(XmlIncludeStore.class.getName());
+
+	/**
+	 * The included files by canonical URI.
+	 */
+	private final ConcurrentHashMap<URI, IncludeFile> _includeFiles = new ConcurrentHashMap<>();
+
+	/**
+	 * Get the included file from the store, reading it when it's not in the store yet or when it's modified.
+	 * @param includeFileUri The canonical URI of the included file.
+	 * @return The IncludeFile.
+	 * @throws IOException
+	 */
+	public IncludeFile getIncludeFile(URI includeFileUri) throws IOException {
+		long lastModified = new File(includeFileUri).lastModified();
+		IncludeFile includeFile = _includeFiles.get(includeFileUri);
+		if (includeFile == null || includeFile.getLastModified() != lastModified) {
+			logger.fine(String.format("Reading included file %s into the include store", includeFileUri.toString()));
+			includeFile = new IncludeFile(includeFileUri, lastModified, FileUtils.getFileContent(includeFileUri));
+			_includeFiles.put(includeFileUri, includeFile);
+		}
+		return includeFile;
+	}
+
+	/**
+	 * An included file with its content, the include elements found in it and its content with all includes resolved.
+	 */
+	public static class IncludeFile {
+		private URI _fileUri;
+		private long _lastModified;
+		private String _content;
+		// The include elements and resolved content, by namespace awareness.
+		private HashMap<Boolean, List<IncludeElement>> _includeElements = new HashMap<>();
+		private HashMap<Boolean, ResolvedXml> _resolvedXml = new HashMap<>();
+
+		private IncludeFile(URI fileUri, long lastModified, String content) {
+			this._fileUri = fileUri;
+			this._lastModified = lastModified;
+			this._content = content;
+		}
+
+		public URI getFileUri() {
+			return _fileUri;
+		}
+
+		public long getLastModified() {
+			return _lastModified;
+		}
+
+		public String getContent() {
+			return _content;
+		}
+
+		/**
+		 * Get the include elements in the file, the file is only scanned the first time.
+		 * @param namespaceAware Whether to scan for xi:include (true) or include (false) elements.
+		 * @return The include elements.
+		 * @throws XmlException
+		 */
+		public synchronized List<IncludeElement> getIncludeElements(boolean namespaceAware) throws XmlException {
+			List<IncludeElement> includeElements = this._includeElements.get(namespaceAware);
+			if (includeElements == null) {
+				includeElements = XMLUtils.getIncludeElements(this._content, this._fileUri, namespaceAware);
+				this._includeElements.put(namespaceAware, includeElements);
+			}
+			return includeElements;
+		}
+
+		/**
+		 * Get the content with all includes resolved, if it was resolved before and none of the included files are modified since.
+		 * @param namespaceAware Whether the includes are resolved namespace aware.
+		 * @return The ResolvedXml, or null if it needs to be resolved.
+		 */
+		public synchronized ResolvedXml getResolvedXml(boolean namespaceAware) {
+			ResolvedXml resolvedXml = this._resolvedXml.get(namespaceAware);
+			return (resolvedXml != null && resolvedXml.isUpToDate()) ? resolvedXml : null;
+		}
+
+		/**
+		 * Store the content with all includes resolved, unless an up to date one is stored already.
+		 * @param namespaceAware Whether the includes are resolved namespace aware.
+		 * @param resolvedXml The ResolvedXml.
+		 * @return The stored ResolvedXml.
+		 */
+		public synchronized ResolvedXml setResolvedXml(boolean namespaceAware, ResolvedXml resolvedXml) {
+			ResolvedXml storedResolvedXml = getResolvedXml(namespaceAware);
+			if (storedResolvedXml != null)
+				return storedResolvedXml;
+			this._resolvedXml.put(namespaceAware, resolvedXml);
+			return resolvedXml;
+		}
+	}
+
+	/**
+	 * An include element found in a XML document, with its position in the document.
+	 */
+	public static class IncludeElement {
+		private int _offset;
+		private int _length;
+		private String _href;
+		private String _xpointer;
+
+		public IncludeElement(int offset, int length, String href, String xpointer) {
+			this._offset = offset;
+			this._length = length;
+			this._href = href;
+			this._xpointer = xpointer;
+		}
+
+		public int getOffset() {
+			return _offset;
+		}
+
+		public int getLength() {
+			return _length;
+		}
+
+		public String getHref() {
+			return _href;
+		}
+
+		public String getXpointer() {
+			return _xpointer;
+		}
+	}
+
+	/**
+	 * A XML document with all includes resolved, with the files included in it (directly or nested).
+	 * The included files are needed to repeat the include cycle detection when the resolved content is reused.
+	 * The document is parsed once when a xpointer is applied on it, the fragment ranges are kept by xpointer.
+	 */
+	public static class ResolvedXml {
+		private String _content;
+		private List<IncludedFile> _includedFiles;
+		private VTDDocument _document;
+		private HashMap<String, long[]> _fragmentRanges = new HashMap<>();
+
+		public ResolvedXml(String content, List<IncludedFile> includedFiles) {
+			this._content = content;
+			this._includedFiles = Collections.unmodifiableList(includedFiles);
+		}
+
+		public String getContent() {
+			return _content;
+		}
+
+		public List<IncludedFile> getIncludedFiles() {
+			return _includedFiles;
+		}
+
+		/**
+		 * Get the ranges of the fragments in the content selected by a xpointer.
+		 * The VTDNav of the document is stateful, so the xpointers are applied one at a time.
+		 * @param xPointer The xpointer.
+		 * @return The fragment ranges, as returned by XMLUtils.getXmlFragmentRanges.
+		 * @throws XmlException
+		 */
+		public synchronized long[] getFragmentRanges(String xPointer) throws XmlException {
+			long[] fragmentRanges = this._fragmentRanges.get(xPointer);
+			if (fragmentRanges == null) {
+				if (this._document == null) {
+					try {
+						this._document = VTDDocument.fromString(this._content, false);
+					} catch (GeneratorException e) {
+						throw new XmlException(String.format("Error parsing %s as XML", this._content), e);
+					}
+				}
+				fragmentRanges = XMLUtils.getXmlFragmentRanges(this._document, xPointer);
+				this._fragmentRanges.put(xPointer, fragmentRanges);
+			}
+			return fragmentRanges;
+		}
+
+		/**
+		 * @return Whether none of the included files are modified since the content was resolved.
+		 */
+		private boolean isUpToDate() {
+			return this._includedFiles.stream().allMatch(includedFile -> new File(includedFile.getFileUri()).lastModified() == includedFile.getLastModified());
+		}
+	}
+
+	/**
+	 * The content to replace an include element with, being fragments of a resolved XML document.
+	 * The fragments are appended directly from the resolved document, without copying them into a String first.
+	 */
+	public static class IncludeContent {
+		private ResolvedXml _resolvedXml;
+		private long[] _fragmentRanges;
+		private List<IncludedFile> _includedFiles;
+
+		public IncludeContent(ResolvedXml resolvedXml, long[] fragmentRanges, List<IncludedFile> includedFiles) {
+			this._resolvedXml = resolvedXml;
+			this._fragmentRanges = fragmentRanges;
+			this._includedFiles = Collections.unmodifiableList(includedFiles);
+		}
+
+		/**
+		 * Append the include content to the XML document in which the include is resolved.
+		 * @param sb The StringBuilder containing the XML document.
+		 */
+		public void appendTo(StringBuilder sb) {
+			XMLUtils.appendXmlFragments(sb, this._resolvedXml.getContent(), this._fragmentRanges);
+		}
+
+		public ResolvedXml getResolvedXml() {
+			return _resolvedXml;
+		}
+
+		public long[] getFragmentRanges() {
+			return _fragmentRanges;
+		}
+
+		public List<IncludedFile> getIncludedFiles() {
+			return _includedFiles;
+		}
+	}
+
+	/**
+	 * A file included in a resolved XML document, with its level relative to the document (1 for a direct include).
+	 */
+	public static class IncludedFile {
+		private URI _fileUri;
+		private int _relativeLevel;
+		private long _lastModified;
+
+		public IncludedFile(URI fileUri, int relativeLevel, long lastModified) {
+			this._fileUri = fileUri;
+			this._relativeLevel = relativeLevel;
+			this._lastModified = lastModified;
+		}
+
+		public URI getFileUri() {
+			return _fileUri;
+		}
+
+		public int getRelativeLevel() {
+			return _relativeLevel;
+		}
+
+		public long getLastModified() {
+			return _lastModified;
+		}
+	}
+}
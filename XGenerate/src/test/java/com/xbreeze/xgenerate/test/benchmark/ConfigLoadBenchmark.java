@@ -0,0 +1,65 @@
+package com.xbreeze.xgenerate.test.benchmark;
+
+import java.io.File;
+import java.net.URI;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.SchemaFactory;
+
+import com.xbreeze.xgenerate.config.XGenConfig;
+
+import jakarta.xml.bind.JAXBContext;
+
+/**
+ * Benchmark for the time it takes to load a config.
+ * Before the schema and JAXB context were shared, each config load also compiled the schema and created the JAXB context.
+ * So the load time before is the load time now plus the time to compile the schema and create the JAXB context, which are measured separately.
+ * 
+ * Run from the XGenerate folder (after mvn test-compile) using:
+ * java -cp target/classes:target/test-classes:<dependencies> com.xbreeze.xgenerate.test.benchmark.ConfigLoadBenchmark [config file] [iterations]
+ *
+ * @author Harmen
+ */
+public class ConfigLoadBenchmark {
+	
+	private static final String DEFAULT_CONFIG_FILE = "src/test/resources/feature-support-files/integration/PowerCenter/Simple_staging/config-files/ExamplePowerCenterConfig.xml";
+	
+	public static void main(String[] args) throws Exception {
+		URI configFileUri = new File((args.length > 0) ? args[0] : DEFAULT_CONFIG_FILE).getCanonicalFile().toURI();
+		int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+		// Don't measure the logging.
+		Logger.getLogger("").setLevel(Level.OFF);
+		
+		// The first load compiles the schema and creates the JAXB context.
+		long start = System.nanoTime();
+		XGenConfig.fromFile(configFileUri);
+		double firstLoadTime = (System.nanoTime() - start) / 1e6;
+		
+		// Warm up and measure the loads with the shared schema and JAXB context.
+		for (int i = 0; i < iterations; i++) {
+			XGenConfig.fromFile(configFileUri);
+		}
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			XGenConfig.fromFile(configFileUri);
+		}
+		double loadTime = (System.nanoTime() - start) / 1e6 / iterations;
+		
+		// Measure the schema compilation and JAXB context creation, which were done for each load before.
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(new StreamSource(XGenConfig.class.getResourceAsStream("XGenConfig.xsd")));
+			JAXBContext.newInstance(XGenConfig.class);
+		}
+		double schemaAndContextTime = (System.nanoTime() - start) / 1e6 / iterations;
+		
+		System.out.println(String.format("Config file: %s (%d iterations)", configFileUri, iterations));
+		System.out.println(String.format("First load:                          %8.3f ms", firstLoadTime));
+		System.out.println(String.format("Load with shared schema and context: %8.3f ms", loadTime));
+		System.out.println(String.format("Schema compile and context creation: %8.3f ms", schemaAndContextTime));
+		System.out.println(String.format("Load as before (per load):           %8.3f ms", loadTime + schemaAndContextTime));
+	}
+}
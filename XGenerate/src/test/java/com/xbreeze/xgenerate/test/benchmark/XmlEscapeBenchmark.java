@@ -0,0 +1,115 @@
+package com.xbreeze.xgenerate.test.benchmark;
+
+import java.io.StringWriter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.xbreeze.xgenerate.utils.XMLUtils;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.Serializer;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XsltExecutable;
+import net.sf.saxon.s9api.XsltTransformer;
+
+/**
+ * Benchmark for the XML escaping of placeholder values in XML templates.
+ * Before the escape-xml extension function was used, each placeholder value was escaped using 4 nested replace() calls.
+ * The benchmark transforms a model with an SSIS sized stylesheet (a data flow with many columns, each having several placeholders), once using the replace chain and once using the extension function.
+ *
+ * Run from the XGenerate folder (after mvn test-compile) using:
+ * java -cp target/classes:target/test-classes:<dependencies> com.xbreeze.xgenerate.test.benchmark.XmlEscapeBenchmark [columns] [iterations]
+ *
+ * @author Harmen
+ */
+public class XmlEscapeBenchmark {
+
+	private static final String REPLACE_CHAIN_FORMAT = "replace(replace(replace(replace(%s,'&amp;','&amp;amp;'), '&lt;','&amp;lt;'),'&gt;','&amp;gt;'),'&quot;','&amp;quot;')";
+	private static final String ESCAPE_XML_FORMAT = "xgen:escape-xml(%s)";
+
+	// The attributes of a column which are used as placeholders, in an SSIS data flow a column is referenced in many places.
+	private static final String[] COLUMN_ATTRIBUTES = { "name", "description", "expression", "name", "dataType", "name", "description", "expression" };
+
+	public static void main(String[] args) throws Exception {
+		int columns = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+		int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+		// Don't measure the logging.
+		Logger.getLogger("").setLevel(Level.OFF);
+
+		Processor processor = XMLUtils.createProcessor();
+		XdmNode modelDocumentNode = XMLUtils.getModelDocumentNode(processor, getModel(columns));
+		XsltExecutable replaceChainExecutable = XMLUtils.getXsltExecutable(processor, getStylesheet(REPLACE_CHAIN_FORMAT));
+		XsltExecutable escapeXmlExecutable = XMLUtils.getXsltExecutable(processor, getStylesheet(ESCAPE_XML_FORMAT));
+
+		// Check both stylesheets give the same output.
+		String replaceChainOutput = transform(processor, replaceChainExecutable, modelDocumentNode);
+		String escapeXmlOutput = transform(processor, escapeXmlExecutable, modelDocumentNode);
+		if (!replaceChainOutput.equals(escapeXmlOutput))
+			throw new IllegalStateException("The output of the replace chain and the escape-xml function differ.");
+
+		// Warm up both stylesheets.
+		for (int i = 0; i < iterations; i++) {
+			transform(processor, replaceChainExecutable, modelDocumentNode);
+			transform(processor, escapeXmlExecutable, modelDocumentNode);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			transform(processor, replaceChainExecutable, modelDocumentNode);
+		}
+		double replaceChainTime = (System.nanoTime() - start) / 1e6 / iterations;
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			transform(processor, escapeXmlExecutable, modelDocumentNode);
+		}
+		double escapeXmlTime = (System.nanoTime() - start) / 1e6 / iterations;
+
+		System.out.println(String.format("Columns: %d, placeholders: %d, output: %d chars (%d iterations)", columns, columns * COLUMN_ATTRIBUTES.length, escapeXmlOutput.length(), iterations));
+		System.out.println(String.format("Transform using replace chain:    %8.3f ms", replaceChainTime));
+		System.out.println(String.format("Transform using escape-xml:       %8.3f ms", escapeXmlTime));
+	}
+
+	/**
+	 * Get a model with columns of which the attributes contain characters which need to be escaped.
+	 */
+	private static String getModel(int columns) {
+		StringBuilder model = new StringBuilder("<modeldefinition><table name=\"Sales &amp; Orders\">");
+		for (int i = 0; i < columns; i++) {
+			model.append(String.format("<column name=\"Column_%d\" dataType=\"wstr\" description=\"Column %d of &quot;Sales &amp; Orders&quot;\" expression=\"Amount_%d &lt; 100 &amp;&amp; Amount_%d &gt; 0\" />", i, i, i, i));
+		}
+		return model.append("</table></modeldefinition>").toString();
+	}
+
+	/**
+	 * Get a stylesheet like the pre-processed SSIS template, with the placeholders escaped using the specified format.
+	 */
+	private static String getStylesheet(String escapeFormat) {
+		StringBuilder stylesheet = new StringBuilder();
+		stylesheet.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		stylesheet.append("<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"3.0\"\n");
+		stylesheet.append("xmlns:xgen=\"http://www.x-breeze.com/xgenerate/functions\" exclude-result-prefixes=\"xgen\">\n");
+		stylesheet.append("<xsl:output method=\"text\" />\n");
+		stylesheet.append("<xsl:template match=\"/\"><xsl:for-each select=\"/modeldefinition/table\">\n");
+		stylesheet.append("<xsl:text>&lt;DTS:Executable DTS:ObjectName=\"</xsl:text><xsl:value-of select=\"").append(String.format(escapeFormat, "./@name")).append("\" /><xsl:text>\"&gt;&#10;</xsl:text>\n");
+		stylesheet.append("<xsl:for-each select=\"./column\">\n");
+		for (String attribute : COLUMN_ATTRIBUTES) {
+			stylesheet.append("<xsl:text>  &lt;outputColumn ").append(attribute).append("=\"</xsl:text><xsl:value-of select=\"").append(String.format(escapeFormat, "./@" + attribute)).append("\" /><xsl:text>\" /&gt;&#10;</xsl:text>\n");
+		}
+		stylesheet.append("</xsl:for-each>\n");
+		stylesheet.append("<xsl:text>&lt;/DTS:Executable&gt;&#10;</xsl:text>\n");
+		stylesheet.append("</xsl:for-each></xsl:template>\n");
+		stylesheet.append("</xsl:stylesheet>\n");
+		return stylesheet.toString();
+	}
+
+	private static String transform(Processor processor, XsltExecutable xsltExecutable, XdmNode modelDocumentNode) throws Exception {
+		StringWriter output = new StringWriter();
+		Serializer serializer = processor.newSerializer(output);
+		XsltTransformer xsltTransformer = xsltExecutable.load();
+		xsltTransformer.setInitialContextNode(modelDocumentNode);
+		xsltTransformer.setDestination(serializer);
+		xsltTransformer.transform();
+		return output.toString();
+	}
+}
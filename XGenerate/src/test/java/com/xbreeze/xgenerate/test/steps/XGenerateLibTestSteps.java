@@ -1,6 +1,7 @@
 package com.xbreeze.xgenerate.test.steps;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -11,8 +12,18 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Filter;
 import java.util.logging.Level;
@@ -20,6 +31,7 @@ import java.util.logging.LogManager;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BOMInputStream;
 import org.apache.http.client.utils.URIBuilder;
@@ -32,9 +44,12 @@ import com.xbreeze.xgenerate.generator.GenerationResult.GenerationStatus;
 import com.xbreeze.xgenerate.generator.Generator;
 import com.xbreeze.xgenerate.generator.GeneratorException;
 import com.xbreeze.xgenerate.model.Model;
+import com.xbreeze.xgenerate.model.ModelCache;
 import com.xbreeze.xgenerate.model.ModelException;
 import com.xbreeze.xgenerate.template.RawTemplate;
+import com.xbreeze.xgenerate.template.XsltTemplateCache;
 import com.xbreeze.xgenerate.test.util.CapturedConsolePrintStream;
+import com.xbreeze.xgenerate.utils.XmlIncludeStore;
 
 import io.cucumber.java.After;
 import io.cucumber.java.Before;
@@ -45,7 +60,7 @@ import io.cucumber.java.en.Then;
 import io.cucumber.java.en.When;
 
 public class XGenerateLibTestSteps {
-	private final URI _outputFolderUri = URI.create("file:///C:/CrossGenerate/Output/");
+	private URI _outputFolderUri = URI.create("file:///C:/CrossGenerate/Output/");
 	// Location of the feature support files.
 	private URI _featureSupportFilesLocation;
 	
@@ -58,6 +73,16 @@ public class XGenerateLibTestSteps {
 	URI _templateFileUri;
 	URI _configFileUri;
 	Exception generatorException;
+	// The configs and exceptions of the config loads in parallel, when used in the scenario.
+	private List<XGenConfig> _loadedConfigs;
+	private List<Exception> _loadExceptions;
+	// The folders of the template and model cache, when used in the scenario.
+	private Path _templateCacheFolder;
+	private Path _modelCacheFolder;
+	// The folder of the files written in the scenario, when used in the scenario.
+	private Path _workingFolder;
+	// The output folder for the files written by the generator in debug mode.
+	private Path _debugOutputFolder;
 	private ByteArrayOutputStream baos;
 	private PrintStream stdOut;
 	private PrintStream stdErr;
@@ -137,6 +162,9 @@ public class XGenerateLibTestSteps {
 		if (scenario.getSourceTagNames().contains("@Debug")) {
 			logger.info("Enabling debug mode");
 			this._generator.setDebugMode(true);
+			// In debug mode the generator writes the pre-processed files to the output folder, so use a temporary one.
+			this._debugOutputFolder = Files.createTempDirectory("xgenerate-output-folder");
+			this._outputFolderUri = this._debugOutputFolder.toUri();
 		}
 	}
 	
@@ -146,6 +174,18 @@ public class XGenerateLibTestSteps {
 		System.setOut(stdOut);
 		System.setErr(stdErr);
 	}
+	
+	@After
+	public void removeCacheFolders() throws IOException {
+		if (this._templateCacheFolder != null)
+			FileUtils.deleteDirectory(this._templateCacheFolder.toFile());
+		if (this._modelCacheFolder != null)
+			FileUtils.deleteDirectory(this._modelCacheFolder.toFile());
+		if (this._workingFolder != null)
+			FileUtils.deleteDirectory(this._workingFolder.toFile());
+		if (this._debugOutputFolder != null)
+			FileUtils.deleteDirectory(this._debugOutputFolder.toFile());
+	}
 
 	@Given("^I have the following model:$")
 	public void iHaveTheFollowingModel(String modelContent) throws Throwable {
@@ -191,6 +231,30 @@ public class XGenerateLibTestSteps {
 		this._configFileUri = resolveSupportFile(configFileLocation);
 	}	
 
+	@Given("^a file named \"(.*)\" with content:$")
+	public void aFileNamedWithContent(String fileName, String fileContent) throws Throwable {
+		if (this._workingFolder == null)
+			this._workingFolder = Files.createTempDirectory("xgenerate-working-folder");
+		Path filePath = this._workingFolder.resolve(fileName);
+		long previousLastModified = Files.exists(filePath) ? Files.getLastModifiedTime(filePath).toMillis() : 0;
+		Files.write(filePath, fileContent.getBytes(StandardCharsets.UTF_8));
+		// Make sure a changed file gets another modification time, also on file systems with a coarse timestamp resolution.
+		if (Files.getLastModifiedTime(filePath).toMillis() <= previousLastModified + 1000)
+			Files.setLastModifiedTime(filePath, FileTime.fromMillis(previousLastModified + 2000));
+	}
+
+	@And("^a template cache$")
+	public void aTemplateCache() throws Throwable {
+		this._templateCacheFolder = Files.createTempDirectory("xgenerate-template-cache");
+		this._generator.setTemplateCache(new XsltTemplateCache(this._templateCacheFolder, Long.MAX_VALUE));
+	}
+	
+	@And("^a model cache$")
+	public void aModelCache() throws Throwable {
+		this._modelCacheFolder = Files.createTempDirectory("xgenerate-model-cache");
+		this._generator.setModelCache(new ModelCache(this._modelCacheFolder, Long.MAX_VALUE));
+	}
+	
 	@When("^I run the generator$")
 	public void iRunTheGenerator() throws Throwable {	
 		checkForError();
@@ -217,6 +281,61 @@ public class XGenerateLibTestSteps {
 		}
 	}
 
+	@When("^I run the generator again$")
+	public void iRunTheGeneratorAgain() throws Throwable {
+		this._generationResults = null;
+		iRunTheGenerator();
+	}
+
+	@When("^I load the config file (\\d+) times in parallel$")
+	public void iLoadTheConfigFileTimesInParallel(int nrOfLoads) throws Throwable {
+		this._loadedConfigs = new ArrayList<>();
+		this._loadExceptions = new ArrayList<>();
+		// The loads share an include store, like the generation steps of a generator.
+		XmlIncludeStore includeStore = new XmlIncludeStore();
+		// Start all loads at the same time, so they use the shared schema and JAXB context concurrently.
+		CountDownLatch startSignal = new CountDownLatch(1);
+		ExecutorService executorService = Executors.newFixedThreadPool(nrOfLoads);
+		try {
+			List<Future<XGenConfig>> loads = new ArrayList<>();
+			for (int i = 0; i < nrOfLoads; i++) {
+				loads.add(executorService.submit(() -> {
+					startSignal.await();
+					return XGenConfig.fromFile(this._configFileUri, includeStore);
+				}));
+			}
+			startSignal.countDown();
+			for (Future<XGenConfig> load : loads) {
+				try {
+					this._loadedConfigs.add(load.get());
+				} catch (ExecutionException e) {
+					this._loadExceptions.add((Exception) e.getCause());
+				}
+			}
+		} finally {
+			executorService.shutdown();
+		}
+	}
+	
+	@Then("^I expect (\\d+) loaded configs with root section name \"(.*)\" bound to model XPath \"(.*)\"$")
+	public void iExpectLoadedConfigsWithRootSectionNameBoundToModelXPath(int expectedNrOfConfigs, String rootSectionName, String modelXPath) throws Throwable {
+		if (!this._loadExceptions.isEmpty())
+			throw this._loadExceptions.get(0);
+		assertEquals(expectedNrOfConfigs, this._loadedConfigs.size(), "The expected number of loaded configs is different");
+		for (XGenConfig loadedConfig : this._loadedConfigs) {
+			assertEquals(rootSectionName, loadedConfig.getTemplateConfig().getRootSectionName(), "The root section name of a loaded config is different");
+			assertEquals(modelXPath, loadedConfig.getBindingConfig().getSectionModelBindingConfigs(rootSectionName)[0].getModelXPath(), "The model XPath of a loaded config is different");
+		}
+	}
+	
+	@Then("^I expect the following error message for each of the (\\d+) loads:$")
+	public void iExpectTheFollowingErrorMessageForEachLoad(int expectedNrOfLoads, String errorMessage) throws Throwable {
+		assertEquals(expectedNrOfLoads, this._loadExceptions.size(), "The expected number of failed loads is different");
+		for (Exception loadException : this._loadExceptions) {
+			assertEquals(errorMessage.replace("{{support-file-location}}", this._featureSupportFilesLocation.toURL().toString().replace("file:/", "file:///")), loadException.getMessage());
+		}
+	}
+
 	@Then("^I expect (\\d+) generation results?$")
 	public void iExpectGenerationResults(int expectedNrOfResults) throws Throwable {
 		checkForError();
@@ -232,6 +351,9 @@ public class XGenerateLibTestSteps {
 	@Then("^I expect the following error message:$")
 	public void iExpectTheFollowingErrorMessage(String errorMessage) throws Throwable {
 		assertNotNull(this.generatorException, "There is no exception thrown");
+		// Replace the location of the working folder, when files are written in the scenario.
+		if (this._workingFolder != null)
+			errorMessage = errorMessage.replace("{{working-folder-location}}", this._workingFolder.toUri().toString().replaceFirst("/$", ""));
 		assertEquals(errorMessage.replace("{{support-file-location}}", this._featureSupportFilesLocation.toURL().toString().replace("file:/", "file:///")), this.generatorException.getMessage());
 	}
 	
@@ -241,6 +363,12 @@ public class XGenerateLibTestSteps {
 		assertTrue(logOutput.contains(logMessage), String.format("Log entry containing %s is not found", logMessage));
 	}
 	
+	@Then("^I don't expect the following console message:$")
+	public void iDontExpectTheFollowingLogMessage(String logMessage) throws Throwable {
+		String logOutput = this.baos.toString();
+		assertFalse(logOutput.contains(logMessage), String.format("Log entry containing %s is found", logMessage));
+	}
+	
 	@Then("^an output named \"(.*)\" with contents equal to file: \"(.*)\"$")
 	public void anOutputNamed(String outputName, String expectedOutputFileUri) throws Throwable {
 		checkForError();
@@ -251,6 +379,16 @@ public class XGenerateLibTestSteps {
 		this.compareActualAndExpectedOutput(outputName, expectedResultContent);
 	}
 	
+	@Then("^a file named \"(.*)\" in the output folder with contents equal to file: \"(.*)\"$")
+	public void aFileNamedInTheOutputFolder(String outputFileName, String expectedOutputFileUri) throws Throwable {
+		checkForError();
+		Path outputFilePath = Paths.get(this._outputFolderUri).resolve(outputFileName);
+		assertTrue(Files.exists(outputFilePath), String.format("The file %s is not written to the output folder", outputFileName));
+		String expectedFileContent = new String(Files.readAllBytes(Paths.get(resolveSupportFile(expectedOutputFileUri))), StandardCharsets.UTF_8);
+		String actualFileContent = new String(Files.readAllBytes(outputFilePath), StandardCharsets.UTF_8);
+		assertEquals(expectedFileContent, actualFileContent, "The expected and actual file content is different");
+	}
+	
 	@Then("^an output named \"(.*)\" with content:$")
 	public void andAnOutputNamedWithContents(String outputName, String expectedResultContent) throws Throwable {
 		checkForError();
@@ -279,6 +417,9 @@ public class XGenerateLibTestSteps {
 	}
 	
 	private URI resolveSupportFile(String relativeFileLocation) {
+		// Files written in the scenario are taken from the working folder.
+		if (this._workingFolder != null && Files.exists(this._workingFolder.resolve(relativeFileLocation)))
+			return this._workingFolder.resolve(relativeFileLocation).toUri();
 		return Path.of(this._featureSupportFilesLocation).resolve(relativeFileLocation).toUri();
 	}
 	
@@ -0,0 +1,88 @@
+@Unit
+Feature: Unit_Config_Cache
+  In this feature we will describe the config cache of a generator.
+  A config used by multiple runs of the same generator is only read once, unless the config file or one of the files included in it is modified.
+
+  Background: 
+    Given a file named "config.xml" with content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig xmlns:xi="http://www.w3.org/2001/XInclude">
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <xi:include href="binding.xml" />
+        </Binding>
+      </XGenConfig>
+      """
+    And a file named "binding.xml" with content:
+      """
+      <SectionModelBinding section="Template" modelXPath="//entity" placeholderName="table" />
+      """
+    And I have the following model file: "model.xml"
+    And the following config file: "config.xml"
+    And the following template file: "template.txt"
+
+  Scenario: Config file used by two runs of the same generator
+    When I run the generator
+    And I run the generator again
+    Then I expect 1 generation result
+    And an output named "template.txt" with content:
+      """
+      A
+      B
+
+      """
+    And I expect the following console message:
+      """
+      from the config cache.
+      """
+
+  Scenario: Included config file changed between two runs of the same generator
+    When I run the generator
+    And a file named "binding.xml" with content:
+      """
+      <SectionModelBinding section="Template" modelXPath="//entity[@name != 'A']" placeholderName="table" />
+      """
+    And I run the generator again
+    Then I expect 1 generation result
+    And an output named "template.txt" with content:
+      """
+      B
+
+      """
+    And I don't expect the following console message:
+      """
+      from the config cache.
+      """
+
+  Scenario: Config file changed between two runs of the same generator
+    When I run the generator
+    And a file named "binding-B.xml" with content:
+      """
+      <SectionModelBinding section="Template" modelXPath="//entity[@name = 'B']" placeholderName="table" />
+      """
+    And a file named "config.xml" with content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig xmlns:xi="http://www.w3.org/2001/XInclude">
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <xi:include href="binding-B.xml" />
+        </Binding>
+      </XGenConfig>
+      """
+    And I run the generator again
+    Then I expect 1 generation result
+    And an output named "template.txt" with content:
+      """
+      B
+
+      """
+    And I don't expect the following console message:
+      """
+      from the config cache.
+      """
@@ -0,0 +1,17 @@
+@Unit
+Feature: Unit_Config_ParallelLoad
+  In this feature we will describe loading a config file in parallel.
+  The config loads share the compiled config schema and JAXB context, so loading in parallel should give the same result as loading one at a time.
+
+  Scenario: Load a config file with an include in parallel
+    Given the following config file: "config.xml"
+    When I load the config file 16 times in parallel
+    Then I expect 16 loaded configs with root section name "Template" bound to model XPath "/entities/entity"
+
+  Scenario: Load a config file with a schema error in parallel
+    Given the following config file: "config-schema-error.xml"
+    When I load the config file 16 times in parallel
+    Then I expect the following error message for each of the 16 loads:
+      """
+      Error in config file: cvc-complex-type.3.2.2: Attribute 'unknownAttribute' is not allowed to appear in element 'SectionModelBinding'. ({{support-file-location}}/config-schema-error.xml)
+      """
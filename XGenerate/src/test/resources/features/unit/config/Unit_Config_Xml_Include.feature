@@ -78,3 +78,39 @@ Feature: Unit_Config_Xml_Include
       """
       com.xbreeze.xgenerate.utils.XmlException: XML include cycle detected at level 3, file {{support-file-location}}/entityBindingWithIncludeNested.xml is already included previously
       """
+
+  Scenario Outline: Config file with an include <Scenario>
+    Given I have the following model file: "config-files/model.xml"
+    And the following config file: "config-files/<configFile>"
+    And the following template file: "config-files/template.txt"
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "template.txt" with content:
+      """
+      A -> sys;
+      B -> sys;
+
+      """
+
+    Examples: 
+      | Scenario                                                     | configFile                            |
+      | without xpointer                                             | config-include.xml                    |
+      | with xpointer                                                | config-include-xpointer.xml           |
+      | with a nested include                                        | config-include-nested.xml             |
+      | using the namespace declared on the including config element | config-include-namespace-in-scope.xml |
+
+  Scenario Outline: Config file with an include <Scenario>
+    Given I have the following model file: "config-files/model.xml"
+    And the following config file: "config-files/<configFile>"
+    And the following template file: "config-files/template.txt"
+    When I run the generator
+    Then I expect the following error message:
+      """
+      <errorMessage>
+      """
+
+    Examples: 
+      | Scenario                                            | configFile                              | errorMessage                                                                                                                                                                                                                                                                                                                                                 |
+      | with an include cycle                               | config-include-cycle.xml                | com.xbreeze.xgenerate.config.ConfigException: com.xbreeze.xgenerate.utils.XmlException: XML include cycle detected at level 3, file {{support-file-location}}/entityBindingWithIncludeNested.xml is already included previously ({{support-file-location}}/config-files/config-include-cycle.xml)                                                            |
+      | using the namespace declared on the include element | config-include-namespace-on-include.xml | com.xbreeze.xgenerate.config.ConfigException: Error in config file: The prefix "xi" for element "xi:include" is not bound. (in included file {{support-file-location}}/config-files/entityBindingWithoutNamespaceDeclaration.xml) ({{support-file-location}}/config-files/config-include-namespace-on-include.xml)                                           |
+      | with a schema error in the included file            | config-include-schema-error.xml         | com.xbreeze.xgenerate.config.ConfigException: Error in config file: cvc-complex-type.3.2.2: Attribute 'unknownAttribute' is not allowed to appear in element 'SectionModelBinding'. (in included file {{support-file-location}}/config-files/entityBindingWithUnknownAttribute.xml) ({{support-file-location}}/config-files/config-include-schema-error.xml) |
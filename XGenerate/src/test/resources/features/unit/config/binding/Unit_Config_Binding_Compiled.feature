@@ -0,0 +1,119 @@
+@Unit
+Feature: Unit_Config_Binding_Compiled
+  In this feature we will describe how the binding config is compiled before the template is pre-processed.
+  The section model bindings are indexed by section name, where the section name is matched case-insensitive.
+  The binding is compiled once per config and shared by all outputs generated using the config.
+
+  Background: 
+    Given I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <entities primary="A">
+        <entity name="A" type="table"/>
+        <entity name="B" type="view"/>
+        <entity name="C" type="table"/>
+      </entities>
+      """
+
+  Scenario Outline: Section name matched case-insensitive <Scenario>
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <FileFormat singleLineCommentPrefix="--" />
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="<rootSectionName>" modelXPath="/entities" placeholderName="root">
+            <SectionModelBinding section="<childSectionName>" modelXPath="entity" placeholderName="table" />
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+    And the following template named "Unit_Config_Binding_Compiled.txt":
+      """
+      -- @XGenTextSection(name="Section" end="_name")
+      table_name
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_Config_Binding_Compiled.txt" with content:
+      """
+      ABC
+      """
+
+    Examples: 
+      | Scenario    | rootSectionName | childSectionName |
+      | same case   | Template        | Section          |
+      | lower case  | template        | section          |
+      | upper case  | TEMPLATE        | SECTION          |
+
+  Scenario: Multiple section model bindings on a section
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <FileFormat singleLineCommentPrefix="--" />
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities" placeholderName="root">
+            <SectionModelBinding section="Section" modelXPath="entity[@type='table']" placeholderName="table" />
+            <SectionModelBinding section="section" modelXPath="entity[@type='view']" placeholderName="table" />
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+    And the following template named "Unit_Config_Binding_Compiled.txt":
+      """
+      -- @XGenTextSection(name="Section" end="_name")
+      table_name
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_Config_Binding_Compiled.txt" with content:
+      """
+      ACB
+      """
+
+  Scenario: Compiled binding shared by all outputs
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <FileFormat singleLineCommentPrefix="--" />
+          <Output type="output_per_element" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table">
+            <SectionModelBinding section="Section" modelXPath="../entity[@type=current()/@type]" placeholderName="sibling" />
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+    And the following template named "Compiled_table_name.txt":
+      """
+      table_name:
+      -- @XGenTextSection(name="Section" end="_name")
+       sibling_name
+      """
+    When I run the generator
+    Then I expect 3 generation results
+    And an output named "Compiled_A.txt" with content:
+      """
+      A:
+       A C
+      """
+    And an output named "Compiled_B.txt" with content:
+      """
+      B:
+       B
+      """
+    And an output named "Compiled_C.txt" with content:
+      """
+      C:
+       A C
+      """
@@ -0,0 +1,105 @@
+@Unit
+Feature: Unit_Config_Binding_Key
+  In this feature we will describe the Key feature in the Binding config.
+  Keys can be declared in the Binding config and used in the model XPath's using the key() function.
+  Model XPath's which select elements using an equality predicate are rewritten into key lookups automatically.
+  A predicate comparing with a variable itself isn't rewritten, since the variable can be a number which is compared as a number (and not as a string like in a key lookup).
+
+  Background: 
+    Given I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <model>
+        <entities>
+          <entity name="A"/>
+          <entity name="B"/>
+          <entity name="C"/>
+        </entities>
+        <mappings>
+          <mapping idx="1" source="A" target="B"/>
+          <mapping idx="2" source="B" target="C"/>
+          <mapping idx="3" source="C" target="A"/>
+        </mappings>
+      </model>
+      """
+
+  Scenario Outline: Lookup using <Scenario>
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding automaticKeys="<automaticKeys>">
+          <SectionModelBinding section="Template" modelXPath="/model/entities/entity" placeholderName="entity" variableName="entityNode">
+            <Placeholders>
+              <Placeholder name="mapping" modelXPath="<modelXPath>" />
+            </Placeholders>
+          </SectionModelBinding>
+          <Keys>
+            <Key name="mappingBySource" match="mapping" use="@source" />
+          </Keys>
+        </Binding>
+      </XGenConfig>
+      """
+    And the following template named "Unit_Config_Binding_Key.txt":
+      """
+      entity_name -> mapping_target ;
+
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_Config_Binding_Key.txt" with content:
+      """
+      A -> B ;
+      B -> C ;
+      C -> A ;
+
+      """
+
+    Examples: 
+      | Scenario         | automaticKeys | modelXPath                                        |
+      | configured key   | true          | key('mappingBySource', current()/@name)           |
+      | automatic key    | true          | //mapping[@source=current()/@name]                |
+      | absolute path    | true          | /model/mappings/mapping[@source = current()/@name] |
+      | variable path    | true          | //mapping[@source=$entityNode/@name]              |
+      | no automatic key | false         | //mapping[@source=current()/@name]                |
+
+  Scenario Outline: Lookup using a numeric variable <Scenario>
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding automaticKeys="<automaticKeys>">
+          <SectionModelBinding section="Template" modelXPath="/model/entities/entity" placeholderName="entity">
+            <Placeholders>
+              <Placeholder name="position" modelXPath="count(preceding-sibling::entity) + 1" variableName="p" />
+              <Placeholder name="mapping" modelXPath="//mapping[@idx=$p]" />
+            </Placeholders>
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+    And the following template named "Unit_Config_Binding_Key.txt":
+      """
+      entity_name -> mapping_target ;
+
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_Config_Binding_Key.txt" with content:
+      """
+      A -> B ;
+      B -> C ;
+      C -> A ;
+
+      """
+
+    Examples: 
+      | Scenario            | automaticKeys |
+      | with automatic keys | true          |
+      | no automatic key    | false         |
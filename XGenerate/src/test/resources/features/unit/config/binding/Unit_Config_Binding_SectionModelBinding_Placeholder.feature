@@ -83,3 +83,48 @@ Feature: Unit_Config_Binding_SectionModelBinding_Placeholder
       C -> A -> A ;
 
       """
+
+  Scenario Outline: Overlapping and chained placeholders <Scenario>
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table">
+            <Literals>
+              <Literal literal="table" modelXPath="following-sibling::entity[1]/@name" />
+              <Literal literal="select" modelXPath="@name" />
+            </Literals>
+            <Placeholders>
+              <Placeholder name="source_table" modelXPath="following-sibling::entity[1]" />
+              <Placeholder name="tables" modelXPath="//entity[1]" />
+            </Placeholders>
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+    And the following template named "Unit_Config_Binding_SectionModelBinding_Placeholder.txt":
+      """
+      <template> ;
+
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_Config_Binding_SectionModelBinding_Placeholder.txt" with content:
+      """
+      <expectedResultA> ;
+      <expectedResultB> ;
+      <expectedResultC> ;
+
+      """
+
+    Examples: 
+      | Scenario                         | template                  | expectedResultA | expectedResultB | expectedResultC |
+      | placeholder name as suffix       | source_table_name         | source_A        | source_B        | source_C        |
+      | placeholder name as prefix       | table_name -> tables_name | A -> A          | B -> A          | C -> A          |
+      | literal in placeholder           | table_name -> [table]     | A -> [B]        | B -> [C]        | C -> []         |
+      | literal in replacement           | table_name -> select      | A -> A          | B -> B          | C -> C          |
+      | literal in placeholder attribute | [table_select] -> select  | [] -> A         | [] -> B         | [] -> C         |
@@ -220,6 +220,135 @@ Feature: Unit_Config_Model_ModelAttributeInjection
 
       """
 
+  Scenario: Inject using an attribute injected by an earlier injection
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model>
+          <ModelAttributeInjections>
+            <ModelAttributeInjection modelXPath="//entity" targetAttribute="type" targetXPath="concat('The entity was ', @name)" />
+            <ModelAttributeInjection modelXPath="//entity[@name='B']" targetAttribute="type" targetXPath="upper-case(@type)" />
+            <ModelAttributeInjection modelXPath="//entity[@type='The entity was C']" targetAttribute="name" targetValue="NewC" />
+          </ModelAttributeInjections>
+        </Model>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_Config_Model_ModelAttributeInjection.txt" with content:
+      """
+      A -> The entity was A
+      B -> THE ENTITY WAS B
+      NewC -> The entity was C
+
+      """
+
+  Scenario: Inject using a target xpath which reads outside of the matched element
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model>
+          <ModelAttributeInjections>
+            <ModelAttributeInjection modelXPath="//entity" targetAttribute="type" targetXPath="concat(name(..), '/', @name)" />
+          </ModelAttributeInjections>
+        </Model>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_Config_Model_ModelAttributeInjection.txt" with content:
+      """
+      A -> entities/A
+      B -> entities/B
+      C -> entities/C
+
+      """
+
+  Scenario: Inject the same attribute multiple times and remove nodes
+    Given I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <entities>
+        <entity name="A" description="This is table A" />
+        <entity name="B" description="This is table B" />
+        <entity name="C" description="This is table C" />
+      </entities>
+      """
+    And the following template named "Unit_Config_Model_ModelAttributeInjection.txt":
+      """
+      table_name -> table_type (table_description)
+
+      """
+    And the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model>
+          <ModelAttributeInjections>
+            <ModelAttributeInjection modelXPath="//entity" targetAttribute="type" targetValue="first" />
+            <ModelAttributeInjection modelXPath="//entity[@name!='A']" targetAttribute="type" targetXPath="concat('second ', @name)" />
+            <ModelAttributeInjection modelXPath="/entities/entity[@name='C']" targetAttribute="type" targetValue="third" />
+          </ModelAttributeInjections>
+          <ModelNodeRemovals>
+            <ModelNodeRemoval modelXPath="//entity[@name='B']/@description" />
+            <ModelNodeRemoval modelXPath="//entity[@name='C']" />
+          </ModelNodeRemovals>
+        </Model>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_Config_Model_ModelAttributeInjection.txt" with content:
+      """
+      A -> first (This is table A)
+      B -> second B ()
+
+      """
+
+  Scenario: Inject using a target xpath which fails on a matched element
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model>
+          <ModelAttributeInjections>
+            <ModelAttributeInjection modelXPath="//entity" targetAttribute="type" targetXPath="exactly-one(@type)" />
+          </ModelAttributeInjections>
+        </Model>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    When I run the generator
+    Then I expect the following error message:
+      """
+      com.xbreeze.xgenerate.model.ModelPreprocessorException: Error while applying model config XSLT: An empty sequence is not allowed as the first argument of fn:exactly-one()
+      """
+
   Scenario: Inject using incorrect modelXPath
     Given the following config:
       """
@@ -56,3 +56,67 @@ Feature: Unit_Config_Model_ModelAttributeInjection_ValueMappings
       | Scenario     | inputValue1 | inputValue2 | inputValue3 | expectedResultA | expectedResultB | expectedResultC |
       | 1 on 1 match | A           | B           | C           |               1 |               2 |               3 |
       | no match     | A           | B           | D           |               1 |               2 |                 |
+
+  Scenario Outline: No value mapping for an input node value using model XPath <modelXPath>
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model>
+          <ModelAttributeInjections>
+            <ModelAttributeInjection modelXPath="<modelXPath>" targetAttribute="type">
+              <ValueMappings inputNode="@name">
+                <ValueMapping inputValue="A" outputValue="1" />
+                <ValueMapping inputValue="B" outputValue="2" />
+              </ValueMappings>
+            </ModelAttributeInjection>
+          </ModelAttributeInjections>
+        </Model>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And I expect the following console message:
+      """
+      No value mapping found for input node value
+      """
+
+    Examples: 
+      | modelXPath      |
+      | //entity        |
+      | entities/entity |
+
+  Scenario: Duplicate input value in value mappings
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model>
+          <ModelAttributeInjections>
+            <ModelAttributeInjection modelXPath="//entity" targetAttribute="type">
+              <ValueMappings inputNode="@name">
+                <ValueMapping inputValue="A" outputValue="1" />
+                <ValueMapping inputValue="B" outputValue="2" />
+                <ValueMapping inputValue="A" outputValue="3" />
+              </ValueMappings>
+            </ModelAttributeInjection>
+          </ModelAttributeInjections>
+        </Model>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    Then I expect the following error message:
+      """
+      Error in config file: 2 value mappings found for input value ´A´ of input node ´@name´, expected exactly 1!
+      """
@@ -73,3 +73,35 @@ Feature: Unit_Config_Template_OutputType
       C
       
       """
+
+  Scenario: Output per element in parallel
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model/>
+        <TextTemplate rootSectionName="Template">
+          <Output type="output_per_element" parallelism="2" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    When I run the generator
+    Then I expect 3 generation result
+    And an output named "Unit_Config_Template_OutputType_A.txt" with content:
+      """
+      A
+      
+      """
+    And an output named "Unit_Config_Template_OutputType_B.txt" with content:
+      """
+      B
+      
+      """
+    And an output named "Unit_Config_Template_OutputType_C.txt" with content:
+      """
+      C
+      
+      """
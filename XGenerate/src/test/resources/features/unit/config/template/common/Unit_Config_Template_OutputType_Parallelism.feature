@@ -0,0 +1,186 @@
+@Unit
+Feature: Unit_Config_Template_OutputType_Parallelism
+  In this feature we will describe the parallelism of the output per element output type.
+  The outputs generated in parallel should be the same as when generated sequentially (parallelism 1).
+
+  Background: 
+    Given I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <entities>
+        <entity name="A"><column name="A1"/><column name="A2"/></entity>
+        <entity name="B"><column name="B1"/></entity>
+        <entity name="C"><column name="C1"/><column name="C2"/><column name="C3"/></entity>
+        <entity name="D"/>
+        <entity name="E"><column name="E1"/></entity>
+        <entity name="F"><column name="F1"/><column name="F2"/></entity>
+        <entity name="G"><column name="G1"/></entity>
+        <entity name="H"><column name="H1"/><column name="H2"/></entity>
+        <entity name="I"><column name="I1"/></entity>
+      </entities>
+      """
+    And the following template named "Parallelism_table_name.txt":
+      """
+      table_name: column_name
+      """
+
+  Scenario Outline: Output per element with parallelism <parallelism>
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model/>
+        <TextTemplate rootSectionName="Template">
+          <FileFormat singleLineCommentPrefix="--" annotationPrefix="@XGen" annotationArgsPrefix="(" annotationArgsSuffix=")" />
+          <Output type="output_per_element" parallelism="<parallelism>" />
+          <TextSections>
+            <TextSection name="Column" begin="column" includeBegin="true" end="name" includeEnd="true" suffix=", " suffixStyle="allButLast"/>
+          </TextSections>
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table">
+            <SectionModelBinding section="Column" modelXPath="column" placeholderName="column"/>
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+    When I run the generator
+    Then I expect 9 generation results
+    And an output named "Parallelism_A.txt" with content:
+      """
+      A: A1, A2
+      """
+    And an output named "Parallelism_B.txt" with content:
+      """
+      B: B1
+      """
+    And an output named "Parallelism_C.txt" with content:
+      """
+      C: C1, C2, C3
+      """
+    And an output named "Parallelism_D.txt" with content:
+      """
+      D: 
+      """
+    And an output named "Parallelism_E.txt" with content:
+      """
+      E: E1
+      """
+    And an output named "Parallelism_F.txt" with content:
+      """
+      F: F1, F2
+      """
+    And an output named "Parallelism_G.txt" with content:
+      """
+      G: G1
+      """
+    And an output named "Parallelism_H.txt" with content:
+      """
+      H: H1, H2
+      """
+    And an output named "Parallelism_I.txt" with content:
+      """
+      I: I1
+      """
+
+    Examples: 
+      | parallelism |
+      | 1           |
+      | 2           |
+      | 3           |
+      | 16          |
+
+  Scenario Outline: Output per element with a section prefix and suffix depending on the root position and parallelism <parallelism>
+    Given the following template named "Parallelism_table_name.txt":
+      """
+      table_name: column_name;
+      """
+    And the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model/>
+        <TextTemplate rootSectionName="Template">
+          <FileFormat singleLineCommentPrefix="--" annotationPrefix="@XGen" annotationArgsPrefix="(" annotationArgsSuffix=")" />
+          <Output type="output_per_element" parallelism="<parallelism>" />
+          <TextSections>
+            <TextSection name="Body" begin="table_name" includeBegin="true" end=";" includeEnd="true" prefix="[" prefixStyle="allButFirst" suffix="]" suffixStyle="lastOnly"/>
+            <TextSection name="Column" begin="column" includeBegin="true" end="name" includeEnd="true" suffix=", " suffixStyle="allButLast"/>
+          </TextSections>
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table">
+            <SectionModelBinding section="Column" modelXPath="column" placeholderName="column"/>
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+    When I run the generator
+    Then I expect 9 generation results
+    And an output named "Parallelism_A.txt" with content:
+      """
+      A: A1, A2;
+      """
+    And an output named "Parallelism_B.txt" with content:
+      """
+      [B: B1;
+      """
+    And an output named "Parallelism_C.txt" with content:
+      """
+      [C: C1, C2, C3;
+      """
+    And an output named "Parallelism_D.txt" with content:
+      """
+      [D: ;
+      """
+    And an output named "Parallelism_E.txt" with content:
+      """
+      [E: E1;
+      """
+    And an output named "Parallelism_F.txt" with content:
+      """
+      [F: F1, F2;
+      """
+    And an output named "Parallelism_G.txt" with content:
+      """
+      [G: G1;
+      """
+    And an output named "Parallelism_H.txt" with content:
+      """
+      [H: H1, H2;
+      """
+    And an output named "Parallelism_I.txt" with content:
+      """
+      [I: I1;]
+      """
+
+    Examples: 
+      | parallelism |
+      | 1           |
+      | 2           |
+      | 3           |
+      | 16          |
+
+  Scenario Outline: Output per element with invalid parallelism <parallelism>
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model/>
+        <TextTemplate rootSectionName="Template">
+          <Output type="output_per_element" parallelism="<parallelism>" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    Then I expect the following error message:
+      """
+      Error in config file: cvc-minInclusive-valid: Value '<parallelism>' is not facet-valid with respect to minInclusive '1' for type 'positiveInteger'.
+      """
+
+    Examples: 
+      | parallelism |
+      | 0           |
+      | -1          |
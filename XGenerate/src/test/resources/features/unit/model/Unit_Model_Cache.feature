@@ -0,0 +1,97 @@
+@Unit
+Feature: Unit_Model_Cache
+  In this feature we will describe the model cache and the reuse of a model with multiple configs.
+  A preprocessed model is only used when it's preprocessed using the same model config.
+
+  Scenario: Model from the model cache
+    Given I have the following model file: "model.xml"
+    And the following config file: "config-first.xml"
+    And the following template file: "template.txt"
+    And a model cache
+    When I run the generator
+    And I run the generator again
+    Then I expect 1 generation result
+    And an output named "template.txt" with content:
+      """
+      A -> first
+      B -> first
+      
+      """
+    And I expect the following console message:
+      """
+      Using the preprocessed model from the model cache
+      """
+
+  Scenario: Model from the model cache with another model config
+    Given I have the following model file: "model.xml"
+    And the following config file: "config-first.xml"
+    And the following template file: "template.txt"
+    And a model cache
+    When I run the generator
+    And the following config file: "config-second.xml"
+    And I run the generator again
+    Then I expect 1 generation result
+    And an output named "template.txt" with content:
+      """
+      A -> second
+      B -> second
+      
+      """
+
+  Scenario: Model used with two model configs
+    Given I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <entities>
+        <entity name="A"/>
+        <entity name="B"/>
+      </entities>
+      """
+    And the following template named "Model_Reuse.txt":
+      """
+      table_name -> table_type
+      
+      """
+    And the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model>
+          <ModelAttributeInjections>
+            <ModelAttributeInjection modelXPath="//entity" targetAttribute="type" targetValue="first" />
+          </ModelAttributeInjections>
+        </Model>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    When I run the generator
+    And the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model>
+          <ModelAttributeInjections>
+            <ModelAttributeInjection modelXPath="//entity[@name='B']" targetAttribute="type" targetValue="second" />
+          </ModelAttributeInjections>
+        </Model>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    And I run the generator again
+    Then I expect 1 generation result
+    And an output named "Model_Reuse.txt" with content:
+      """
+      A -> 
+      B -> second
+      
+      """
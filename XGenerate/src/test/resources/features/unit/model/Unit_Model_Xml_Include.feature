@@ -95,3 +95,190 @@ Feature: Unit_Model_Xml_Include
     Examples: 
       | Scenario                          | NamespaceAware | Namespace |
       | Namespace aware without namespace | true           |           |
+
+  Scenario: Include file changed between two runs of the same generator
+    Given a file named "model.xml" with content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <entities xmlns:xi="http://www.w3.org/2001/XInclude">
+        <entity name="A"/>
+        <xi:include href="included.xml" />
+      </entities>
+      """
+    And a file named "included.xml" with content:
+      """
+      <entity name="B"/>
+      """
+    And I have the following model file: "model.xml"
+    And the following config file: "include-store-config.xml"
+    And the following template file: "include-store-template.txt"
+    When I run the generator
+    Then an output named "include-store-template.txt" with content:
+      """
+      A
+      B
+
+      """
+    When a file named "included.xml" with content:
+      """
+      <entity name="C"/>
+      """
+    And I run the generator again
+    Then I expect 1 generation result
+    And an output named "include-store-template.txt" with content:
+      """
+      A
+      C
+
+      """
+
+  Scenario: Include file reused by multiple files at the same depth
+    Given a file named "model.xml" with content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <entities xmlns:xi="http://www.w3.org/2001/XInclude">
+        <xi:include href="group-1.xml" />
+        <xi:include href="group-2.xml" />
+      </entities>
+      """
+    And a file named "group-1.xml" with content:
+      """
+      <group xmlns:xi="http://www.w3.org/2001/XInclude">
+        <entity name="G1"/>
+        <xi:include href="shared.xml" />
+      </group>
+      """
+    And a file named "group-2.xml" with content:
+      """
+      <group xmlns:xi="http://www.w3.org/2001/XInclude">
+        <entity name="G2"/>
+        <xi:include href="shared.xml" />
+      </group>
+      """
+    And a file named "shared.xml" with content:
+      """
+      <entity name="S"/>
+      """
+    And I have the following model file: "model.xml"
+    And the following config file: "include-store-config.xml"
+    And the following template file: "include-store-template.txt"
+    When I run the generator
+    And I run the generator again
+    Then I expect 1 generation result
+    And an output named "include-store-template.txt" with content:
+      """
+      G1
+      S
+      G2
+      S
+
+      """
+
+  Scenario: Include file reused at different depths
+    Given a file named "model.xml" with content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <entities xmlns:xi="http://www.w3.org/2001/XInclude">
+        <xi:include href="shared.xml" />
+        <xi:include href="group-1.xml" />
+      </entities>
+      """
+    And a file named "group-1.xml" with content:
+      """
+      <group xmlns:xi="http://www.w3.org/2001/XInclude">
+        <entity name="G1"/>
+        <xi:include href="shared.xml" />
+      </group>
+      """
+    And a file named "shared.xml" with content:
+      """
+      <entity name="S"/>
+      """
+    And I have the following model file: "model.xml"
+    And the following config file: "include-store-config.xml"
+    And the following template file: "include-store-template.txt"
+    When I run the generator
+    Then I expect the following error message:
+      """
+      com.xbreeze.xgenerate.model.ModelException: Error while reading model: XML include cycle detected at level 2, file {{working-folder-location}}/shared.xml is already included previously
+      """
+
+  Scenario: Include cycle through an include file resolved in an earlier run
+    Given a file named "model.xml" with content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <entities xmlns:xi="http://www.w3.org/2001/XInclude">
+        <xi:include href="group-1.xml" />
+      </entities>
+      """
+    And a file named "group-1.xml" with content:
+      """
+      <group xmlns:xi="http://www.w3.org/2001/XInclude">
+        <entity name="G1"/>
+        <xi:include href="shared.xml" />
+      </group>
+      """
+    And a file named "shared.xml" with content:
+      """
+      <entity name="S"/>
+      """
+    And I have the following model file: "model.xml"
+    And the following config file: "include-store-config.xml"
+    And the following template file: "include-store-template.txt"
+    When I run the generator
+    Then I expect 1 generation result
+    When a file named "model.xml" with content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <entities xmlns:xi="http://www.w3.org/2001/XInclude">
+        <xi:include href="group-1.xml" />
+        <xi:include href="shared.xml" />
+      </entities>
+      """
+    And I run the generator again
+    Then I expect the following error message:
+      """
+      com.xbreeze.xgenerate.model.ModelException: Error while reading model: XML include cycle detected at level 1, file {{working-folder-location}}/shared.xml is already included previously
+      """
+
+  Scenario: Xml include of one file with different xpointers and of a file with a XML declaration
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model namespaceAware="true" />
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/system/entities/entity" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    And I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <system name="sys" xmlns:xi="http://www.w3.org/2001/XInclude">
+       <entities>
+         <xi:include href="catalog.xml" xpointer="/catalog/entity[@name='B']" />
+         <xi:include href="catalog.xml" xpointer="//entity[@name='A']" />
+         <xi:include href="catalog.xml" xpointer="/catalog/entity[@name='B']" />
+         <xi:include href="entity-with-declaration.xml" />
+       </entities>
+      </system>
+      """
+    And the following template named "Unit_Model_Xml_Include.txt":
+      """
+      table_name
+
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_Model_Xml_Include.txt" with content:
+      """
+      B
+      A
+      B
+      D
+
+      """
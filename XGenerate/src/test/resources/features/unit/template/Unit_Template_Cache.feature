@@ -0,0 +1,114 @@
+@Unit
+Feature: Unit_Template_Cache
+  In this feature we will describe the template cache.
+  When a template cache is used, the pre-processed template is stored in the cache and used again when the template and config are the same.
+
+  Background: 
+    Given I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <entities>
+        <entity name="A" type="T1"/>
+        <entity name="B" type="T2"/>
+      </entities>
+      """
+    And a template cache
+
+  Scenario: Same template and config
+    Given the following template named "Template_Cache.txt":
+      """
+      table_name
+      """
+    And the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model/>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    When I run the generator
+    And I run the generator again
+    Then I expect 1 generation result
+    And an output named "Template_Cache.txt" with content:
+      """
+      AB
+      """
+    And I expect the following console message:
+      """
+      Using the pre-processed template from the template cache
+      """
+
+  Scenario: Modified template
+    Given the following template named "Template_Cache.txt":
+      """
+      table_name
+      """
+    And the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model/>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    When I run the generator
+    And the following template named "Template_Cache.txt":
+      """
+      table_type
+      """
+    And I run the generator again
+    Then I expect 1 generation result
+    And an output named "Template_Cache.txt" with content:
+      """
+      T1T2
+      """
+
+  Scenario: Modified config
+    Given the following template named "Template_Cache.txt":
+      """
+      table_name
+      """
+    And the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model/>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    When I run the generator
+    And the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model/>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity[@name='B']" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    And I run the generator again
+    Then I expect 1 generation result
+    And an output named "Template_Cache.txt" with content:
+      """
+      B
+      """
@@ -0,0 +1,38 @@
+@Unit
+Feature: Unit_Template_DebugMode
+  In this feature we will describe the files written by the generator in debug mode.
+  In debug mode the pre-processed template is written to the output folder, as it's passed to the XSLT compiler.
+
+  @Debug
+  Scenario: Pre-processed template written in debug mode
+    Given I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <entities>
+        <entity name="A"/>
+        <entity name="B"/>
+      </entities>
+      """
+    And the following template named "Debug_table_name.txt":
+      """
+      Table: table_name
+      """
+    And the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <Output type="output_per_element" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table" />
+        </Binding>
+      </XGenConfig>
+      """
+    When I run the generator
+    Then I expect 2 generation results
+    And an output named "Debug_A.txt" with content:
+      """
+      Table: A
+      """
+    And a file named "preprocessed_Debug_table_name.txt" in the output folder with contents equal to file: "preprocessed_Debug_table_name.txt"
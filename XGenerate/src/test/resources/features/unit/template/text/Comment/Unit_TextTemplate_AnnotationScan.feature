@@ -0,0 +1,53 @@
+@Unit
+Feature: Unit_TextTemplate_AnnotationScan
+  In this feature we will describe how the annotations are found in the comments of text templates.
+  The single line and multi line comments are found in one pass over the template, after which the annotations are taken from the comments.
+  The single line and multi line comments are found independently, so a comment within a comment of the other type is also found.
+  An annotation outside of a comment is part of the text.
+
+  Background: 
+    Given I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <entities>
+        <entity name="A"/>
+        <entity name="B"/>
+      </entities>
+      """
+
+  Scenario Outline: Annotation <Scenario>
+    Given the following template named "Unit_TextTemplate_AnnotationScan.txt":
+      """
+      <Template>
+      """
+    And the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <FileFormat singleLineCommentPrefix="<singleLineCommentPrefix>" multiLineCommentPrefix="/*" multiLineCommentSuffix="*/" />
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities" placeholderName="root">
+            <SectionModelBinding section="Entity" modelXPath="entity" placeholderName="entity" />
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_TextTemplate_AnnotationScan.txt" with content:
+      """
+      <ExpectedResult>
+      """
+
+    Examples: 
+      | Scenario                          | singleLineCommentPrefix | Template                                                                         | ExpectedResult                                      |
+      | in single line comment            | --                      | begin\n-- @XGenTextSection(name="Entity")\nentity_name;\nend                     | begin\nA;\nB;\nend                                  |
+      | in single line comment with hash  | #                       | begin\n# @XGenTextSection(name="Entity")\nentity_name;\nend                      | begin\nA;\nB;\nend                                  |
+      | in indented single line comment   | --                      | begin\n    -- @XGenTextSection(name="Entity")\nentity_name;\nend                 | begin\nA;\nB;\nend                                  |
+      | in multi line comment             | --                      | begin\n/* @XGenTextSection(name="Entity") */\nentity_name;\nend                  | begin\nA;\nB;\nend                                  |
+      | after comments without annotation | --                      | begin -- text\n/* text */\n-- @XGenTextSection(name="Entity")\nentity_name;\nend | begin -- text\n/* text */\nA;\nB;\nend              |
+      | multi line comment in single line | --                      | begin\n-- /* @XGenComment(Some comment) */\nentity_name;\nend                    | begin\n-- */\nentity_name;\nend                     |
+      | annotation outside comment        | --                      | begin @XGenComment(Some comment)\nentity_name;\nend                              | begin @XGenComment(Some comment)\nentity_name;\nend |
@@ -0,0 +1,140 @@
+@Unit
+Feature: Unit_TextTemplate_Section_Iterated
+  In this feature we will describe sections with a prefix or suffix of which the style depends on the last position.
+  These sections (allButLast, lastOnly and allButFirstAndLast) are processed in an iteration, which should give the same output as when position() and last() are used.
+
+  Background: 
+    Given I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <model>
+        <table name="T1">
+          <column name="a" type="int"/>
+          <column name="b" type="text"/>
+          <column name="c" type="date"/>
+        </table>
+        <table name="T2">
+          <column name="d" type="int"/>
+        </table>
+        <table name="T3"/>
+      </model>
+      """
+    And the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <FileFormat singleLineCommentPrefix="--" />
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/model" placeholderName="model">
+            <SectionModelBinding section="Table" modelXPath="table" placeholderName="table">
+              <SectionModelBinding section="Column" modelXPath="column" placeholderName="column" />
+            </SectionModelBinding>
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+
+  Scenario Outline: Nested iterated sections with table suffix <suffixStyle>
+    Given the following template named "Unit_TextTemplate_Section_Iterated.txt":
+      """
+      BEGIN
+      -- @XGenTextSection(name="Table" literalOnLastLine="done" suffix=";" suffixStyle="<suffixStyle>")
+      table_name (
+      -- @XGenTextSection(name="Column" suffix="," suffixStyle="allButLast")
+        column_name
+      done
+      END
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_TextTemplate_Section_Iterated.txt" with content:
+      """
+      BEGIN
+      T1 (
+        a,
+        b,
+        c
+      done<suffix-1>
+      T2 (
+        d
+      done<suffix-2>
+      T3 (
+      done<suffix-3>
+      END
+      """
+
+    Examples: 
+      | suffixStyle        | suffix-1 | suffix-2 | suffix-3 |
+      | allButLast         | ;        | ;        |          |
+      | lastOnly           |          |          | ;        |
+      | allButFirstAndLast |          | ;        |          |
+      | allButFirst        |          | ;        | ;        |
+      | firstOnly          | ;        |          |          |
+
+  Scenario Outline: Iterated section with prefix <prefixStyle>
+    Given the following template named "Unit_TextTemplate_Section_Iterated.txt":
+      """
+      -- @XGenTextSection(name="Table" literalOnLastLine="done")
+      table_name:
+      -- @XGenTextSection(name="Column" end="column_name" prefix="+" prefixStyle="<prefixStyle>")
+      column_name
+      done
+      END
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_TextTemplate_Section_Iterated.txt" with content:
+      """
+      T1:
+      <expected-result-1>
+      done
+      T2:
+      <expected-result-2>
+      done
+      T3:
+
+      done
+      END
+      """
+
+    Examples: 
+      | prefixStyle        | expected-result-1 | expected-result-2 |
+      | allButLast         | +a+bc             | d                 |
+      | lastOnly           | ab+c              | +d                |
+      | allButFirstAndLast | a+bc              | d                 |
+
+  Scenario: Section without binding in an iterated section
+    Given the following template named "Unit_TextTemplate_Section_Iterated.txt":
+      """
+      -- @XGenTextSection(name="Table" literalOnLastLine="done")
+      table_name (
+      -- @XGenTextSection(name="Column" literalOnLastLine="column_type")
+        column_name
+      -- @XGenTextSection(name="Type" suffix=" [last]" suffixStyle="lastOnly")
+          column_type
+      done
+      END
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_TextTemplate_Section_Iterated.txt" with content:
+      """
+      T1 (
+        a
+          int
+        b
+          text
+        c
+          date [last]
+      done
+      T2 (
+        d
+          int [last]
+      done
+      T3 (
+      done
+      END
+      """
@@ -0,0 +1,114 @@
+@Unit
+Feature: Unit_TextTemplate_Section_Repeated
+  In this feature we will describe sections which are repeated for more than one section model binding.
+  The content of a section is only included once in the pre-processed template for all bindings with the same content.
+  The variables in scope of a binding are passed to the section, so a variable gets the value of the binding it's used in.
+
+  Background: 
+    Given I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <model name="M">
+        <system name="S1">
+          <entity name="A" type="table"/>
+          <entity name="B" type="view"/>
+        </system>
+        <system name="S2">
+          <entity name="C" type="table"/>
+        </system>
+      </model>
+      """
+
+  Scenario: Section repeated for multiple bindings using a variable
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <FileFormat singleLineCommentPrefix="--" />
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/model" placeholderName="model">
+            <SectionModelBinding section="System" modelXPath="system" placeholderName="system" variableName="systemNode">
+              <SectionModelBinding section="Entity" modelXPath="entity[@type='table']" placeholderName="entity">
+                <Placeholders>
+                  <Placeholder name="owner" modelXPath="$systemNode" />
+                </Placeholders>
+              </SectionModelBinding>
+              <SectionModelBinding section="Entity" modelXPath="entity[@type='view']" placeholderName="entity">
+                <Placeholders>
+                  <Placeholder name="owner" modelXPath="$systemNode" />
+                </Placeholders>
+              </SectionModelBinding>
+            </SectionModelBinding>
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+    And the following template named "Unit_TextTemplate_Section_Repeated.txt":
+      """
+      -- @XGenTextSection(name="System" literalOnLastLine="end of system_name")
+      system_name:
+      -- @XGenTextSection(name="Entity")
+        entity_name (entity_type) in owner_name
+      end of system_name
+      end of model_name
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_TextTemplate_Section_Repeated.txt" with content:
+      """
+      S1:
+        A (table) in S1
+        B (view) in S1
+      end of S1
+      S2:
+        C (table) in S2
+      end of S2
+      end of M
+      """
+
+  Scenario: Section repeated for bindings with different variables in scope
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <FileFormat singleLineCommentPrefix="--" />
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/model" placeholderName="model">
+            <SectionModelBinding section="System" modelXPath="system[1]" placeholderName="system" variableName="systemNode">
+              <SectionModelBinding section="Entity" modelXPath="entity" placeholderName="entity" />
+            </SectionModelBinding>
+            <SectionModelBinding section="System" modelXPath="system[2]" placeholderName="system">
+              <SectionModelBinding section="Entity" modelXPath="entity" placeholderName="entity" variableName="entityNode" />
+            </SectionModelBinding>
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+    And the following template named "Unit_TextTemplate_Section_Repeated.txt":
+      """
+      -- @XGenTextSection(name="System" literalOnLastLine="end of system_name")
+      system_name:
+      -- @XGenTextSection(name="Entity")
+        entity_name
+      end of system_name
+      end of model_name
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_TextTemplate_Section_Repeated.txt" with content:
+      """
+      S1:
+        A
+        B
+      end of S1
+      S2:
+        C
+      end of S2
+      end of M
+      """
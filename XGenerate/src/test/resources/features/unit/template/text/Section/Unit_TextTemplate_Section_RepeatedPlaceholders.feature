@@ -0,0 +1,78 @@
+@Unit
+Feature: Unit_TextTemplate_Section_RepeatedPlaceholders
+  In this feature we will describe placeholders which are used more than once in a section.
+  A placeholder expression which is used more than once in a section is evaluated once for the section.
+  A section without section model binding is processed using the binding of its parent section, the values of the parent section may not change because of it.
+
+  Background: 
+    Given I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <entities primary="P" name="N">
+        <entity name="A" type="table"/>
+        <entity name="B" type="view"/>
+      </entities>
+      """
+
+  Scenario: Repeated placeholders in a section without binding
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <FileFormat singleLineCommentPrefix="--" />
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities" placeholderName="root" />
+        </Binding>
+      </XGenConfig>
+      """
+    And the following template named "Unit_TextTemplate_Section_RepeatedPlaceholders.txt":
+      """
+      A root_primary root_primary
+      -- @XGenTextSection(name="Inner")
+      B root_name root_name
+      C root_primary
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_TextTemplate_Section_RepeatedPlaceholders.txt" with content:
+      """
+      A P P
+      B N N
+      C P
+      """
+
+  Scenario: Repeated placeholders in a section with binding
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <FileFormat singleLineCommentPrefix="--" />
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities" placeholderName="root">
+            <SectionModelBinding section="Entity" modelXPath="entity" placeholderName="entity" />
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+    And the following template named "Unit_TextTemplate_Section_RepeatedPlaceholders.txt":
+      """
+      root_primary root_name root_primary
+      -- @XGenTextSection(name="Entity")
+      entity_name entity_type entity_name
+      root_name root_primary root_name
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_TextTemplate_Section_RepeatedPlaceholders.txt" with content:
+      """
+      P N P
+      A table A
+      B view B
+      N P N
+      """
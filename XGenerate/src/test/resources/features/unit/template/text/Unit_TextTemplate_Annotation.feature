@@ -0,0 +1,76 @@
+@Unit
+Feature: Unit_TextTemplate_Annotation
+  In this feature we will describe how the annotations in text templates are created from their name and params.
+  The annotation name and the param names are matched case-insensitive.
+
+  Background: 
+    Given I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <entities>
+        <entity name="A"/>
+        <entity name="B"/>
+      </entities>
+      """
+    And the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <FileFormat singleLineCommentPrefix="--" />
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities" placeholderName="root">
+            <SectionModelBinding section="Entity" modelXPath="entity" placeholderName="entity" />
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+
+  Scenario Outline: Annotation <Scenario>
+    Given the following template named "Unit_TextTemplate_Annotation.txt":
+      """
+      begin
+      -- <Annotation>
+      entity_name;
+      end
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_TextTemplate_Annotation.txt" with content:
+      """
+      <ExpectedResult>
+      """
+
+    Examples: 
+      | Scenario         | Annotation                                                          | ExpectedResult           |
+      | text section     | @XGenTextSection(name="Entity")                                     | begin\nA;\nB;\nend       |
+      | lower case name  | @XGentextsection(name="Entity")                                     | begin\nA;\nB;\nend       |
+      | upper case name  | @XGenTEXTSECTION(name="Entity")                                     | begin\nA;\nB;\nend       |
+      | upper case param | @XGenTextSection(NAME="Entity")                                     | begin\nA;\nB;\nend       |
+      | integer param    | @XGenTextSection(name="Entity" nrOfLines="1")                       | begin\nA;\nB;\nend       |
+      | enum param       | @XGenTextSection(name="Entity" suffix="," suffixStyle="allButLast") | begin\nA;,\nB;\nend      |
+      | comment          | @XGenComment(Some comment)                                          | begin\nentity_name;\nend |
+
+  Scenario Outline: Annotation with <Scenario>
+    Given the following template named "Unit_TextTemplate_Annotation.txt":
+      """
+      begin
+      -- <Annotation>
+      entity_name;
+      end
+      """
+    When I run the generator
+    Then I expect the following error message:
+      """
+      <ErrorMessage>
+      """
+
+    Examples: 
+      | Scenario              | Annotation                                                         | ErrorMessage                                                                                                                                                                                                                                 |
+      | unknown name          | @XGenSomeSection(name="Entity")                                    | com.xbreeze.xgenerate.template.TemplatePreprocessorException: com.xbreeze.xgenerate.template.annotation.UnknownAnnotationException: An unknown annotation was used (SomeSection)                                                             |
+      | section bounds name   | @XGenSectionBounds(name="Entity")                                  | com.xbreeze.xgenerate.template.TemplatePreprocessorException: com.xbreeze.xgenerate.template.annotation.UnknownAnnotationException: An unknown annotation was used (SectionBounds)                                                           |
+      | unknown param         | @XGenTextSection(name="Entity" someParam="x")                      | com.xbreeze.xgenerate.template.TemplatePreprocessorException: com.xbreeze.xgenerate.template.annotation.UnknownAnnotationParamException: Unknown annotation param used (TextSection -> someParam)                                            |
+      | invalid integer param | @XGenTextSection(name="Entity" nrOfLines="x")                      | com.xbreeze.xgenerate.template.TemplatePreprocessorException: com.xbreeze.xgenerate.template.annotation.IncorrectParamValueException: Incorrect param value specified, expected an class java.lang.Integer (TextSection -> nrOfLines -> 'x') |
+      | invalid enum param    | @XGenTextSection(name="Entity" suffix="," suffixStyle="sometimes") | com.xbreeze.xgenerate.template.TemplatePreprocessorException: com.xbreeze.xgenerate.UnhandledException: Error while initializing class for 'TextSection', maybe default constructor missing?                                                 |
@@ -0,0 +1,99 @@
+@Unit
+Feature: Unit_TextTemplate_Text
+  In this feature we will describe how the text around the placeholders in text templates is written to the output.
+  The text of a template is merged into as few text instructions as possible, which should not change the output.
+  A large text without placeholders which occurs more than once is only included once in the pre-processed template, which should not change the output either.
+
+  Background: 
+    Given I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <entities name="Model">
+        <entity name="A" type="table"/>
+        <entity name="B" type="view"/>
+        <entity name="C" type="table"/>
+      </entities>
+      """
+
+  Scenario Outline: Text around placeholders <Scenario>
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities/entity" placeholderName="table">
+            <Literals>
+              <Literal literal="#TYPE" modelXPath="@type" />
+            </Literals>
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+    And the following template named "Unit_TextTemplate_Text.txt":
+      """
+      [<Template>]
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_TextTemplate_Text.txt" with content:
+      """
+      [<ExpectedResultA>][<ExpectedResultB>][<ExpectedResultC>]
+      """
+
+    Examples: 
+      | Scenario                 | Template                         | ExpectedResultA  | ExpectedResultB | ExpectedResultC  |
+      | adjacent placeholders    | table_name#TYPE#TYPEtable_name   | AtabletableA     | BviewviewB      | CtabletableC     |
+      | whitespace only between  | table_name  table_type           | A  table         | B  view         | C  table         |
+      | no placeholders          | text only                        | text only        | text only       | text only        |
+      | special characters       | <table_name> 'x' "table_type"    | <A> 'x' "table"  | <B> 'x' "view"  | <C> 'x' "table"  |
+      | leading and trailing     |  table_name                      |  A               |  B              |  C               |
+
+  Scenario: Large text repeated in sections
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <TextTemplate rootSectionName="Template">
+          <FileFormat singleLineCommentPrefix="--" />
+          <Output type="single_output" />
+        </TextTemplate>
+        <Binding>
+          <SectionModelBinding section="Template" modelXPath="/entities" placeholderName="model">
+            <SectionModelBinding section="Table" modelXPath="entity[@type='table']" placeholderName="table" />
+            <SectionModelBinding section="View" modelXPath="entity[@type='view']" placeholderName="view" />
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+    And the following template named "Unit_TextTemplate_Text.txt":
+      """
+      Begin of model_name
+      -- @XGenTextSection(name="Table" nrOfLines="3")
+      This is a large text without placeholders, which is repeated for each element of the section.
+      It contains characters which are escaped in the pre-processed template: < > ' "
+      Since the text is larger than the minimum size of a shared text, it's included once.
+      -- @XGenTextSection(name="View" nrOfLines="3")
+      This is a large text without placeholders, which is repeated for each element of the section.
+      It contains characters which are escaped in the pre-processed template: < > ' "
+      Since the text is larger than the minimum size of a shared text, it's included once.
+      End of model_name
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "Unit_TextTemplate_Text.txt" with content:
+      """
+      Begin of Model
+      This is a large text without placeholders, which is repeated for each element of the section.
+      It contains characters which are escaped in the pre-processed template: < > ' "
+      Since the text is larger than the minimum size of a shared text, it's included once.
+      This is a large text without placeholders, which is repeated for each element of the section.
+      It contains characters which are escaped in the pre-processed template: < > ' "
+      Since the text is larger than the minimum size of a shared text, it's included once.
+      This is a large text without placeholders, which is repeated for each element of the section.
+      It contains characters which are escaped in the pre-processed template: < > ' "
+      Since the text is larger than the minimum size of a shared text, it's included once.
+      End of Model
+      """
@@ -0,0 +1,118 @@
+@Unit
+Feature: Unit_XmlTemplate_MultiByteCharacters
+  In this feature we will describe XML templates containing characters which take multiple bytes in UTF-8.
+  The section positions in the template are found on the UTF-8 bytes of the template, so the characters before and inside the sections shouldn't shift the sections.
+
+  Background: 
+    Given I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <modeldefinition>
+        <system name="Système">
+          <entity name="Bestellung_€"/>
+          <entity name="Größe_😀"/>
+        </system>
+      </modeldefinition>
+      """
+
+  Scenario Outline: Multi-byte characters before and inside a section <Scenario>
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <XmlTemplate rootSectionName="Database">
+          <FileFormat currentAccessor="_" />
+          <Output type="output_per_element" />
+          <XmlSections>
+            <XmlSection name="Tables" templateXPath="/Database/Tables/Table" />
+          </XmlSections>
+        </XmlTemplate>
+        <Binding>
+          <SectionModelBinding section="Database" modelXPath="/modeldefinition/system" placeholderName="system">
+            <SectionModelBinding section="Tables" modelXPath="./entity" placeholderName="entity"/>
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+    And the following template named "ExampleTemplate.xml":
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <Database name="system_name" description="<before>">
+        <Tables>
+          <Table name="entity_name" description="<inside>"><inside></Table>
+        </Tables>
+      </Database>
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "ExampleTemplate.xml" with content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <Database name="Système" description="<before>">
+        <Tables>
+          <Table name="Bestellung_€" description="<inside>"><inside></Table>
+          <Table name="Größe_😀" description="<inside>"><inside></Table>
+        </Tables>
+      </Database>
+      """
+
+    Examples: 
+      | Scenario            | before        | inside        |
+      | Ascii               | plain         | plain         |
+      | Two byte characters | Änderung äöü  | Größe éè      |
+      | Three byte chars    | Preis € ≥ 10  | Wert € ≤ 5    |
+      | Four byte chars     | Smile 😀 𝄞    | Emoji 😀😀 𝄞 |
+      | Mixed               | äö € 😀 ascii | 😀 € ä ascii  |
+
+  Scenario: Multi-byte characters in an included model file using a xpointer
+    Given the following config:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <XGenConfig>
+        <Model />
+        <XmlTemplate rootSectionName="Database">
+          <FileFormat currentAccessor="_" />
+          <Output type="output_per_element" />
+          <XmlSections>
+            <XmlSection name="Tables" templateXPath="/Database/Tables/Table" />
+          </XmlSections>
+        </XmlTemplate>
+        <Binding>
+          <SectionModelBinding section="Database" modelXPath="/modeldefinition/system" placeholderName="system">
+            <SectionModelBinding section="Tables" modelXPath="./entity" placeholderName="entity"/>
+          </SectionModelBinding>
+        </Binding>
+      </XGenConfig>
+      """
+    And I have the following model:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <modeldefinition xmlns:xi="http://www.w3.org/2001/XInclude">
+        <system name="Système">
+          <entity name="Bestellung_€"/>
+          <xi:include href="included-entities.xml" xpointer="/entities/entity[@name!='Straße_ß']" />
+        </system>
+      </modeldefinition>
+      """
+    And the following template named "ExampleTemplate.xml":
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <Database name="system_name">
+        <Tables>
+          <Table name="entity_name" />
+        </Tables>
+      </Database>
+      """
+    When I run the generator
+    Then I expect 1 generation result
+    And an output named "ExampleTemplate.xml" with content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <Database name="Système">
+        <Tables>
+          <Table name="Bestellung_€" />
+          <Table name="Préférence_😀" />
+          <Table name="Übersicht_€" />
+        </Tables>
+      </Database>
+      """